@@ -218,6 +218,15 @@ public class CS implements Comparable, Serializable {
 		this.trialString = trialString;
 	}
 
+	/**
+	 * @return which cue this is as text, the same in any session, to key
+	 *         the settings made for it.
+	 */
+	public String key() {
+		return name + "#" + hash + "," + group + "," + stringPos
+				+ (isProbe ? "^" : "");
+	}
+
 	@Override
 	public String toString() {
 		return name;
@@ -1,5 +1,7 @@
 package simulator;
 
+import java.util.Random;
+
 import simulator.util.Response;
 import simulator.util.Trace;
 
@@ -14,6 +16,8 @@ import simulator.util.Trace;
  **/
 public class CompoundCueList extends CueList {
 
+	private static final long serialVersionUID = 1L;
+
 	/**
 	 * @param symbol
 	 * @param alpha
@@ -37,7 +41,8 @@ public class CompoundCueList extends CueList {
 
 	/**
 	 * Removes a 0 from the associative weights vector when generating a new cue
-	 * as weights are calculated externally.
+	 * as weights are calculated externally. The zeros aren't stored, so this
+	 * only moves the start of the histories back a trial.
 	 */
 
 	@Override
@@ -59,8 +64,8 @@ public class CompoundCueList extends CueList {
 	 */
 
 	@Override
-	public void store() {
-		super.store();
+	public void store(Random random) {
+		super.store(random);
 		for (int i = 0; i < cues.size(); i++) {
 			SimCue cue = cues.get(i);
 			cue.setAssocValue(0d);
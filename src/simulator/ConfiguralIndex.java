@@ -0,0 +1,211 @@
+/**
+ *
+ */
+package simulator;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import simulator.configurables.ContextConfig.Context;
+
+/**
+ * The mapping from configural cue names to the compounds they stand for (e.g.
+ * <a,AB>), indexed both ways. Alongside the usual map from name to compound it
+ * keeps the reverse map from compound to name, and for compounds that are a
+ * plain set of cues a map from a bitmask of the cues to the name. That makes
+ * finding the configural for a set of active cues a single hash probe rather
+ * than a scan of every configural.
+ *
+ * The indexes are kept up to date through put, remove & clear. Changes made
+ * through the key, value or entry views are not seen by them.
+ */
+public class ConfiguralIndex extends TreeMap<String, String> {
+
+	private static final long serialVersionUID = 1L;
+
+	/** Configural name for each compound. **/
+	private final Map<String, String> byCompound;
+	/** Configural name for each set of cues, as a mask. **/
+	private final Map<Long, String> byMask;
+	/** Bit for each cue symbol seen so far. **/
+	private final Map<Character, Integer> bits;
+
+	public ConfiguralIndex() {
+		super();
+		byCompound = new HashMap<String, String>();
+		byMask = new HashMap<Long, String>();
+		bits = new HashMap<Character, Integer>();
+	}
+
+	@Override
+	public void clear() {
+		super.clear();
+		byCompound.clear();
+		byMask.clear();
+	}
+
+	/**
+	 *
+	 * @param compound
+	 *            compound to look up, e.g. AB
+	 * @return the name of the configural for the compound, or null if there is
+	 *         none.
+	 */
+
+	public String getKey(String compound) {
+		return byCompound.get(compound);
+	}
+
+	/**
+	 *
+	 * @param mask
+	 *            set of cues, as given by <code>mask</code>
+	 * @return the name of the configural for that set of cues, or null if
+	 *         there is none.
+	 */
+
+	public String getKey(long mask) {
+		return byMask.get(mask);
+	}
+
+	/**
+	 * Give the bitmask for a set of single character cues. Masks are only
+	 * comparable between calls on the same index.
+	 *
+	 * @param symbols
+	 *            cue symbols in the set
+	 * @return the mask, or -1 if any of the cues has no bit, in which case the
+	 *         compound may still be found by name.
+	 */
+
+	public long mask(CharSequence symbols) {
+		long mask = 0;
+		for (int i = 0; i < symbols.length(); i++) {
+			Integer bit = bits.get(symbols.charAt(i));
+			if (bit == null) {
+				return -1;
+			}
+			mask |= 1L << bit;
+		}
+		return mask;
+	}
+
+	/**
+	 * As <code>mask</code>, but giving cues without a bit the next free one.
+	 *
+	 * @param symbols
+	 *            cue symbols in the set
+	 * @return the mask, or -1 if the bits have run out.
+	 */
+
+	private long assignMask(CharSequence symbols) {
+		for (int i = 0; i < symbols.length(); i++) {
+			char symbol = symbols.charAt(i);
+			if (!bits.containsKey(symbol)) {
+				if (bits.size() == Long.SIZE - 1) {
+					return -1;
+				}
+				bits.put(symbol, bits.size());
+			}
+		}
+		return mask(symbols);
+	}
+
+	@Override
+	public String put(String key, String value) {
+		String old = super.put(key, value);
+		if (old != null) {
+			unindex(key, old);
+		}
+		index(key, value);
+		return old;
+	}
+
+	@Override
+	public void putAll(Map<? extends String, ? extends String> map) {
+		for (Map.Entry<? extends String, ? extends String> entry : map
+				.entrySet()) {
+			put(entry.getKey(), entry.getValue());
+		}
+	}
+
+	@Override
+	public String remove(Object key) {
+		String old = super.remove(key);
+		if (old != null) {
+			unindex((String) key, old);
+		}
+		return old;
+	}
+
+	/**
+	 * Add a mapping to the indexes. Where two configurals share a compound the
+	 * last in key order wins, as it does for
+	 * <code>SimGroup.getKeyByValue</code>.
+	 *
+	 * @param key
+	 *            configural name
+	 * @param value
+	 *            compound
+	 */
+
+	private void index(String key, String value) {
+		String current = byCompound.get(value);
+		if (current == null || key.compareTo(current) > 0) {
+			byCompound.put(value, key);
+			long mask = canonicalMask(value);
+			if (mask > 0) {
+				byMask.put(mask, key);
+			}
+		}
+	}
+
+	/**
+	 * Remove a mapping from the indexes, falling back to any other configural
+	 * for the same compound.
+	 *
+	 * @param key
+	 *            configural name
+	 * @param value
+	 *            compound
+	 */
+
+	private void unindex(String key, String value) {
+		if (key.equals(byCompound.get(value))) {
+			byCompound.remove(value);
+			long mask = canonicalMask(value);
+			if (mask > 0) {
+				byMask.remove(mask);
+			}
+			for (Map.Entry<String, String> entry : entrySet()) {
+				if (entry.getValue().equals(value)) {
+					index(entry.getKey(), value);
+				}
+			}
+		}
+	}
+
+	/**
+	 * A compound can be found by mask only if it is written the way a set of
+	 * active cues is, i.e. context first then the rest in order, each cue once.
+	 * Anything else, such as a serial compound, is only found by name.
+	 *
+	 * @param value
+	 *            compound
+	 * @return the mask of the compound, or -1 if it is not in that form.
+	 */
+
+	private long canonicalMask(String value) {
+		for (int i = 1; i < value.length(); i++) {
+			String previous = value.substring(i - 1, i);
+			String current = value.substring(i, i + 1);
+			if (Context.isContext(current)
+					|| (!Context.isContext(previous) && previous
+							.compareTo(current) >= 0)) {
+				return -1;
+			}
+		}
+		return assignMask(value);
+	}
+}
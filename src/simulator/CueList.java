@@ -3,15 +3,23 @@
  */
 package simulator;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Random;
 
+import simulator.util.History;
 import simulator.util.MemoryTrace;
+import simulator.util.Precision;
 import simulator.util.Response;
+import simulator.util.RunningStats;
 import simulator.util.Trace;
 
 /**
@@ -23,12 +31,13 @@ import simulator.util.Trace;
  * @supervisor Dr. Eduardo Alonso
  * @author Jonathan Gray
  **/
-public class CueList implements Iterable<SimCue> {
+public class CueList implements Iterable<SimCue>, Serializable {
 
+	private static final long serialVersionUID = 1L;
 	/** List of cues. **/
 	protected List<SimCue> cues;
-	/** List iterator for cues. **/
-	protected ListIterator<SimCue> cueIt;
+	/** List iterator for cues, saved by its position. **/
+	protected transient ListIterator<SimCue> cueIt;
 	/** Cue symbol. **/
 	private String symbol;
 	/** Cue alpha. **/
@@ -38,37 +47,87 @@ public class CueList implements Iterable<SimCue> {
 	/** Number of trials. **/
 	private int trialCount;
 	/** Average assocs. **/
-	private List<Double> averageWeights;
+	private History averageWeights;
 	/** Average weights. **/
-	private List<Double> averageResponse;
+	private History averageResponse;
+	/** Spread of the average assocs across runs, null for a single run. **/
+	private History averageWeightsSd;
+	/** Number of runs averaged into this list. **/
+	private long runs = 1;
 	/** Max cue index encountered. */
 	private int maxCue;
-	private List<Double> zeroFill;
+	/** Trials each component's histories hold, 0 for all. **/
+	private int historyWindow;
+	/** Precision the histories are stored at. **/
+	private Precision historyPrecision;
+	/** Number of trials a new cue's histories read zero for. **/
+	private int zeroFill;
 	/** Threshold for a response. **/
 	private double threshold;
 	/** List of maximum cues for trials. **/
-	private List<Integer> maxCueList;
+	private History maxCueList;
 	private Response decisionRule;
 	private double decay;
+	/** Trace update last used, kept while its parameters hold. **/
+	private transient Trace.Kernel traceKernel;
+	/** Response rule last used, kept while its parameters hold. **/
+	private transient Response.Kernel responseKernel;
+	/** Settings of the run storing to this list. **/
+	private transient SimulationContext simulation;
 	/** Presence trace type. **/
 	private MemoryTrace memTrace;
+	/*
+	 * Working values of the components, by position in the list. Components
+	 * read and write their own values here so that update can run over plain
+	 * arrays.
+	 */
+	/** Working weights. **/
+	double[] weights;
+	/** Working average weights. **/
+	double[] averages;
+	/** Eligibility traces. **/
+	double[] traces;
+	/** Component saliences. **/
+	double[] alphas;
+	/** Components active this timestep. **/
+	boolean[] actives;
+	/** Traces below this are zeroed & skipped, 0 to update every component. **/
+	private double traceCutoff;
+	/** Slots of the components being updated while there is a cutoff. **/
+	private int[] live;
+	/** Number of live slots. **/
+	private int liveCount;
+	/** Whether each slot is live. **/
+	private boolean[] isLive;
+	/** Component updates made since last drained. **/
+	private long componentUpdates;
+	/** Component updates skipped for being below the cutoff. **/
+	private long skippedUpdates;
 
 	public CueList(String symbol, double alpha, double threshold, double decay) {
 		this.alpha = alpha;
 		this.symbol = symbol;
 		cues = new ArrayList<SimCue>();
 		cueIt = cues.listIterator();
+		weights = new double[16];
+		averages = new double[16];
+		traces = new double[16];
+		alphas = new double[16];
+		actives = new boolean[16];
+		live = new int[16];
+		isLive = new boolean[16];
+		traceCutoff = 0;
 		traceType = Trace.REPLACING;
 		trialCount = 0;
-		averageWeights = new ArrayList<Double>();
+		averageWeights = new History();
 		averageWeights.add(0d);
-		averageResponse = new ArrayList<Double>();
+		averageResponse = new History();
 		// averageResponse.add(0d);
 		maxCue = 0;
-		zeroFill = new ArrayList<Double>();
-		zeroFill.add(0d);
+		zeroFill = 1;
+		historyPrecision = Precision.DOUBLE;
 		this.threshold = threshold;
-		maxCueList = new ArrayList<Integer>();
+		maxCueList = new History();
 		maxCueList.add(0);
 		this.decay = decay;
 		memTrace = simulator.util.MemoryTrace.MONDRAGON;
@@ -96,6 +155,7 @@ public class CueList implements Iterable<SimCue> {
 
 	public void add(SimCue cue) {
 		cueIt.add(cue);
+		attach(cue, cueIt.previousIndex());
 	}
 
 	/**
@@ -104,7 +164,136 @@ public class CueList implements Iterable<SimCue> {
 	 */
 
 	public void addAll(Collection<SimCue> addCues) {
-		cues.addAll(addCues);
+		for (SimCue cue : addCues) {
+			cues.add(cue);
+			attach(cue, cues.size() - 1);
+		}
+	}
+
+	/**
+	 * Give a newly inserted cue a slot in the working arrays, shifting the
+	 * slots of any cues after it.
+	 * 
+	 * @param cue
+	 *            the cue inserted
+	 * @param index
+	 *            position it was inserted at
+	 */
+
+	private void attach(SimCue cue, int index) {
+		int size = cues.size();
+		if (size > weights.length) {
+			int capacity = Math.max(size, weights.length * 2);
+			weights = Arrays.copyOf(weights, capacity);
+			averages = Arrays.copyOf(averages, capacity);
+			traces = Arrays.copyOf(traces, capacity);
+			alphas = Arrays.copyOf(alphas, capacity);
+			actives = Arrays.copyOf(actives, capacity);
+			live = Arrays.copyOf(live, capacity);
+			isLive = Arrays.copyOf(isLive, capacity);
+		}
+		int moved = size - 1 - index;
+		if (moved > 0) {
+			System.arraycopy(weights, index, weights, index + 1, moved);
+			System.arraycopy(averages, index, averages, index + 1, moved);
+			System.arraycopy(traces, index, traces, index + 1, moved);
+			System.arraycopy(alphas, index, alphas, index + 1, moved);
+			System.arraycopy(actives, index, actives, index + 1, moved);
+			for (int i = index + 1; i < size; i++) {
+				cues.get(i).setSlot(i);
+			}
+		}
+		cue.attach(this, index);
+		if (traceCutoff > 0) {
+			if (moved > 0) {
+				track();
+			} else {
+				track(index);
+			}
+		}
+	}
+
+	/**
+	 * Rebuild the live set from scratch, zeroing any trace that falls below
+	 * the cutoff.
+	 */
+
+	private void track() {
+		Arrays.fill(isLive, false);
+		liveCount = 0;
+		for (int i = 0; i < cues.size(); i++) {
+			track(i);
+		}
+	}
+
+	/**
+	 * Add a component to the live set if it is active or its trace is at or
+	 * above the cutoff, otherwise zero its trace.
+	 * 
+	 * @param i
+	 *            slot of the component
+	 */
+
+	private void track(int i) {
+		if (isLive[i]) {
+			return;
+		}
+		if (actives[i] || Math.abs(traces[i]) >= traceCutoff) {
+			isLive[i] = true;
+			live[liveCount++] = i;
+		} else {
+			traces[i] = 0;
+		}
+	}
+
+	/**
+	 * Drop the components whose traces have fallen below the cutoff from the
+	 * live set, zeroing them.
+	 */
+
+	private void prune() {
+		for (int n = liveCount - 1; n >= 0; n--) {
+			int i = live[n];
+			if (!actives[i] && !(Math.abs(traces[i]) >= traceCutoff)) {
+				traces[i] = 0;
+				isLive[i] = false;
+				live[n] = live[--liveCount];
+			}
+		}
+	}
+
+	/**
+	 * Set whether a component is active, bringing it back into the live set
+	 * if it is.
+	 * 
+	 * @param i
+	 *            slot of the component
+	 * @param active
+	 *            true if the component is active
+	 */
+
+	void setActive(int i, boolean active) {
+		actives[i] = active;
+		if (active && traceCutoff > 0) {
+			track(i);
+		}
+	}
+
+	/**
+	 * Set a component's trace, keeping the live set in step.
+	 * 
+	 * @param i
+	 *            slot of the component
+	 * @param trace
+	 *            new trace
+	 */
+
+	void setTrace(int i, double trace) {
+		traces[i] = trace;
+		// Live components that drop below the cutoff go at the next update
+		if (traceCutoff > 0) {
+			track(i);
+		}
 	}
 
 	/**
@@ -118,6 +307,29 @@ public class CueList implements Iterable<SimCue> {
 		return averageWeights.get(trial);
 	}
 
+	/**
+	 * @param trial
+	 *            number to get the spread for.
+	 * @return the standard deviation of the average V across the runs averaged
+	 *         at the given trial, 0 for a single run.
+	 */
+
+	public double averageAssocSd(int trial) {
+		return averageWeightsSd == null || trial >= averageWeightsSd.size() ? 0
+				: averageWeightsSd.get(trial);
+	}
+
+	/**
+	 * @param trial
+	 *            number to get the interval for.
+	 * @return half the width of the 95% confidence interval for the average V
+	 *         at the given trial.
+	 */
+
+	public double averageAssocCi(int trial) {
+		return RunningStats.ci(averageAssocSd(trial), runs);
+	}
+
 	public double averageResponse(int trial) {
         double response = 0;
         try {
@@ -144,16 +356,18 @@ public class CueList implements Iterable<SimCue> {
 			tmp.setAssocValue(cue.getLastAssocValue());
 			tmp.getAssocValueVector().add(cue.getLastAssocValue());
 			tmp.getAvgAssocValueVector().add(cue.getLastAvgAssocValue());
-			tmp.getResponses().add(
-					cue.getResponses().get(cue.getResponses().size() - 1));
+			tmp.getResponses().add(cue.getResponses().last());
 			newList.add(tmp);
 		}
 		newList.getAverageWeights().clear();
-		newList.getAverageWeights().add(
-				averageWeights.get(averageWeights.size() - 1));
+		newList.getAverageWeights().add(averageWeights.last());
 
 		newList.getMaxCueList().clear();
-		newList.getMaxCueList().add(maxCueList.get(maxCueList.size() - 1));
+		newList.getMaxCueList().add(maxCueList.last());
+		newList.setTraceCutoff(traceCutoff);
+		newList.setHistoryWindow(historyWindow);
+		newList.setHistoryPrecision(historyPrecision);
+		newList.setSimulationContext(simulation);
 		return newList;
 	}
 
@@ -195,35 +409,14 @@ public class CueList implements Iterable<SimCue> {
 	/**
 	 * @return the averageResponse
 	 */
-	public List<Double> getAverageResponse() {
+	public History getAverageResponse() {
 		return averageResponse;
 	}
 
-	/**
-	 * 
-	 * @param threshold
-	 *            threshold for a response.
-	 * @param timeStep
-	 *            step in time/cue to get response at.
-	 * @return the simulated response for the cue at that timestep.
-	 */
-	@Deprecated
-	public int getAverageResponse(double threshold, int trial) {
-		int responses = 0;
-		Random random = new Random();
-		for (int i = 0; i < 60; i++) {
-			double boundary = random.nextDouble();
-			int response = averageAssoc(trial) > boundary * threshold ? 1 : 0;
-			response = boundary < 4 / 60 ? 1 : response;
-			responses += response;
-		}
-		return responses;
-	}
-
 	/**
 	 * @return the list of average weights at each trial.
 	 */
-	public List<Double> getAverageWeights() {
+	public History getAverageWeights() {
 		return averageWeights;
 	}
 
@@ -255,7 +448,7 @@ public class CueList implements Iterable<SimCue> {
 	/**
 	 * @return the maxCueList
 	 */
-	public List<Integer> getMaxCueList() {
+	public History getMaxCueList() {
 		return maxCueList;
 	}
 
@@ -281,10 +474,8 @@ public class CueList implements Iterable<SimCue> {
 	public double getPresence(int offset, int onset, int timestep) {
 		boolean active = (onset <= timestep) && (timestep < offset);
 		int time = active ? timestep - onset : timestep - offset;
-		double decay = Simulator.getController().getModel()
-				.getActivationDecay();
-		double dropoff = Simulator.getController().getModel()
-				.getActivationDropoff();
+		double decay = simulation.getActivationDecay();
+		double dropoff = simulation.getActivationDropoff();
 		return memTrace.get(decay, dropoff, time + 1, active);
 	}
 
@@ -317,6 +508,28 @@ public class CueList implements Iterable<SimCue> {
 		return traceType;
 	}
 
+	/**
+	 * @return the trace below which components are skipped, 0 if none are.
+	 */
+	public double getTraceCutoff() {
+		return traceCutoff;
+	}
+
+	/**
+	 * Report the component updates made & skipped since last asked, and start
+	 * counting again.
+	 * 
+	 * @return the number of component updates made and the number skipped
+	 *         for being below the trace cutoff.
+	 */
+
+	public long[] drainUpdateCounts() {
+		long[] counts = { componentUpdates, skippedUpdates };
+		componentUpdates = 0;
+		skippedUpdates = 0;
+		return counts;
+	}
+
 	/**
 	 * @return the number of trials this CSC has been in.
 	 */
@@ -345,17 +558,18 @@ public class CueList implements Iterable<SimCue> {
 
 	/**
 	 * 
-	 * @return either the next cue, or a newly created one with weight history
-	 *         zero-padded to match the number of trials so far.
+	 * @return either the next cue, or a newly created one whose histories
+	 *         start at the current trial, reading zero for those before.
 	 */
 
 	public SimCue nextCue() {
 		if (!cueIt.hasNext()) {
 			SimCue cue = new SimCue(symbol, alpha, traceType, decisionRule);
-			cue.getAssocValueVector().addAll(zeroFill);
-			cue.getAvgAssocValueVector().addAll(zeroFill);
-			cue.getResponses().addAll(zeroFill);
+			cue.getAssocValueVector().addZeros(zeroFill);
+			cue.getAvgAssocValueVector().addZeros(zeroFill);
+			cue.getResponses().addZeros(zeroFill);
 			cueIt.add(cue);
+			attach(cue, cueIt.previousIndex());
 			cueIt.previous();
 		}
 		maxCue = cueIt.nextIndex();
@@ -381,6 +595,17 @@ public class CueList implements Iterable<SimCue> {
 		cueIt = cues.listIterator();
 	}
 
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		out.writeInt(cueIt.nextIndex());
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException,
+			ClassNotFoundException {
+		in.defaultReadObject();
+		cueIt = cues.listIterator(in.readInt());
+	}
+
 	/**
 	 * 
 	 * @param alpha
@@ -394,11 +619,59 @@ public class CueList implements Iterable<SimCue> {
 		}
 	}
 
+	/**
+	 * @return the settings of the run storing to this list, null if it
+	 *         hasn't been stored to since it was made or read back.
+	 */
+	public SimulationContext getSimulationContext() {
+		return simulation;
+	}
+
+	/**
+	 * @param simulation
+	 *            settings of the run storing to this list, which its
+	 *            simulated responses follow
+	 */
+	public void setSimulationContext(SimulationContext simulation) {
+		this.simulation = simulation;
+	}
+
+	/**
+	 * @param historyWindow
+	 *            number of latest trials the components' histories hold from
+	 *            their next store, 0 for all
+	 */
+	public void setHistoryWindow(int historyWindow) {
+		this.historyWindow = historyWindow;
+	}
+
+	/**
+	 * Store the average & component histories at a given precision,
+	 * converting those already stored.
+	 * 
+	 * @param historyPrecision
+	 *            precision to store them at
+	 */
+	public void setHistoryPrecision(Precision historyPrecision) {
+		if (historyPrecision == this.historyPrecision) {
+			return;
+		}
+		this.historyPrecision = historyPrecision;
+		averageWeights.setPrecision(historyPrecision);
+		averageResponse.setPrecision(historyPrecision);
+		if (averageWeightsSd != null) {
+			averageWeightsSd.setPrecision(historyPrecision);
+		}
+		for (SimCue cue : cues) {
+			cue.setHistoryPrecision(historyPrecision);
+		}
+	}
+
 	/**
 	 * @param averageResponse
 	 *            the averageResponse to set
 	 */
-	public void setAverageResponse(List<Double> averageResponse) {
+	public void setAverageResponse(History averageResponse) {
 		this.averageResponse = averageResponse;
 	}
 
@@ -406,10 +679,41 @@ public class CueList implements Iterable<SimCue> {
 	 * @param averageWeights
 	 *            a list of averaged weights to set.
 	 */
-	public void setAverageWeights(List<Double> averageWeights) {
+	public void setAverageWeights(History averageWeights) {
 		this.averageWeights = averageWeights;
 	}
 
+	/**
+	 * @param averageWeightsSd
+	 *            the standard deviation of the averaged weights across runs.
+	 */
+	public void setAverageWeightsSd(History averageWeightsSd) {
+		this.averageWeightsSd = averageWeightsSd;
+	}
+
+	/**
+	 * @return the standard deviation of the averaged weights across runs, or
+	 *         null for a single run.
+	 */
+	public History getAverageWeightsSd() {
+		return averageWeightsSd;
+	}
+
+	/**
+	 * @param runs
+	 *            the number of runs averaged into this list.
+	 */
+	public void setRuns(long runs) {
+		this.runs = runs;
+	}
+
+	/**
+	 * @return the number of runs averaged into this list.
+	 */
+	public long getRuns() {
+		return runs;
+	}
+
 	/**
 	 * @param decay
 	 *            the decay to set
@@ -422,7 +726,7 @@ public class CueList implements Iterable<SimCue> {
 	 * @param maxCueList
 	 *            the maxCueList to set
 	 */
-	public void setMaxCueList(List<Integer> maxCueList) {
+	public void setMaxCueList(History maxCueList) {
 		this.maxCueList = maxCueList;
 	}
 
@@ -450,6 +754,29 @@ public class CueList implements Iterable<SimCue> {
 
 	public void setTraceType(Trace trace) {
 		traceType = trace;
+		traceKernel = null;
+	}
+
+	/**
+	 * Approximate the traces by dropping components whose trace falls below a
+	 * cutoff. Those components are zeroed and skipped by updates until they
+	 * are next active.
+	 * 
+	 * @param traceCutoff
+	 *            smallest trace kept, 0 to update every component
+	 */
+
+	public void setTraceCutoff(double traceCutoff) {
+		if (traceCutoff == this.traceCutoff) {
+			return;
+		}
+		this.traceCutoff = traceCutoff;
+		if (traceCutoff > 0) {
+			track();
+		} else {
+			Arrays.fill(isLive, false);
+			liveCount = 0;
+		}
 	}
 
 	/**
@@ -471,17 +798,32 @@ public class CueList implements Iterable<SimCue> {
 
 	/**
 	 * Push the working V value to the V vector for all cues.
+	 * 
+	 * @param random
+	 *            generator for the run's simulated responses
 	 */
 
-	public void store() {
+	public void store(Random random) {
+		Response.Kernel kernel = responseKernel();
 		double avg = 0;
 		double avgResp = 0;
 		for (int i = 0; i < cues.size(); i++) {
 			SimCue cue = cues.get(i);
-			cue.makeResponse(threshold, getDecay());
+			if (historyWindow > 0) {
+				cue.setHistoryWindow(historyWindow);
+			}
+			cue.setHistoryPrecision(historyPrecision);
+			// Read the trial's response before a window can drop it
+			History responses = cue.getResponses();
+			double response = responses.holds(trialCount) ? responses
+					.get(trialCount) : 0;
+			cue.makeResponse(kernel, random);
+			if (responses.holds(trialCount)) {
+				response = responses.get(trialCount);
+			}
 			if (i <= maxCue) {
 				avg += cue.getLastAssocValue();
-				avgResp += cue.response(trialCount);
+				avgResp += response;
 			}
 			cue.store();
 		}
@@ -490,36 +832,11 @@ public class CueList implements Iterable<SimCue> {
 		averageWeights.add(avg);
 		averageResponse.add(avgResp);
 		trialCount++;
-		zeroFill.add(0d);
+		zeroFill++;
 		maxCueList.add(maxCue);
 		maxCue = 0;
 	}
 	
-	public void remakeResponses() {
-		averageResponse.clear();
-		for(SimCue cue : cues) {
-			cue.getResponses().clear();
-			cue.getAvgAssocValueVector().add(cue.getLastAvgAssocValue());
-		}
-		for(int t = 0; t < trialCount; t++) {
-			double avgResp = 0;
-			for (int i = 0; i < cues.size(); i++) {
-				SimCue cue = cues.get(i);
-                try {
-				    cue.setAvgAssocValue(cue.getAvgAssocValueVector().get(t));
-                } catch (IndexOutOfBoundsException e) {
-                    System.err.println("Oops..");
-                }
-				cue.makeResponse(threshold, getDecay());
-				if (i <= maxCueList.get(t)) {
-					avgResp += cue.response(t);
-				}
-			}
-			avgResp /= maxCueList.get(t) + 1;
-			averageResponse.add(avgResp);			
-		}
-	}
-
 	@Override
 	public String toString() {
 		return symbol + " α(" + alpha + "): " + cues;
@@ -537,29 +854,132 @@ public class CueList implements Iterable<SimCue> {
 	 */
 
 	public void update(double betaError, double delta, double gamma) {
-		if (Math.abs(alpha * betaError) <= Double.MIN_VALUE) {
-			for (int i = 0; i < cues.size(); i++) {
-				cues.get(i).updateTrace(delta, gamma);
+		int size = cues.size();
+		if (traceCutoff > 0) {
+			updateLive(betaError, delta, gamma);
+			return;
+		}
+		componentUpdates += size;
+		if (Math.abs(alpha * betaError) > Double.MIN_VALUE) {
+			for (int i = 0; i < size; i++) {
+				weights[i] += alphas[i] * betaError * traces[i];
+				averages[i] = weights[i];
 			}
-		} else {
-			for (int i = 0; i < cues.size(); i++) {
-				cues.get(i).update(betaError, delta, gamma);
-				cues.get(i).updateTrace(delta, gamma);
+		}
+		// Components active for only single time-step
+		traceKernel(delta, gamma).update(traces, actives, size);
+	}
+
+	/**
+	 * @param delta
+	 *            trace decay
+	 * @param gamma
+	 *            discount factor
+	 * @return the trace update for this list's trace type & these
+	 *         parameters, made on the first step they're used for.
+	 */
+
+	private Trace.Kernel traceKernel(double delta, double gamma) {
+		if (traceKernel == null || !traceKernel.isFor(delta, gamma)) {
+			traceKernel = traceType.kernel(delta, gamma);
+		}
+		return traceKernel;
+	}
+
+	/**
+	 * @return the response rule for this list's decision rule & the run's
+	 *         response settings, made on the first trial they're used for.
+	 */
+
+	private Response.Kernel responseKernel() {
+		int count = simulation.getResponsesPerMinute();
+		boolean expected = simulation.isExpectedResponses();
+		if (responseKernel == null
+				|| !responseKernel.isFor(threshold, count, getDecay(), expected)) {
+			responseKernel = decisionRule.kernel(threshold, count, getDecay(),
+					expected);
+		}
+		return responseKernel;
+	}
+
+	/**
+	 * Update only the live components, dropping any whose trace falls below
+	 * the cutoff.
+	 * 
+	 * @param betaError
+	 *            TD error term
+	 * @param delta
+	 *            trace decay
+	 * @param gamma
+	 *            discount factor
+	 */
+
+	private void updateLive(double betaError, double delta, double gamma) {
+		componentUpdates += liveCount;
+		skippedUpdates += cues.size() - liveCount;
+		if (Math.abs(alpha * betaError) > Double.MIN_VALUE) {
+			for (int n = 0; n < liveCount; n++) {
+				int i = live[n];
+				weights[i] += alphas[i] * betaError * traces[i];
+				averages[i] = weights[i];
 			}
 		}
+		traceKernel(delta, gamma).update(traces, actives, live, liveCount);
+		prune();
+	}
+
+	/**
+	 * Advance all the cues in the list across a stretch of timesteps in which
+	 * none of them are active, in one go. Over such a stretch every trace
+	 * decays by the same factor each step, so the weight change is the trace at
+	 * the start times the sum of the TD errors discounted by that factor.
+	 * 
+	 * @param weightedError
+	 *            sum over the stretch of each step's TD error times the decay
+	 *            applied to traces before that step
+	 * @param decay
+	 *            total decay of the traces across the stretch
+	 */
+
+	public void advance(double weightedError, double decay) {
+		if (traceCutoff > 0) {
+			if (Math.abs(alpha * weightedError) > Double.MIN_VALUE) {
+				for (int n = 0; n < liveCount; n++) {
+					int i = live[n];
+					weights[i] += alphas[i] * weightedError * traces[i];
+					averages[i] = weights[i];
+				}
+			}
+			for (int n = 0; n < liveCount; n++) {
+				traces[live[n]] *= decay;
+			}
+			prune();
+			return;
+		}
+		int size = cues.size();
+		if (Math.abs(alpha * weightedError) > Double.MIN_VALUE) {
+			for (int i = 0; i < size; i++) {
+				weights[i] += alphas[i] * weightedError * traces[i];
+				averages[i] = weights[i];
+			}
+		}
+		for (int i = 0; i < size; i++) {
+			traces[i] *= decay;
+		}
 	}
 
 	/**
 	 * 
 	 */
 	public void zeroTraces() {
-		for (SimCue cue : cues) {
-			cue.setTrace(0d);
+		Arrays.fill(traces, 0, cues.size(), 0d);
+		if (traceCutoff > 0) {
+			track();
 		}
 	}
 
     public double weightedSum(CueList compound, int trial) {
-        double weight = Simulator.getController().getModel().getSerialResponseWeight();
+        double weight = simulation.getSerialResponseWeight();
         return (averageResponse(trial)*weight + compound.averageResponse(trial)*(1 - weight)) / 2;
     }
 }
@@ -0,0 +1,110 @@
+/**
+ *
+ */
+package simulator;
+
+import java.util.Arrays;
+
+/**
+ * Log of the components each slot of a trial has had active, oldest first,
+ * for building serial compounds. Each slot's log is a ring buffer, so entries
+ * are taken from the front and added at the back without allocating, and the
+ * buffers are kept from trial to trial.
+ */
+
+public class CueLog {
+
+	/** Ring buffer for each slot. **/
+	private SimCue[][] entries;
+	/** Position of the oldest entry in each buffer. **/
+	private int[] heads;
+	/** Number of entries in each buffer. **/
+	private int[] counts;
+	/** Number of slots in use. **/
+	private int slots;
+
+	public CueLog() {
+		entries = new SimCue[0][];
+		heads = new int[0];
+		counts = new int[0];
+		slots = 0;
+	}
+
+	/**
+	 * Empty the log, making room for a trial.
+	 *
+	 * @param slots
+	 *            number of slots in the trial
+	 * @param capacity
+	 *            number of entries to expect per slot
+	 */
+
+	public void reset(int slots, int capacity) {
+		if (slots > entries.length) {
+			entries = Arrays.copyOf(entries, slots);
+			heads = Arrays.copyOf(heads, slots);
+			counts = Arrays.copyOf(counts, slots);
+		}
+		for (int k = 0; k < slots; k++) {
+			if (entries[k] == null || entries[k].length < capacity) {
+				entries[k] = new SimCue[Math.max(capacity, 1)];
+			} else {
+				Arrays.fill(entries[k], null);
+			}
+			heads[k] = 0;
+			counts[k] = 0;
+		}
+		this.slots = slots;
+	}
+
+	/**
+	 * Log a component as active.
+	 *
+	 * @param slot
+	 *            slot the component belongs to
+	 * @param cue
+	 *            the active component
+	 */
+
+	public void add(int slot, SimCue cue) {
+		SimCue[] ring = entries[slot];
+		if (counts[slot] == ring.length) {
+			// Unroll into a bigger buffer
+			SimCue[] bigger = new SimCue[ring.length * 2];
+			for (int n = 0; n < counts[slot]; n++) {
+				bigger[n] = ring[(heads[slot] + n) % ring.length];
+			}
+			entries[slot] = ring = bigger;
+			heads[slot] = 0;
+		}
+		ring[(heads[slot] + counts[slot]) % ring.length] = cue;
+		counts[slot]++;
+	}
+
+	/**
+	 *
+	 * @param slot
+	 *            slot to take from
+	 * @return the oldest component logged for the slot, removing it, or null if
+	 *         there are none.
+	 */
+
+	public SimCue poll(int slot) {
+		if (counts[slot] == 0) {
+			return null;
+		}
+		SimCue[] ring = entries[slot];
+		SimCue cue = ring[heads[slot]];
+		ring[heads[slot]] = null;
+		heads[slot] = (heads[slot] + 1) % ring.length;
+		counts[slot]--;
+		return cue;
+	}
+
+	/**
+	 * @return the number of slots in use.
+	 */
+	public int getSlots() {
+		return slots;
+	}
+}
@@ -0,0 +1,295 @@
+/**
+ *
+ */
+package simulator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import simulator.util.History;
+import simulator.util.RunningStats;
+
+/**
+ * Running totals of a cue's results over a set of runs: the mean & spread of
+ * its average weights & responses, and of each component's weights,
+ * responses & averaged weights. Runs the cue or a component is missing from
+ * count as zero, so the means are those the runs would give averaged in turn.
+ */
+
+public class CueTotals {
+
+	/** Average weight each trial. **/
+	private final RunningStats weights;
+	/** Average response each trial. **/
+	private final RunningStats responses;
+	/** Weights, responses & averaged weights of each component. **/
+	private final List<RunningStats[]> components;
+	/** Number of runs, including those the cue was missing from. **/
+	private long runs;
+	/** Trial count of the last run. **/
+	private int trialCount;
+	/** Most components active each trial. **/
+	private History maxCues;
+
+	public CueTotals() {
+		weights = new RunningStats();
+		responses = new RunningStats();
+		components = new ArrayList<RunningStats[]>();
+		runs = 0;
+	}
+
+	/**
+	 * Fold in a run of the cue.
+	 *
+	 * @param list
+	 *            the cue's results from the run
+	 */
+
+	public void add(CueList list) {
+		weights.add(list.getAverageWeights());
+		responses.add(list.getAverageResponse());
+		// Components up to the first that never ran
+		int present = 0;
+		while (present < list.size()
+				&& !list.get(present).getAssocValueVector().isEmpty()) {
+			present++;
+		}
+		for (int p = 0; p < Math.max(present, components.size()); p++) {
+			if (p == components.size()) {
+				components.add(component(runs));
+			}
+			RunningStats[] stats = components.get(p);
+			if (p < present) {
+				SimCue cue = list.get(p);
+				stats[0].add(cue.getAssocValueVector());
+				stats[1].add(cue.getResponses());
+				stats[2].add(cue.getAvgAssocValueVector());
+			} else {
+				for (RunningStats stat : stats) {
+					stat.addZeros(1);
+				}
+			}
+		}
+		runs++;
+		trialCount = list.getTrialCount();
+		maxCues = max(maxCues, list.getMaxCueList());
+	}
+
+	/**
+	 * Fold in runs the cue was missing from.
+	 *
+	 * @param count
+	 *            number of runs
+	 */
+
+	public void addZeros(long count) {
+		weights.addZeros(count);
+		responses.addZeros(count);
+		for (RunningStats[] stats : components) {
+			for (RunningStats stat : stats) {
+				stat.addZeros(count);
+			}
+		}
+		runs += count;
+	}
+
+	/**
+	 * Fold in the totals of later runs.
+	 *
+	 * @param later
+	 *            totals of the runs after these
+	 */
+
+	public void merge(CueTotals later) {
+		weights.merge(later.weights);
+		responses.merge(later.responses);
+		for (int p = 0; p < Math.max(components.size(), later.components
+				.size()); p++) {
+			if (p == components.size()) {
+				components.add(component(runs));
+			}
+			RunningStats[] stats = components.get(p);
+			if (p < later.components.size()) {
+				for (int k = 0; k < stats.length; k++) {
+					stats[k].merge(later.components.get(p)[k]);
+				}
+			} else {
+				for (RunningStats stat : stats) {
+					stat.addZeros(later.runs);
+				}
+			}
+		}
+		runs += later.runs;
+		trialCount = later.trialCount;
+		maxCues = max(maxCues, later.maxCues);
+	}
+
+	/**
+	 * @param runs
+	 *            number of runs the component was missing from
+	 * @return fresh totals for a component.
+	 */
+
+	private static RunningStats[] component(long runs) {
+		RunningStats[] stats = new RunningStats[] { new RunningStats(),
+				new RunningStats(), new RunningStats() };
+		for (RunningStats stat : stats) {
+			stat.addZeros(runs);
+		}
+		return stats;
+	}
+
+	/**
+	 * @param existing
+	 *            most components so far, may be null
+	 * @param newer
+	 *            most components in later runs, may be null
+	 * @return the larger of the two each trial, over the trials of the newer.
+	 */
+
+	private static History max(History existing, History newer) {
+		if (existing == null || newer == null) {
+			return newer == null ? existing : newer;
+		}
+		History totalMax = new History(newer.size());
+		for (int i = 0; i < newer.size(); i++) {
+			int existingMax = i < existing.size() ? (int) existing.get(i) : 0;
+			totalMax.add(Math.max(existingMax, (int) newer.get(i)));
+		}
+		return totalMax;
+	}
+
+	/**
+	 * Fold a run into the totals for each cue.
+	 *
+	 * @param totals
+	 *            totals by cue name, added to
+	 * @param run
+	 *            the run's results by cue name
+	 * @param runs
+	 *            number of runs already in the totals
+	 */
+
+	public static void add(Map<String, CueTotals> totals,
+			Map<String, CueList> run, long runs) {
+		for (Entry<String, CueTotals> entry : totals.entrySet()) {
+			if (!run.containsKey(entry.getKey())) {
+				entry.getValue().addZeros(1);
+			}
+		}
+		for (Entry<String, CueList> entry : run.entrySet()) {
+			CueTotals cue = totals.get(entry.getKey());
+			if (cue == null) {
+				cue = new CueTotals();
+				cue.addZeros(runs);
+				totals.put(entry.getKey(), cue);
+			}
+			cue.add(entry.getValue());
+		}
+	}
+
+	/**
+	 * Fold the totals of later runs into those of earlier ones, cue by cue.
+	 *
+	 * @param totals
+	 *            totals of the earlier runs by cue name, added to
+	 * @param runs
+	 *            number of earlier runs
+	 * @param later
+	 *            totals of the later runs by cue name
+	 * @param laterRuns
+	 *            number of later runs
+	 */
+
+	public static void merge(Map<String, CueTotals> totals, long runs,
+			Map<String, CueTotals> later, long laterRuns) {
+		for (Entry<String, CueTotals> entry : totals.entrySet()) {
+			if (!later.containsKey(entry.getKey())) {
+				entry.getValue().addZeros(laterRuns);
+			}
+		}
+		for (Entry<String, CueTotals> entry : later.entrySet()) {
+			CueTotals cue = totals.get(entry.getKey());
+			if (cue == null) {
+				cue = new CueTotals();
+				cue.addZeros(runs);
+				totals.put(entry.getKey(), cue);
+			}
+			cue.merge(entry.getValue());
+		}
+	}
+
+	/**
+	 * @param totals
+	 *            totals by cue name
+	 * @param responseScale
+	 *            factor putting the responses' standard errors on the scale
+	 *            of the weights', 0 to leave the responses out
+	 * @return the largest standard error of any cue's average weights, &
+	 *         scaled responses if asked, over the trials.
+	 */
+
+	public static double maxStandardError(Map<String, CueTotals> totals,
+			double responseScale) {
+		double max = 0;
+		for (CueTotals cue : totals.values()) {
+			max = Math.max(max, cue.weights.maxStandardError());
+			if (responseScale > 0) {
+				max = Math.max(max, cue.responses.maxStandardError()
+						* responseScale);
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * @return the totals of each component's weights, responses & averaged
+	 *         weights, in that order.
+	 */
+
+	public List<RunningStats[]> getComponents() {
+		return components;
+	}
+
+	/**
+	 * @return the most components active each trial.
+	 */
+
+	public History getMaxCues() {
+		return maxCues;
+	}
+
+	/**
+	 * @return the totals of the average response each trial.
+	 */
+
+	public RunningStats getResponses() {
+		return responses;
+	}
+
+	/**
+	 * @return the number of runs.
+	 */
+
+	public long getRuns() {
+		return runs;
+	}
+
+	/**
+	 * @return the trial count of the last run.
+	 */
+
+	public int getTrialCount() {
+		return trialCount;
+	}
+
+	/**
+	 * @return the totals of the average weight each trial.
+	 */
+
+	public RunningStats getWeights() {
+		return weights;
+	}
+}
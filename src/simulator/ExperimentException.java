@@ -0,0 +1,18 @@
+package simulator;
+
+/**
+ * Thrown when a saved experiment can't be set up as a model, e.g. for a phase
+ * whose timings were never set.
+ */
+public class ExperimentException extends Exception {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * @param message
+	 *            what is wrong with the experiment
+	 */
+	public ExperimentException(String message) {
+		super(message);
+	}
+}
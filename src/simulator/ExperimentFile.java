@@ -0,0 +1,609 @@
+/**
+ *
+ */
+package simulator;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.Vector;
+
+import simulator.configurables.ContextConfig;
+import simulator.configurables.ContextConfig.Context;
+import simulator.configurables.ITIConfig;
+import simulator.configurables.TimingConfiguration;
+import simulator.util.Distributions;
+import simulator.util.Precision;
+import simulator.util.Recording;
+import simulator.util.Trace;
+
+/**
+ * An experiment as saved to a file: the settings of its model & the contents
+ * of the tables it was set up in, rows of objects as the view holds them.
+ * Read apart from the view, so the experiment can be shown in the tables to
+ * be worked on, or set up as a model & run without them.
+ */
+public class ExperimentFile {
+
+	/** Seed for files saved before seeds were, so that their runs repeat. **/
+	public static final long DEFAULT_SEED = 1;
+
+	/**
+	 * Read a saved experiment. Settings that files of its version don't hold
+	 * are left as they are for a new model, but for the seed, which is
+	 * {@link #DEFAULT_SEED} so that their runs repeat.
+	 *
+	 * @param file
+	 *            the file to read
+	 * @return the experiment in it.
+	 * @throws IOException
+	 *             if there's a problem reading the file.
+	 * @throws VersionException
+	 *             if the file is of an incompatible version.
+	 * @throws ClassNotFoundException
+	 *             if an object can't be unflattened.
+	 */
+	public static ExperimentFile read(File file) throws IOException,
+			VersionException, ClassNotFoundException {
+		InputStream in = new FileInputStream(file);
+		try {
+			return read(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Read a saved experiment from a stream, e.g. one sent to the server.
+	 * Only the classes an experiment is saved as are read, see
+	 * {@link ExperimentInputStream}, so a crafted stream can't have others
+	 * made.
+	 *
+	 * @param stream
+	 *            the stream to read, which is left open
+	 * @return the experiment in it.
+	 * @throws IOException
+	 *             if there's a problem reading the stream.
+	 * @throws VersionException
+	 *             if the experiment is of an incompatible version.
+	 * @throws ClassNotFoundException
+	 *             if an object can't be unflattened.
+	 */
+	public static ExperimentFile read(InputStream stream) throws IOException,
+			VersionException, ClassNotFoundException {
+		ObjectInputStream in = new ExperimentInputStream(
+				new BufferedInputStream(stream));
+		ExperimentFile experiment = new ExperimentFile();
+		experiment.readFrom(in);
+		return experiment;
+	}
+
+	/** Version of the simulator that saved the file. **/
+	private double version;
+	/** Number of groups. **/
+	private int groupNo;
+	/** Number of phases. **/
+	private int phaseNo;
+	/** Random trial orders to average. **/
+	private int combinationNo;
+	/** Whether the US is set per phase. **/
+	private boolean usAcrossPhases;
+	/** Whether configural cues are formed. **/
+	private boolean configuralCompounds;
+	/** Timestep size. **/
+	private double timestepSize;
+	/** Response threshold. **/
+	private double threshold;
+	/** Whether simulated responses are shown. **/
+	private boolean showResponse;
+	/** Whether context is simulated. **/
+	private boolean useContext;
+	/** Whether context is set per phase rather than once. **/
+	private boolean contextAcrossPhase;
+	/** Default context salience. **/
+	private double contextAlpha;
+	/** Whether compound results are shown. **/
+	private boolean compound;
+	/** Geometric rather than arithmetic means for variable durations. **/
+	private boolean geometricMean;
+	/** Exponential rather than uniform variable durations. **/
+	private boolean exponential;
+	/** Trace type. **/
+	private Trace traceType;
+	/** Variable duration draws to average. **/
+	private int variableCombinationNo;
+	/** Rows of the phases table. **/
+	private Vector<Object[]> phases;
+	/** Rows of the CS values table. **/
+	private Vector<Object[]> csValues;
+	/** Rows of the US values table. **/
+	private Vector<Object[]> usValues;
+	/** Rows of the other values table. **/
+	private Vector<Object[]> otherValues;
+	/** Timings set per trial type rather than per stimulus. **/
+	private boolean timingPerTrial;
+	/** Whether serial compounds & configurals are formed. **/
+	private boolean serial;
+	/** Zero traces between trials. **/
+	private boolean zeroTraces;
+	/** Restrict predictions to >= 0. **/
+	private boolean restrictPredictions;
+	/** Seed for trial orders, variable durations & responses. **/
+	private long randomSeed;
+	/** Give expected responses rather than sampled ones. **/
+	private boolean expectedResponses;
+	/** Stop adding random combinations once the averages settle. **/
+	private boolean adaptiveCombinations;
+	/** Largest standard error of an average that counts as settled. **/
+	private double combinationTolerance;
+	/** How much of the components' histories to keep. **/
+	private Recording recording;
+	/** Precision the histories & averaged results are stored at. **/
+	private Precision precision;
+	/** Traces below this are dropped, 0 to keep every trace. **/
+	private double traceCutoff;
+
+	private ExperimentFile() {
+		SimModel defaults = new SimModel();
+		variableCombinationNo = defaults.getVariableCombinationNo();
+		timingPerTrial = defaults.isTimingPerTrial();
+		serial = false;
+		zeroTraces = defaults.isZeroTraces();
+		restrictPredictions = defaults.isRestrictPredictions();
+		randomSeed = DEFAULT_SEED;
+		expectedResponses = defaults.isExpectedResponses();
+		adaptiveCombinations = defaults.isAdaptiveCombinations();
+		combinationTolerance = defaults.getCombinationTolerance();
+		recording = defaults.getRecording();
+		precision = defaults.getPrecision();
+		traceCutoff = defaults.getTraceCutoff();
+	}
+
+	/**
+	 * Check a value from one of the values tables.
+	 *
+	 * @param name
+	 *            the parameter
+	 * @param value
+	 *            its value
+	 * @param required
+	 *            true if the value may not be empty
+	 * @throws ExperimentException
+	 *             if the value is missing or not a number.
+	 */
+
+	private static void check(String name, String value, boolean required)
+			throws ExperimentException {
+		if (value.length() == 0) {
+			if (required) {
+				throw new ExperimentException("No value for " + name);
+			}
+			return;
+		}
+		try {
+			Double.parseDouble(value);
+		} catch (NumberFormatException e) {
+			throw new ExperimentException("Value " + value + " for " + name
+					+ " is not a number");
+		}
+	}
+
+	/**
+	 * Set the experiment up as a model ready to run, as the controller does
+	 * from the tables when asked to run it.
+	 *
+	 * @return the model.
+	 * @throws ExperimentException
+	 *             if a group or phase can't be set up, or a value is missing
+	 *             or wrong.
+	 */
+
+	public SimModel createModel() throws ExperimentException {
+		SimModel model = new SimModel();
+		model.setGroupNo(groupNo);
+		model.setPhaseNo(phaseNo);
+		model.setCombinationNo(combinationNo);
+		model.setTimestepSize(timestepSize);
+		model.setThreshold(threshold);
+		model.setShowResponse(showResponse);
+		model.setUseContext(useContext);
+		model.setContextAcrossPhase(contextAcrossPhase);
+		model.setContextAlpha(contextAlpha);
+		model.setIsGeometricMean(geometricMean);
+		model.setIsExponential(exponential);
+		model.setTraceType(traceType);
+		model.setVariableCombinationNo(variableCombinationNo);
+		model.setRandomSeed(randomSeed);
+		model.setTimingPerTrial(timingPerTrial);
+		model.setZeroTraces(zeroTraces);
+		model.setSerialConfigurals(configuralCompounds && serial);
+		model.setSerialCompounds(serial && compound);
+		model.setConfiguralCompounds(configuralCompounds);
+		model.setRestrictPredictions(restrictPredictions);
+		model.setExpectedResponses(expectedResponses);
+		model.setAdaptiveCombinations(adaptiveCombinations);
+		model.setCombinationTolerance(combinationTolerance);
+		model.setRecording(recording);
+		model.setPrecision(precision);
+		model.setTraceCutoff(traceCutoff);
+		model.setCSC(true);
+
+		int type = exponential ? Distributions.EXPONENTIAL
+				: Distributions.UNIFORM;
+		for (int row = 0; row < groupNo; row++) {
+			Object[] record = phases.get(row);
+			String name = (String) record[0];
+			if (name.length() == 0) {
+				throw new ExperimentException("No name for the group in row "
+						+ (row + 1));
+			}
+			SimGroup group = new SimGroup(name, phaseNo, combinationNo, model);
+			for (int c = 1; c < phaseNo + 1; c++) {
+				String phaseString = (String) record[5 * c - 4];
+				phaseString = phaseString == null ? "" : phaseString; //$NON-NLS-1$
+				// Timings follow their phase string, as when shown
+				TimingConfiguration timings = (TimingConfiguration) record[5 * c - 1];
+				timings.setStimuli(SimPhase.stringToCSList(phaseString,
+						timingPerTrial));
+				timings.setTimestep(timestepSize);
+				timings.setReinforced(phaseString.contains("+")
+						|| phaseString.isEmpty());
+				timings.getDurations().setType(type);
+				timings.getDurations().setGeo(geometricMean);
+				timings.reset();
+				timings.checkFilled(phaseString, timingPerTrial);
+				if (!timings.isConfigured()) {
+					throw new ExperimentException("The timings for phase " + c
+							+ ", group " + name + " are not set");
+				}
+				ITIConfig iti = (ITIConfig) record[5 * c];
+				iti.setType(type);
+				iti.setGeo(geometricMean);
+				// If context is off, use the empty context for this
+				// simulation.
+				ContextConfig context = !useContext ? ContextConfig.EMPTY
+						: (ContextConfig) record[5 * c - 3];
+				// An empty phase has no trials
+				String trialString = phaseString.length() == 0 ? "0" //$NON-NLS-1$
+						: phaseString.replaceAll("\\s", ""); //$NON-NLS-1$ //$NON-NLS-2$
+				boolean isRandom = ((Boolean) record[5 * c - 2])
+						.booleanValue();
+				if (!group.addPhase(trialString, isRandom, c,
+						configuralCompounds, (TreeMap<String, String>) model
+								.getConfigCuesNames(), timings, iti, context)) {
+					throw new ExperimentException("Phase " + c + " of group "
+							+ name + " can't be read");
+				}
+			}
+			model.addGroupIntoMap(name, group);
+		}
+		model.addValuesIntoMap();
+
+		// Saliences of the cues, as named in the table
+		Set<String> named = new HashSet<String>();
+		for (Object[] record : csValues) {
+			String name = (String) record[0];
+			for (int j = 1; j < record.length; j++) {
+				check(name, (String) record[j], true);
+				model.updateValues(name, j, (String) record[j]);
+			}
+			named.add(model.interfaceName2cueName(name));
+		}
+		for (String cue : model.getAlphaCues().keySet()) {
+			if (cue.length() == 1 && !Context.isContext(cue)
+					&& !named.contains(cue)) {
+				throw new ExperimentException("No value for "
+						+ model.cueName2InterfaceName(cue));
+			}
+		}
+		// US values, the same for every phase unless set per phase
+		for (Object[] record : usValues) {
+			String name = (String) record[0];
+			for (int j = 1; j < record.length; j++) {
+				check(name, (String) record[j], j == 1
+						&& !name.equals(Messages.getString("SimController.84"))); //$NON-NLS-1$
+			}
+			for (int j = 1; j <= phaseNo; j++) {
+				model.updateValues(name, j,
+						(String) record[usAcrossPhases ? j : 1]);
+			}
+		}
+		// Other values (gamma, delta, omega)
+		for (Object[] record : otherValues) {
+			String name = (String) record[0];
+			for (int j = 1; j < record.length; j++) {
+				check(name, (String) record[j], j == 1);
+			}
+			for (int j = 1; j <= phaseNo; j++) {
+				model.updateValues(name, j, (String) record[1]);
+			}
+		}
+		model.updateValuesOnGroups();
+		return model;
+	}
+
+	public boolean contextAcrossPhase() {
+		return contextAcrossPhase;
+	}
+
+	public int getCombinationNo() {
+		return combinationNo;
+	}
+
+	public double getCombinationTolerance() {
+		return combinationTolerance;
+	}
+
+	public double getContextAlpha() {
+		return contextAlpha;
+	}
+
+	public Vector<Object[]> getCSValues() {
+		return csValues;
+	}
+
+	public int getGroupNo() {
+		return groupNo;
+	}
+
+	public Vector<Object[]> getOtherValues() {
+		return otherValues;
+	}
+
+	public int getPhaseNo() {
+		return phaseNo;
+	}
+
+	public Vector<Object[]> getPhases() {
+		return phases;
+	}
+
+	public Precision getPrecision() {
+		return precision;
+	}
+
+	public long getRandomSeed() {
+		return randomSeed;
+	}
+
+	public Recording getRecording() {
+		return recording;
+	}
+
+	public double getThreshold() {
+		return threshold;
+	}
+
+	public double getTimestepSize() {
+		return timestepSize;
+	}
+
+	public double getTraceCutoff() {
+		return traceCutoff;
+	}
+
+	public Trace getTraceType() {
+		return traceType;
+	}
+
+	public Vector<Object[]> getUSValues() {
+		return usValues;
+	}
+
+	public int getVariableCombinationNo() {
+		return variableCombinationNo;
+	}
+
+	public double getVersion() {
+		return version;
+	}
+
+	public boolean isAdaptiveCombinations() {
+		return adaptiveCombinations;
+	}
+
+	public boolean isCompound() {
+		return compound;
+	}
+
+	public boolean isConfiguralCompounds() {
+		return configuralCompounds;
+	}
+
+	public boolean isExpectedResponses() {
+		return expectedResponses;
+	}
+
+	public boolean isExponential() {
+		return exponential;
+	}
+
+	public boolean isGeometricMean() {
+		return geometricMean;
+	}
+
+	public boolean isRestrictPredictions() {
+		return restrictPredictions;
+	}
+
+	public boolean isSerial() {
+		return serial;
+	}
+
+	/**
+	 * @return true if a single context runs through every phase.
+	 */
+	public boolean isSingleContext() {
+		return useContext && !contextAcrossPhase;
+	}
+
+	public boolean isTimingPerTrial() {
+		return timingPerTrial;
+	}
+
+	public boolean isUSAcrossPhases() {
+		return usAcrossPhases;
+	}
+
+	public boolean isUseContext() {
+		return useContext;
+	}
+
+	public boolean isZeroTraces() {
+		return zeroTraces;
+	}
+
+	public boolean showResponse() {
+		return showResponse;
+	}
+
+	/**
+	 * @param table
+	 *            rows of a table as saved
+	 * @return the rows, each an array of the row's cells.
+	 */
+
+	private static Vector<Object[]> rows(Object table) {
+		Vector<Object[]> rows = new Vector<Object[]>();
+		for (Object row : (Vector<?>) table) {
+			rows.add((Object[]) row);
+		}
+		return rows;
+	}
+
+	/**
+	 * Read the experiment in the order the controller saves it.
+	 */
+
+	private void readFrom(ObjectInputStream in) throws IOException,
+			VersionException, ClassNotFoundException {
+		version = in.readDouble();
+		if (version < 0.9) {
+			throw new VersionException();
+		}
+		groupNo = in.readInt();
+		phaseNo = in.readInt();
+		combinationNo = in.readInt();
+		usAcrossPhases = in.readBoolean();
+		configuralCompounds = in.readBoolean();
+		timestepSize = in.readDouble();
+		threshold = in.readDouble();
+		showResponse = in.readBoolean();
+		// Single context, else whether there's context at all
+		if (in.readBoolean()) {
+			in.readBoolean();
+			useContext = true;
+			contextAcrossPhase = false;
+		} else {
+			useContext = in.readBoolean();
+			contextAcrossPhase = useContext;
+		}
+		contextAlpha = in.readDouble();
+		compound = in.readBoolean();
+		geometricMean = in.readBoolean();
+		exponential = in.readBoolean();
+		if (version == 0.9) {
+			traceType = in.readBoolean() ? Trace.BOUNDED : Trace.ACCUMULATING;
+		} else if (version < 0.97) {
+			traceType = Trace.fromOld((simulator.SimCue.Trace) in.readObject());
+		} else {
+			traceType = (Trace) in.readObject();
+		}
+		if (version > 0.95) {
+			variableCombinationNo = in.readInt();
+		}
+		phases = rows(in.readObject());
+		csValues = rows(in.readObject());
+		usValues = rows(in.readObject());
+		otherValues = rows(in.readObject());
+		if (version > 0.96) {
+			timingPerTrial = in.readBoolean();
+			serial = in.readBoolean();
+			zeroTraces = in.readBoolean();
+			if (version > 0.98) {
+				restrictPredictions = in.readBoolean();
+			}
+			if (version > 0.999) {
+				randomSeed = in.readLong();
+			}
+			if (version > 0.9991) {
+				expectedResponses = in.readBoolean();
+			}
+			if (version > 0.9992) {
+				adaptiveCombinations = in.readBoolean();
+				combinationTolerance = in.readDouble();
+			}
+			if (version > 0.9993) {
+				recording = (Recording) in.readObject();
+			}
+			if (version > 0.9994) {
+				precision = (Precision) in.readObject();
+			}
+			if (version > 0.9995) {
+				traceCutoff = in.readDouble();
+			}
+		}
+	}
+
+	/**
+	 * A stream that reads only the classes a saved experiment is made of: the
+	 * simulator's own, the collections of java.util & the values of
+	 * java.lang, or arrays of them. Anything else is refused before it's made.
+	 * Cached results are read through it as well, being of the same classes.
+	 */
+	static class ExperimentInputStream extends ObjectInputStream {
+
+		public ExperimentInputStream(InputStream in) throws IOException {
+			super(in);
+		}
+
+		@Override
+		protected Class<?> resolveClass(ObjectStreamClass desc)
+				throws IOException, ClassNotFoundException {
+			if (!allowed(desc.getName())) {
+				throw new InvalidClassException(desc.getName(),
+						"not part of a saved experiment");
+			}
+			return super.resolveClass(desc);
+		}
+
+		@Override
+		protected Class<?> resolveProxyClass(String[] interfaces)
+				throws IOException, ClassNotFoundException {
+			throw new InvalidClassException("proxy",
+					"not part of a saved experiment");
+		}
+
+		/**
+		 * @param name
+		 *            the binary name of a class, as it's written in a stream
+		 * @return true if the class may be read.
+		 */
+		private static boolean allowed(String name) {
+			String element = name;
+			if (name.startsWith("[")) {
+				element = name.substring(name.lastIndexOf('[') + 1);
+				// Arrays of primitives
+				if (element.length() == 1) {
+					return true;
+				}
+				if (!element.startsWith("L") || !element.endsWith(";")) {
+					return false;
+				}
+				element = element.substring(1, element.length() - 1);
+			}
+			int dot = element.lastIndexOf('.');
+			String pack = dot < 0 ? "" : element.substring(0, dot);
+			return element.startsWith("simulator.") || pack.equals("java.lang")
+					|| pack.equals("java.util");
+		}
+	}
+}
@@ -3,6 +3,8 @@
  */
 package simulator;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * A message passing object for tracking progress in long running tasks and
  * instructing them to cancel if required.
@@ -35,6 +37,10 @@ public class ModelControl {
 	private int modCount;
 	private volatile boolean isComplete;
     private boolean madeExport;
+	/** Component updates made by the task. **/
+	private final AtomicLong componentUpdates = new AtomicLong();
+	/** Component updates skipped for traces below the cutoff. **/
+	private final AtomicLong skippedUpdates = new AtomicLong();
 
 	public ModelControl() {
 		progress = 0;
@@ -63,6 +69,34 @@ public class ModelControl {
 		return estimatedCycleTime / modCount;
 	}
 
+	/**
+	 * 
+	 * @param made
+	 *            component updates made
+	 * @param skipped
+	 *            component updates skipped as their traces were below the
+	 *            cutoff
+	 */
+
+	public void addUpdateCounts(long made, long skipped) {
+		componentUpdates.addAndGet(made);
+		skippedUpdates.addAndGet(skipped);
+	}
+
+	/**
+	 * @return the number of component updates made.
+	 */
+	public long getComponentUpdates() {
+		return componentUpdates.get();
+	}
+
+	/**
+	 * @return the number of component updates skipped.
+	 */
+	public long getSkippedUpdates() {
+		return skippedUpdates.get();
+	}
+
 	/**
 	 * @return the progress
 	 */
@@ -76,7 +110,7 @@ public class ModelControl {
 	 *            to apply to progress.
 	 */
 
-	public void incrementProgress(double increment) {
+	public synchronized void incrementProgress(double increment) {
 		progress += increment;
 	}
 
@@ -116,7 +150,7 @@ public class ModelControl {
 	 *            recorded run time for a subsection of the main task.
 	 */
 
-	public void setEstimatedCycleTime(long time) {
+	public synchronized void setEstimatedCycleTime(long time) {
 		time = Math.max(1, time);
 		modCount++;
 		estimatedCycleTime += time;// = Math.max(estimatedCycleTime,time);
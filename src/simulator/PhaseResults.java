@@ -0,0 +1,110 @@
+/**
+ *
+ */
+package simulator;
+
+import java.io.Serializable;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * What running a phase leaves behind: the cue lists it hands on, the probe
+ * results, the stimuli it presented & the serial compounds it found in them. Taken from a phase once it has run so
+ * that another phase run from the same state with the same inputs, in the
+ * same run or a later one, can take them on rather than running.
+ */
+public class PhaseResults implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+	/** Cue lists at the end of the phase. **/
+	private final Map<String, CueList> results;
+	/** Probe cue lists. **/
+	private final Map<String, CueList> probeResults;
+	/** Stimuli presented in the phase. **/
+	private final Set<CS> presentCS;
+	/** Longest duration of the phase's trials. **/
+	private final int maxMaxOnset;
+	/** Random combinations averaged. **/
+	private final int combinationsUsed;
+	/** Parts of each stimulus by name, serial compounds included. **/
+	private final Map<String, Set<CS>> parts;
+
+	/**
+	 * @param results
+	 *            cue lists at the end of the phase
+	 * @param probeResults
+	 *            probe cue lists
+	 * @param presentCS
+	 *            stimuli presented in the phase
+	 * @param maxMaxOnset
+	 *            longest duration of the phase's trials
+	 * @param combinationsUsed
+	 *            random combinations averaged
+	 * @param stimuli
+	 *            stimuli of the phase by name, with the parts the run added
+	 */
+	public PhaseResults(Map<String, CueList> results,
+			Map<String, CueList> probeResults, Set<CS> presentCS,
+			int maxMaxOnset, int combinationsUsed,
+			Map<String, SimStimulus> stimuli) {
+		this.results = new TreeMap<String, CueList>(results);
+		this.probeResults = new TreeMap<String, CueList>(probeResults);
+		this.presentCS = new HashSet<CS>(presentCS);
+		this.maxMaxOnset = maxMaxOnset;
+		this.combinationsUsed = combinationsUsed;
+		parts = new TreeMap<String, Set<CS>>();
+		for (Entry<String, SimStimulus> entry : stimuli.entrySet()) {
+			parts.put(entry.getKey(),
+					new LinkedHashSet<CS>(entry.getValue().getParts()));
+		}
+	}
+
+	/**
+	 * @return the number of random combinations averaged.
+	 */
+	public int getCombinationsUsed() {
+		return combinationsUsed;
+	}
+
+	/**
+	 * @param stimulus
+	 *            name of a stimulus of the phase
+	 * @return its parts, serial compounds included, or null if it isn't
+	 *         one.
+	 */
+	public Set<CS> getParts(String stimulus) {
+		return parts.get(stimulus);
+	}
+
+	/**
+	 * @return the longest duration of the phase's trials.
+	 */
+	public int getMaxMaxOnset() {
+		return maxMaxOnset;
+	}
+
+	/**
+	 * @return the stimuli presented in the phase.
+	 */
+	public Set<CS> getPresentCS() {
+		return presentCS;
+	}
+
+	/**
+	 * @return the probe cue lists.
+	 */
+	public Map<String, CueList> getProbeResults() {
+		return probeResults;
+	}
+
+	/**
+	 * @return the cue lists at the end of the phase.
+	 */
+	public Map<String, CueList> getResults() {
+		return results;
+	}
+}
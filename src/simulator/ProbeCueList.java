@@ -18,6 +18,8 @@ import simulator.util.Trace;
  **/
 public class ProbeCueList extends CompoundCueList {
 
+	private static final long serialVersionUID = 1L;
+
 	/**
 	 * @param symbol
 	 * @param alpha
@@ -0,0 +1,225 @@
+/**
+ *
+ */
+package simulator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.ref.SoftReference;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Results of phases that have been run, kept under a hash of everything
+ * they depend on so a run that comes to the same phase again can take them
+ * on instead. The most recently used are kept in memory, where they may be
+ * let go if memory runs short, and all of them may also be written to a
+ * directory, so they outlast the session & can be shared by whoever points
+ * at the same directory.
+ */
+public class ResultCache {
+
+	/** Suffix of the cache files. **/
+	public static final String SUFFIX = ".results";
+
+	/** Most results to keep in memory. **/
+	private final int capacity;
+	/** Results in memory, least recently used first. **/
+	private final LinkedHashMap<String, SoftReference<PhaseResults>> entries;
+	/** Directory results are also written to, null for memory only. **/
+	private File directory;
+
+	/**
+	 * @param capacity
+	 *            most results to keep in memory
+	 */
+	public ResultCache(int capacity) {
+		this.capacity = capacity;
+		entries = new LinkedHashMap<String, SoftReference<PhaseResults>>(16,
+				0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<String, SoftReference<PhaseResults>> eldest) {
+				return size() > ResultCache.this.capacity;
+			}
+		};
+	}
+
+	/**
+	 * Forget the results held in memory. Those on disk are kept.
+	 */
+
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * @param key
+	 *            hash of what the results depend on
+	 * @return the results, or null if there are none for the key.
+	 */
+
+	public synchronized PhaseResults get(String key) {
+		SoftReference<PhaseResults> held = entries.get(key);
+		PhaseResults results = held == null ? null : held.get();
+		if (results == null && directory != null) {
+			results = read(new File(directory, key + SUFFIX));
+			if (results != null) {
+				entries.put(key, new SoftReference<PhaseResults>(results));
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * @return the directory results are also written to, null if they are
+	 *         only held in memory.
+	 */
+
+	public synchronized File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Keep the results of a phase, writing them to the cache directory too
+	 * if there is one & they aren't there already.
+	 *
+	 * @param key
+	 *            hash of what the results depend on
+	 * @param results
+	 *            the results
+	 */
+
+	public synchronized void put(String key, PhaseResults results) {
+		entries.put(key, new SoftReference<PhaseResults>(results));
+		if (directory != null) {
+			File file = new File(directory, key + SUFFIX);
+			if (!file.exists()) {
+				write(file, results);
+			}
+		}
+	}
+
+	/**
+	 * Forget the results in memory holding any of a set of cue lists, as
+	 * they are about to be changed. Those on disk are separate copies & are
+	 * kept.
+	 *
+	 * @param lists
+	 *            the cue lists
+	 */
+
+	public synchronized void removeHolding(Collection<CueList> lists) {
+		Set<CueList> held = Collections
+				.newSetFromMap(new IdentityHashMap<CueList, Boolean>());
+		held.addAll(lists);
+		Iterator<SoftReference<PhaseResults>> iterEntry = entries.values()
+				.iterator();
+		while (iterEntry.hasNext()) {
+			PhaseResults results = iterEntry.next().get();
+			if (results == null) {
+				iterEntry.remove();
+				continue;
+			}
+			for (CueList list : results.getResults().values()) {
+				if (held.contains(list)) {
+					iterEntry.remove();
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param directory
+	 *            directory to also write results to & look for them in, null
+	 *            to keep them in memory only
+	 */
+
+	public synchronized void setDirectory(File directory) {
+		if (directory != null) {
+			directory.mkdirs();
+		}
+		this.directory = directory;
+	}
+
+	/**
+	 * @param file
+	 *            cache file
+	 * @return the results in it, or null if it is missing or can't be read,
+	 *         e.g. for being written by another version or holding classes
+	 *         results aren't made of.
+	 */
+
+	private static PhaseResults read(File file) {
+		if (!file.isFile()) {
+			return null;
+		}
+		try {
+			ObjectInputStream in = new ExperimentFile.ExperimentInputStream(
+					new BufferedInputStream(new FileInputStream(file)));
+			try {
+				return (PhaseResults) in.readObject();
+			} finally {
+				in.close();
+			}
+		} catch (InvalidClassException e) {
+			// Holds a class results aren't made of, so not to be trusted
+			return null;
+		} catch (IOException e) {
+			return null;
+		} catch (ClassNotFoundException e) {
+			return null;
+		} catch (ClassCastException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Write results to a cache file, by way of a temporary file so that no
+	 * one reading the directory meanwhile sees it half written.
+	 *
+	 * @param file
+	 *            cache file
+	 * @param results
+	 *            the results
+	 */
+
+	private static void write(File file, PhaseResults results) {
+		File temp = null;
+		try {
+			temp = File.createTempFile(file.getName(), ".tmp",
+					file.getParentFile());
+			ObjectOutputStream out = new ObjectOutputStream(
+					new BufferedOutputStream(new FileOutputStream(temp)));
+			try {
+				out.writeObject(results);
+			} finally {
+				out.close();
+			}
+			if (!temp.renameTo(file)) {
+				temp.delete();
+			}
+		} catch (IOException e) {
+			System.err.println("Couldn't cache results in " + file + ": "
+					+ e.getMessage());
+			if (temp != null) {
+				temp.delete();
+			}
+		}
+	}
+}
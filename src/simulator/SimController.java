@@ -30,11 +30,9 @@ import java.awt.event.ActionListener;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.net.URI;
 import java.text.MessageFormat;
@@ -365,6 +363,32 @@ public class SimController implements ActionListener, PropertyChangeListener {
 		if (e.getActionCommand() == "restrictPredictions") {
 			model.setRestrictPredictions(view.isRestrictPredictions());
 		}
+		if (e.getActionCommand() == "expectedResponses") {
+			model.setExpectedResponses(view.isExpectedResponses());
+		}
+		if (e.getActionCommand() == "adaptiveCombinations") {
+			model.setAdaptiveCombinations(view.isAdaptiveCombinations());
+		}
+		// Results are cached in memory for the session, and on disk too in
+		// a directory of the user's choosing, which may be shared
+		if (e.getActionCommand() == "diskCache") { //$NON-NLS-1$
+			File directory = null;
+			if (view.isDiskCache()) {
+				JFileChooser fc = new JFileChooser();
+				fc.setCurrentDirectory(new File(lastDirectory));
+				fc.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+				fc.setDialogTitle(Messages
+						.getString("SimController.cacheDirectory")); //$NON-NLS-1$
+				int returnVal = fc.showDialog(view,
+						Messages.getString("SimController.cacheSelect")); //$NON-NLS-1$
+				if (returnVal == JFileChooser.APPROVE_OPTION) {
+					directory = fc.getSelectedFile();
+				} else {
+					view.setDiskCache(false);
+				}
+			}
+			SimEngine.resultCache.setDirectory(directory);
+		}
 		if (e.getActionCommand() == "timingPerTrial") {
 			view.updateTimingConfigs();
 			view.updatePhasesColumnsWidth();
@@ -490,6 +514,43 @@ public class SimController implements ActionListener, PropertyChangeListener {
             }
         }
 
+		// The user chooses to approximate traces below a cutoff
+		if (e.getActionCommand() == "traceCutoff") { //$NON-NLS-1$
+			double n = view
+					.getDoubleInput(
+							Messages.getString("SimController.traceCutoffMessage"), "" + getModel().getTraceCutoff()); //$NON-NLS-1$ //$NON-NLS-2$
+			// Check if 'Cancel' was pressed
+			if (n >= 0) {
+				getModel().setTraceCutoff(n);
+			}
+		}
+
+		// The user chooses how settled adaptive combinations must be
+		if (e.getActionCommand() == "combinationTolerance") { //$NON-NLS-1$
+			double n = view
+					.getDoubleInput(
+							Messages.getString("SimController.combinationToleranceMessage"), "" + getModel().getCombinationTolerance()); //$NON-NLS-1$ //$NON-NLS-2$
+			// Check if 'Cancel' was pressed
+			if (n >= 0) {
+				getModel().setCombinationTolerance(n);
+			}
+		}
+
+		// The user chooses the seed runs are reproduced from
+		if (e.getActionCommand() == "randomSeed") { //$NON-NLS-1$
+			String n = view
+					.getStringInput(
+							Messages.getString("SimController.randomSeedMessage"), "" + getModel().getRandomSeed()); //$NON-NLS-1$ //$NON-NLS-2$
+			// Check if 'Cancel' was pressed
+			if (n != null) {
+				try {
+					getModel().setRandomSeed(Long.parseLong(n.trim()));
+				} catch (NumberFormatException ex) {
+					// Keep the current seed
+				}
+			}
+		}
+
 		// The user chooses to change the default timestep size
 		if (e.getActionCommand() == "timestep") { //$NON-NLS-1$
 			Double n = view
@@ -641,7 +702,7 @@ public class SimController implements ActionListener, PropertyChangeListener {
 			clearModel(getModel().getGroupNo(), getModel().getPhaseNo(),
 					getModel().getCombinationNo());
 			getModel().setUseContext(view.isUseContext());
-			VariableDistribution.newRandomSeed();
+			getModel().setRandomSeed(System.currentTimeMillis());
 		}
 
 		// The user presses the 'Run' button which updates the model with the
@@ -756,17 +817,22 @@ public class SimController implements ActionListener, PropertyChangeListener {
 				ImageIcon icon = createImageIcon("/simulator/extras/TD.png", ""); //$NON-NLS-1$ //$NON-NLS-2$
 				simGraph.setIconImage(icon.getImage());
 
+				// Component graphs need more than the summary recorded
+				boolean components = getModel().getRecording() != Recording.SUMMARY;
+
 				if (getModel().showResponse() && getModel().isCSC()) {
 
-					SimGraph respGraph = new ResponseGraph(Messages.format("SimController.responseGraphTitle",messageArguments), getModel(), i, view.isSetCompound()); //$NON-NLS-1$
+					if (components) {
+						SimGraph respGraph = new ResponseGraph(Messages.format("SimController.responseGraphTitle",messageArguments), getModel(), i, view.isSetCompound()); //$NON-NLS-1$
 
-					respGraph
-							.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
-					respGraph.pack();
-					respGraph.setLocation(60 + i * 20, 50 + i * 20);
-					respGraph.setVisible(true);
+						respGraph
+								.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+						respGraph.pack();
+						respGraph.setLocation(60 + i * 20, 50 + i * 20);
+						respGraph.setVisible(true);
 
-					respGraph.setIconImage(icon.getImage());
+						respGraph.setIconImage(icon.getImage());
+					}
 
 					SimGraph avgRespGraph = new AverageResponseGraph(Messages.format("SimController.avgResponseGraphTitle",messageArguments), getModel(), i, view.isSetCompound()); //$NON-NLS-1$
 
@@ -781,7 +847,7 @@ public class SimController implements ActionListener, PropertyChangeListener {
 							.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
 				}
 
-				if (getModel().isCSC()) {
+				if (getModel().isCSC() && components) {
 
 					SimGraph componentGraph = new ComponentGraph(Messages.format("SimController.componentGraphTitle",messageArguments), getModel(), i, view.isSetCompound()); //$NON-NLS-1$
 
@@ -866,7 +932,11 @@ public class SimController implements ActionListener, PropertyChangeListener {
 
 						}
 						if (okToContinue) {
-							exporter = new SimExport(view, getModel(), name, file);
+							exporter = new SimExport(getModel(),
+									view.getCSValuesTableModel(),
+									view.getUSValuesTableModel(),
+									view.getOtherValuesTableModel(),
+									view.isSetCompound(), name, file);
 							exporterTask = new ExportTask();
 							exporterTask.addPropertyChangeListener(this);
 							exporterTask.execute();
@@ -975,6 +1045,8 @@ public class SimController implements ActionListener, PropertyChangeListener {
 					getModel().setIsExponential(view.isExponential());
 					getModel().setContextAlpha(view.getContextAlpha());
 					getModel().setTraceType(view.getTraceType());
+					getModel().setRecording(view.getRecording());
+					getModel().setPrecision(view.getPrecision());
 					getModel().setTimingPerTrial(view.timingPerTrial());
 					getModel().setZeroTraces(view.getZeroTraces());
 					getModel().setSerialConfigurals(
@@ -1186,78 +1258,63 @@ public class SimController implements ActionListener, PropertyChangeListener {
 
 	private void loadObjects(final File file) throws IOException,
 			VersionException, ClassNotFoundException {
-		ObjectInputStream in = new ObjectInputStream(new FileInputStream(file));
-		double version = in.readDouble();
-		if (version < 0.9) {
-			throw new VersionException();
-		}
-		clearModel(in.readInt(), in.readInt(), in.readInt());
-		view.setIsUSAcrossPhases(in.readBoolean());
-		view.setIsSetConfiguralCompounds(in.readBoolean());
+		ExperimentFile experiment = ExperimentFile.read(file);
+		clearModel(experiment.getGroupNo(), experiment.getPhaseNo(),
+				experiment.getCombinationNo());
+		view.setIsUSAcrossPhases(experiment.isUSAcrossPhases());
+		view.setIsSetConfiguralCompounds(experiment.isConfiguralCompounds());
 		view.setStatusComponent(view.isSetConfiguralCompounds(),
 				"SetConfiguralCompounds"); //$NON-NLS-1$
-		getModel().setTimestepSize(in.readDouble());
-		getModel().setThreshold(in.readDouble());
-		getModel().setShowResponse(in.readBoolean());
+		getModel().setTimestepSize(experiment.getTimestepSize());
+		getModel().setThreshold(experiment.getThreshold());
+		getModel().setShowResponse(experiment.showResponse());
 		view.setStatusComponent(getModel().showResponse(), "threshold"); //$NON-NLS-1$
 		// Set the context configuration.
-		boolean context = true;
-		if (in.readBoolean()) {
-			in.readBoolean();
+		boolean context = experiment.isUseContext();
+		if (experiment.isSingleContext()) {
 			view.setStatusComponent(true, "SingleContext"); //$NON-NLS-1$
-		} else if (!in.readBoolean()) {
+		} else if (!context) {
 			view.setStatusComponent(true, "SetContext"); //$NON-NLS-1$
-			context = false;
 		} else {
 			view.setStatusComponent(true, "SetContextAcrossPhases"); //$NON-NLS-1$
 		}
-		double omegaAlpha = in.readDouble();
-		view.setOmegaSalience(omegaAlpha);
+		view.setOmegaSalience(experiment.getContextAlpha());
 		getModel().setUseContext(context);
-		view.setIsSetCompound(in.readBoolean());
-		view.setStatusComponent(in.readBoolean(), "geo"); //$NON-NLS-1$
-		view.setStatusComponent(in.readBoolean(), "exp"); //$NON-NLS-1$
-		if (version == 0.9) {
-			view.setTraceType(in.readBoolean() ? Trace.BOUNDED
-					: Trace.ACCUMULATING);
-		} else if (version < 0.97) {
-			Trace trace = Trace.fromOld((simulator.SimCue.Trace) in
-					.readObject());
-			view.setTraceType(trace);
-		} else {
-			view.setTraceType((Trace) in.readObject());
-		}
-		if (version > 0.95) {
-			getModel().setVariableCombinationNo(in.readInt());
-		}
+		view.setIsSetCompound(experiment.isCompound());
+		view.setStatusComponent(experiment.isGeometricMean(), "geo"); //$NON-NLS-1$
+		view.setStatusComponent(experiment.isExponential(), "exp"); //$NON-NLS-1$
+		view.setTraceType(experiment.getTraceType());
+		getModel().setVariableCombinationNo(
+				experiment.getVariableCombinationNo());
 		view.clearHidden();
-		Vector phasesModel = (Vector) in.readObject();
-		
-		view.getCSValuesTableModel().setData((Vector) in.readObject());
-		view.getUSValuesTableModel().setData((Vector) in.readObject());
-		view.getOtherValuesTableModel().setData((Vector) in.readObject());
-		VariableDistribution.newRandomSeed();
-
-		if (version > 0.96) {
-			// Per trial timings
-			boolean on = in.readBoolean();
-			getModel().setTimingPerTrial(on);
-			view.setTimingPerTrial(on);
 
-			// Serial compounds & configurals
-			view.setUseSerialCompounds(in.readBoolean());
-			// Zero traces per trial
-			view.setZeroTraces(in.readBoolean());
-			if (version > 0.98) {
-				view.setRestrictPredictions(in.readBoolean());
-			}
-		}
-		view.getPhasesTableModel().setData(phasesModel);
+		view.getCSValuesTableModel().setData(experiment.getCSValues());
+		view.getUSValuesTableModel().setData(experiment.getUSValues());
+		view.getOtherValuesTableModel().setData(experiment.getOtherValues());
+		getModel().setRandomSeed(experiment.getRandomSeed());
+
+		// Per trial timings
+		getModel().setTimingPerTrial(experiment.isTimingPerTrial());
+		view.setTimingPerTrial(experiment.isTimingPerTrial());
+		// Serial compounds & configurals
+		view.setUseSerialCompounds(experiment.isSerial());
+		// Zero traces per trial
+		view.setZeroTraces(experiment.isZeroTraces());
+		view.setRestrictPredictions(experiment.isRestrictPredictions());
+		getModel().setExpectedResponses(experiment.isExpectedResponses());
+		view.setExpectedResponses(experiment.isExpectedResponses());
+		getModel().setAdaptiveCombinations(experiment.isAdaptiveCombinations());
+		view.setAdaptiveCombinations(experiment.isAdaptiveCombinations());
+		getModel().setCombinationTolerance(experiment.getCombinationTolerance());
+		view.setRecording(experiment.getRecording());
+		view.setPrecision(experiment.getPrecision());
+		getModel().setTraceCutoff(experiment.getTraceCutoff());
+
+		view.getPhasesTableModel().setData(experiment.getPhases());
 		view.getPhasesTable().createDefaultColumnsFromModel();
 		view.getPhasesTable().getColumnModel().getColumn(1).setCellEditor(new TrialStringEditor());
 		view.updatePhasesColumnsWidth();
 		view.toggleContext(context);
-		in.close();
 		view.updateTimingConfigs();
 	}
 
@@ -1340,7 +1397,7 @@ public class SimController implements ActionListener, PropertyChangeListener {
 			ObjectOutputStream out = new ObjectOutputStream(
 					new FileOutputStream(file));
 			// Save file version
-			out.writeDouble(Simulator.VERSION);
+			out.writeDouble(SimEngine.VERSION);
 			// Number of groups
 			out.writeInt(getModel().getGroupNo());
 			// Number of phases
@@ -1394,6 +1451,19 @@ public class SimController implements ActionListener, PropertyChangeListener {
 			out.writeBoolean(getModel().isZeroTraces());
 			// Restrict predictions
 			out.writeBoolean(getModel().isRestrictPredictions());
+			// Random seed
+			out.writeLong(getModel().getRandomSeed());
+			// Expected responses
+			out.writeBoolean(getModel().isExpectedResponses());
+			// Adaptive combinations
+			out.writeBoolean(getModel().isAdaptiveCombinations());
+			out.writeDouble(getModel().getCombinationTolerance());
+			// Recording profile
+			out.writeObject(getModel().getRecording());
+			// Storage precision
+			out.writeObject(getModel().getPrecision());
+			// Trace cutoff
+			out.writeDouble(getModel().getTraceCutoff());
 			out.close();
 		}
 	}
@@ -32,11 +32,11 @@
 package simulator;
 
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Random;
 
 import simulator.configurables.ContextConfig.Context;
+import simulator.util.History;
+import simulator.util.Precision;
 import simulator.util.Response;
 
 /**
@@ -46,7 +46,9 @@ import simulator.util.Response;
  * Additionally modified to act as part of a CSC in temporal difference by
  * adding an eligibility trace that is updated on every timestep.
  */
-public class SimCue implements Comparable {
+public class SimCue implements Comparable, Serializable {
+
+	private static final long serialVersionUID = 1L;
 
 	/**
 	 * City University BSc Computing with Artificial Intelligence Project title:
@@ -74,11 +76,11 @@ public class SimCue implements Comparable {
 	private String symbol;
 	private Double alpha;
 	/** Historic weights. **/
-	private ArrayList<Double> assocValue;
+	private History assocValue;
 	/** Historic average weights. **/
-	private ArrayList<Double> avgAssocValue;
-	/** Eligibility trace for this cue. **/
-	private List<Double> trace;
+	private History avgAssocValue;
+	/** Spread of the weights across averaged runs, null for a single run. **/
+	private History assocValueSd;
 	/** Recently active indicator. **/
 	private boolean active;
 	/** Current eligibility trace. **/
@@ -90,9 +92,15 @@ public class SimCue implements Comparable {
 	/** Rule used to calculate responses. **/
 	private Response decisionRule;
 	/** Historic responses. **/
-	private List<Double> responses;
-	private List<Double> thresholds;
+	private History responses;
 	private Double avgAssoc;
+	/**
+	 * CSC holding the working weight, trace and active flag of this cue, or
+	 * null if the cue holds its own.
+	 **/
+	private CueList owner;
+	/** Position of this cue's working values in its CSC. **/
+	private int slot;
 
 	/**
 	 * Cue's Constructor method.
@@ -104,20 +112,17 @@ public class SimCue implements Comparable {
 	 */
 	public SimCue(String symbol, Double alpha) {
 
-		assocValue = new ArrayList<Double>(50);
-		avgAssocValue = new ArrayList<Double>(50);
+		assocValue = new History(50);
+		avgAssocValue = new History(50);
 		setAssocValue(new Double(0));
 		this.symbol = symbol;
 		this.alpha = alpha;
-		this.trace = new ArrayList<Double>();
 		traceVal = 0;
 		assoc = 0;
 		active = false;
 		traceType = simulator.util.Trace.REPLACING;
 		setDecisionRule(Response.CHURCH_KIRKPATRICK);
-		responses = new ArrayList<Double>();
-        int timesteps = Simulator.getController().getModel().getResponsesPerMinute();
-		thresholds = new ArrayList<Double>(timesteps);
+		responses = new History(50);
 	}
 
 	public SimCue(String symbol, Double alpha, simulator.util.Trace trace) {
@@ -156,7 +161,7 @@ public class SimCue implements Comparable {
 	 */
 
 	public SimCue copy() {
-		SimCue copy = new SimCue(symbol, alpha);
+		SimCue copy = new SimCue(symbol, getAlpha());
 		copy.setTraceType(traceType);
 		copy.setDecisionRule(decisionRule);
 		return copy;
@@ -168,6 +173,9 @@ public class SimCue implements Comparable {
 	 * @return a Double value of the alpha for the specified cue.
 	 */
 	public Double getAlpha() {
+		if (owner != null) {
+			return owner.alphas[slot];
+		}
 		return alpha;
 	}
 
@@ -179,7 +187,7 @@ public class SimCue implements Comparable {
 	 *            the experiments trial.
 	 * @return the Double value of the associative value on the requested trial.
 	 */
-	public Double getAssocValueAt(int trial) {
+	public double getAssocValueAt(int trial) {
 		return assocValue.get(trial);
 	}
 
@@ -198,13 +206,13 @@ public class SimCue implements Comparable {
 	 * Returns the the ArrayList assocValue which represents the associative
 	 * values of the specified cue.
 	 * 
-	 * @return the ArrayList<Double> value of the associative strength.
+	 * @return the history of the associative strength.
 	 */
-	public ArrayList<Double> getAssocValueVector() {
+	public History getAssocValueVector() {
 		return assocValue;
 	}
 	
-	public ArrayList<Double> getAvgAssocValueVector() {
+	public History getAvgAssocValueVector() {
 		return avgAssocValue;
 	}
 
@@ -220,10 +228,10 @@ public class SimCue implements Comparable {
 	 * 
 	 * @return a Double value of the last associative strength.
 	 */
-	public Double getLastAssocValue() {
+	public double getLastAssocValue() {
 		// return assocValue.isEmpty() ? 0 : (Double)
 		// assocValue.get(assocValue.size() - 1);
-		return assoc;
+		return owner == null ? assoc : owner.weights[slot];
 	}
 
 	/**
@@ -232,7 +240,7 @@ public class SimCue implements Comparable {
 	public double getLastPrediction() {
 		double last = 0;
 
-		if (assocValue.size() > 2) {
+		if (assocValue.size() > 2 && assocValue.holds(assocValue.size() - 2)) {
 			last = assocValue.get(assocValue.size() - 2);
 		}
 
@@ -246,13 +254,13 @@ public class SimCue implements Comparable {
 	 */
 
 	public double getLastTrace() {
-		return traceVal;
+		return owner == null ? traceVal : owner.traces[slot];
 	}
 
 	/**
 	 * @return the responses
 	 */
-	public List<Double> getResponses() {
+	public History getResponses() {
 		return responses;
 	}
 
@@ -265,13 +273,6 @@ public class SimCue implements Comparable {
 		return symbol;
 	}
 
-	/**
-	 * @return the list of eligibility traces
-	 */
-	public List<Double> getTraceList() {
-		return trace;
-	}
-
 	/**
 	 * 
 	 * @return the trace type used.
@@ -288,17 +289,34 @@ public class SimCue implements Comparable {
 	 */
 
 	public boolean isActive() {
-		return active;
+		return owner == null ? active : owner.actives[slot];
 	}
 
-	public void makeResponse(double threshold, double decay) {
-		Random random = new Random();
-        int timesteps = Simulator.getController().getModel().getResponsesPerMinute();
-		thresholds.clear();
-		for (int i = 0; i < timesteps; i++) {
-			thresholds.add(random.nextDouble());
-		}
-		responses.add(response(threshold, decay));
+	/**
+	 * Simulate this trial's response, drawing it from the given generator.
+	 * 
+	 * @param threshold
+	 * @param decay
+	 * @param random
+	 *            generator for the run this cue belongs to
+	 */
+
+	public void makeResponse(double threshold, double decay, Random random) {
+		responses.add(response(threshold, decay, random));
+	}
+
+	/**
+	 * Simulate this trial's response with a rule already specialised to its
+	 * settings.
+	 * 
+	 * @param kernel
+	 *            response rule for this cue's decision rule
+	 * @param random
+	 *            generator for the run this cue belongs to
+	 */
+
+	public void makeResponse(Response.Kernel kernel, Random random) {
+		responses.add(kernel.get(getLastAvgAssocValue(), random));
 	}
 
 	/**
@@ -319,17 +337,26 @@ public class SimCue implements Comparable {
 		setAssocValue(new Double(0));
 		avgAssocValue.clear();
 		setAvgAssocValue(new Double(0));
-		alpha = new Double(0);
-		trace.clear();
-		traceVal = 0d;
+		setAlpha(new Double(0));
+		setTrace(0d);
 	}
 
 	/**
 	 * @param threshold
+	 * @param random
+	 *            generator for the run this cue belongs to
 	 * @return
 	 */
-	public double response(double threshold, double decay) {
-		return getDecisionRule().get(threshold, thresholds, avgAssoc, decay);
+	public double response(double threshold, double decay, Random random) {
+		SimulationContext simulation = owner.getSimulationContext();
+		if (simulation.isExpectedResponses()) {
+			return getDecisionRule().expected(threshold,
+					simulation.getResponsesPerMinute(),
+					getLastAvgAssocValue(), decay);
+		}
+		return getDecisionRule().get(threshold,
+				simulation.getResponsesPerMinute(), getLastAvgAssocValue(),
+				decay, random);
 	}
 
 	/**
@@ -357,7 +384,11 @@ public class SimCue implements Comparable {
 	 */
 
 	public void setActive(boolean b) {
-		active = b;
+		if (owner == null) {
+			active = b;
+		} else {
+			owner.setActive(slot, b);
+		}
 	}
 
 	/**
@@ -368,6 +399,9 @@ public class SimCue implements Comparable {
 	 */
 	public void setAlpha(Double alpha) {
 		this.alpha = alpha;
+		if (owner != null && alpha != null) {
+			owner.alphas[slot] = alpha;
+		}
 	}
 
 	/**
@@ -376,14 +410,23 @@ public class SimCue implements Comparable {
 	 * @param av
 	 *            a Double value of the associative strength.
 	 */
-	public void setAssocValue(Double av) {
+	public void setAssocValue(double av) {
 		// assocValue.add(av);
-		assoc = av;
-		avgAssoc = av;
+		if (owner == null) {
+			assoc = av;
+			avgAssoc = av;
+		} else {
+			owner.weights[slot] = av;
+			owner.averages[slot] = av;
+		}
 	}
 	
-	public void setAvgAssocValue(Double av) {
-		avgAssoc = av;
+	public void setAvgAssocValue(double av) {
+		if (owner == null) {
+			avgAssoc = av;
+		} else {
+			owner.averages[slot] = av;
+		}
 	}
 
 	/**
@@ -397,8 +440,24 @@ public class SimCue implements Comparable {
 	 *            the new associative value.
 	 */
 	public void setAssocValueAt(int n, Double av) {
-		assocValue.remove(n);
-		assocValue.add(n, av);
+		assocValue.set(n, av);
+	}
+
+	/**
+	 * @param sd
+	 *            the standard deviation of the weights across the runs
+	 *            averaged into this cue.
+	 */
+	public void setAssocValueSd(History sd) {
+		assocValueSd = sd;
+	}
+
+	/**
+	 * @return the standard deviation of the weights across the runs averaged
+	 *         into this cue, or null for a single run.
+	 */
+	public History getAssocValueSd() {
+		return assocValueSd;
 	}
 
 	// Added Alberto Fern�ndez July-2011
@@ -407,12 +466,17 @@ public class SimCue implements Comparable {
 	 * values of the specified cue.
 	 * 
 	 * @param av
-	 *            an ArrayList<Double> value of the associative strength.
+	 *            a history of the associative strength.
 	 */
-	public void setAssocValueVector(List<Double> av) {
+	public void setAssocValueVector(History av) {
 		assocValue.clear();
 		assocValue.addAll(av);
-		assoc = av.size() > 0 ? av.get(av.size() - 1) : 0;
+		double last = av.size() > 0 ? av.get(av.size() - 1) : 0;
+		if (owner == null) {
+			assoc = last;
+		} else {
+			owner.weights[slot] = last;
+		}
 	}
 
 	/**
@@ -427,7 +491,7 @@ public class SimCue implements Comparable {
 	 * @param responses
 	 *            the responses to set
 	 */
-	public void setResponses(List<Double> responses) {
+	public void setResponses(History responses) {
 		this.responses = responses;
 	}
 
@@ -439,25 +503,52 @@ public class SimCue implements Comparable {
 	 */
 
 	public void setTrace(double d) {
-		traceVal = d;
+		if (owner == null) {
+			traceVal = d;
+		} else {
+			owner.setTrace(slot, d);
+		}
 	}
 
 	/**
+	 * 
 	 * @param trace
-	 *            the eligibility trace list to set
+	 *            the type of trace to use.
 	 */
-	public void setTraceList(List<Double> trace) {
-		this.trace = trace;
+
+	public void setTraceType(simulator.util.Trace type) {
+		traceType = type;
 	}
 
 	/**
+	 * Hold only the latest trials of this cue's weight, averaged weight &
+	 * response histories from now on.
 	 * 
-	 * @param trace
-	 *            the type of trace to use.
+	 * @param window
+	 *            most trials to hold, 0 for all
 	 */
 
-	public void setTraceType(simulator.util.Trace type) {
-		traceType = type;
+	public void setHistoryWindow(int window) {
+		assocValue.setWindow(window);
+		avgAssocValue.setWindow(window);
+		responses.setWindow(window);
+	}
+
+	/**
+	 * Store this cue's weight, averaged weight & response histories, and any
+	 * weight deviations, at a given precision.
+	 * 
+	 * @param precision
+	 *            precision to store them at
+	 */
+
+	public void setHistoryPrecision(Precision precision) {
+		assocValue.setPrecision(precision);
+		avgAssocValue.setPrecision(precision);
+		responses.setPrecision(precision);
+		if (assocValueSd != null) {
+			assocValueSd.setPrecision(precision);
+		}
 	}
 
 	/**
@@ -465,13 +556,14 @@ public class SimCue implements Comparable {
 	 */
 
 	public void store() {
-		assocValue.add(assoc);
-		avgAssocValue.add(avgAssoc);
+		assocValue.add(getLastAssocValue());
+		avgAssocValue.add(getLastAvgAssocValue());
 	}
 
 	@Override
 	public String toString() {
-		return symbol + " α(" + alpha + "), V(" + assoc + ")";
+		return symbol + " α(" + getAlpha() + "), V(" + getLastAssocValue()
+				+ ")";
 	}
 
 	/**
@@ -486,38 +578,70 @@ public class SimCue implements Comparable {
 	public void update(double betaError, double delta, double gamma) {
 		// Update trace & weight
 		// Multiply by stimulus' alpha
-		double deltaWeight = alpha * betaError * traceVal;
+		double deltaWeight = getAlpha() * betaError * getLastTrace();
 
 		// Update weight
-		assoc += deltaWeight;
-		avgAssoc = assoc;
+		setAssocValue(getLastAssocValue() + deltaWeight);
 	}
 
 	public void updateTrace(double delta, double gamma) {
 		double newTrace = 0;
-		newTrace = traceType.get(delta, gamma, traceVal, isActive());
-		traceVal = newTrace;
-		active = false; // Components active for only single time-step
+		newTrace = traceType.get(delta, gamma, getLastTrace(), isActive());
+		setTrace(newTrace);
+		setActive(false); // Components active for only single time-step
 	}
 
 	/**
 	 * @return
 	 */
-	public Double getLastAvgAssocValue() {
-		return avgAssoc;
+	public double getLastAvgAssocValue() {
+		return owner == null ? avgAssoc : owner.averages[slot];
 	}
 
 	/**
 	 * @param asList
 	 */
-	public void setAvgAssocValueVector(List<Double> av) {
+	public void setAvgAssocValueVector(History av) {
 		avgAssocValue.clear();
 		avgAssocValue.addAll(av);
-		avgAssoc = av.size() > 0 ? av.get(av.size() - 1) : 0;
+		setAvgAssocValue(av.size() > 0 ? av.get(av.size() - 1) : 0);
+	}
+
+	/**
+	 * Move this cue's working values into a CSC's arrays.
+	 * 
+	 * @param list
+	 *            the CSC this cue now belongs to
+	 * @param index
+	 *            position of the cue in the CSC
+	 */
+
+	void attach(CueList list, int index) {
+		double weight = getLastAssocValue();
+		double average = getLastAvgAssocValue();
+		double trace = getLastTrace();
+		boolean isActive = isActive();
+		Double salience = getAlpha();
+		owner = list;
+		slot = index;
+		owner.weights[slot] = weight;
+		owner.averages[slot] = average;
+		owner.traces[slot] = trace;
+		owner.actives[slot] = isActive;
+		owner.alphas[slot] = salience == null ? 0 : salience;
+	}
+
+	/**
+	 * @param index
+	 *            new position of the cue in its CSC
+	 */
+
+	void setSlot(int index) {
+		slot = index;
 	}
 
     public double weightedSum(SimCue compound, int trial) {
-        double weight = Simulator.getController().getModel().getSerialResponseWeight();
+        double weight = owner.getSimulationContext().getSerialResponseWeight();
         return (response(trial)*weight + compound.response(trial)*(1 - weight)) / 2;
     }
 
@@ -0,0 +1,26 @@
+/**
+ *
+ */
+package simulator;
+
+import jsr166y.ForkJoinPool;
+
+/**
+ * What the simulation engine shares between the models run in one JVM: the
+ * version results are produced by, the pool runs are carried out on & the
+ * cache of phase results. Kept apart from <code>Simulator</code>, which
+ * starts the user interface, so that the engine can be run without it.
+ */
+public final class SimEngine {
+	/** Version of the simulator, written to saved files & cache keys. **/
+	public static final double VERSION = 0.9996;
+	/** Symbol of the context stimulus. **/
+	public static final char OMEGA = '\u03A9';
+	/** Pool groups, phases & runs are carried out on. **/
+	public static ForkJoinPool fjPool = new ForkJoinPool();
+	/** Results of phases already run. **/
+	public static ResultCache resultCache = new ResultCache(64);
+
+	private SimEngine() {
+	}
+}
@@ -39,6 +39,7 @@ import simulator.configurables.ContextConfig;
 import simulator.configurables.ContextConfig.Context;
 import simulator.configurables.ITIConfig;
 import simulator.configurables.TimingConfiguration;
+import simulator.util.Recording;
 import extra166y.ParallelArray;
 
 /**
@@ -53,6 +54,9 @@ public class SimGroup implements Runnable {
 
 	public static String getKeyByValue(Map<String, String> configCuesNames,
 			String value) {
+		if (configCuesNames instanceof ConfiguralIndex) {
+			return ((ConfiguralIndex) configCuesNames).getKey(value);
+		}
 		String key = null;
 		int count = 0;
 		for (Map.Entry<String, String> entry : configCuesNames.entrySet()) {
@@ -108,6 +112,8 @@ public class SimGroup implements Runnable {
 
 	/** The model this group belongs to. **/
 	private SimModel model;
+	/** Settings of the run in progress. **/
+	private SimulationContext simulation;
 
 	/**
 	 * Create a group
@@ -297,7 +303,8 @@ public class SimGroup implements Runnable {
 			
 			stimName = cuesName + (reinforced ? '+' : '-');
 			Trial trial = new Trial(stimName, probe,
-					(model.isTimingPerTrial() ? i : 0), selStim, stringPos, trialNum);
+					(model.isTimingPerTrial() ? i : 0), selStim, stringPos, trialNum,
+					model.isTimingPerTrial());
 			trials.add(trial);
 
 			if (repStim.length() > 0)
@@ -312,13 +319,15 @@ public class SimGroup implements Runnable {
 			for (int or = 0; or < noStimRep; or++)
 				order.add(trial);
 		}
+		timings.setTimestep(model.getTimestepSize());
 		timings.setTrials(order.size());
         timings.restartOnsets();
 		List<List<List<CS>>> sequences = timings.sequences(new HashSet<Trial>(
-				order));
+				order), model.getVariableCombinationNo());
         if(!model.isSerialConfigurals()
                 && isConfiguralCompounds) {
-            sequences = timings.compounds(new ArrayList<Trial>(order));
+            sequences = timings.compounds(new ArrayList<Trial>(order),
+                    model.getVariableCombinationNo());
         }
 		if (model.isSerialConfigurals() || isConfiguralCompounds) {
 			Map<String, CueList> tmp = new TreeMap<String, CueList>();
@@ -400,6 +409,45 @@ public class SimGroup implements Runnable {
 		count = 1;
 	}
 
+	/**
+	 * Check whether this group starts out as another does, so that any
+	 * identical phases at the start of both can be run once for the two.
+	 * 
+	 * @param other
+	 *            group to compare to
+	 * @return true if the groups have the same cues, with the same alphas,
+	 *         and the same numbers of phases & combinations.
+	 */
+
+	public boolean canShare(SimGroup other) {
+		if (noOfPhases != other.noOfPhases
+				|| noOfCombinations != other.noOfCombinations
+				|| !cues.keySet().equals(other.cues.keySet())) {
+			return false;
+		}
+		for (Entry<String, CueList> entry : cues.entrySet()) {
+			if (entry.getValue().getAlpha() != other.cues.get(entry.getKey())
+					.getAlpha()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the state the group starts out in, the salience of each cue &
+	 *         its number of combinations, as text that's the same in any
+	 *         session for the same state, to hash it.
+	 */
+
+	public String startState() {
+		TreeMap<String, Double> alphas = new TreeMap<String, Double>();
+		for (Entry<String, CueList> entry : cues.entrySet()) {
+			alphas.put(entry.getKey(), entry.getValue().getAlpha());
+		}
+		return alphas + ";" + noOfCombinations;
+	}
+
 	/**
 	 * Checks if this is the name of a configural cue (i.e. contains lowercase
 	 * characters)
@@ -567,7 +615,12 @@ public class SimGroup implements Runnable {
 			SimPhase sp = phases.get(i);
 			result.append("(Phase ").append(i + 1).append(" , Seq: ")
 					.append(sp.intialSequence()).append(" Rand: ")
-					.append(sp.isRandom()).append(")").append("\n\n");
+					.append(sp.isRandom());
+			if (model.isAdaptiveCombinations() && sp.getCombinationsUsed() > 0) {
+				result.append(" Combinations: ").append(
+						sp.getCombinationsUsed());
+			}
+			result.append(")").append("\n\n");
 
 			Map<String, CueList> results = sp.getResults();
 
@@ -603,7 +656,7 @@ public class SimGroup implements Runnable {
 																	// in this
 																	// phase
 					if (!configuralCue(cueName)
-							&& (cueName.startsWith(Simulator.OMEGA + "") || cueName
+							&& (cueName.startsWith(SimEngine.OMEGA + "") || cueName
 									.equals(cueName.toUpperCase()))) {
 						result.append("Cue : ").append(cueName);
 					} else if (cueName.length() == 1) {
@@ -620,7 +673,9 @@ public class SimGroup implements Runnable {
 						interfaceName = "[" + compoundName + "]";
 						result.append("Cue : ").append(interfaceName);
 					}
-					if (!cueName.contains(Simulator.OMEGA + "")) {
+					// Components are only kept past the summary profile
+					boolean components = model.getRecording() != Recording.SUMMARY;
+					if (!cueName.contains(SimEngine.OMEGA + "") && components) {
 						result.append("\n\n").append("Realtime.")
 								.append("\n\n");
 
@@ -644,8 +699,8 @@ public class SimGroup implements Runnable {
 								.append(tempCscCue.averageAssoc(z));
 						result.append('\n');
 					}
-					if (model.showResponse()
-							&& !cueName.contains(Simulator.OMEGA + "")) {
+					if (model.showResponse() && components
+							&& !cueName.contains(SimEngine.OMEGA + "")) {
 						result.append('\n').append("Simulated Response\n\n");
 						for (int z = 0; z < tempCscCue.size()
 								&& z < sp.getMaxDuration(); z++) {
@@ -681,23 +736,72 @@ public class SimGroup implements Runnable {
 	 */
 	@Override
 	public void run() {
+		run(0);
+	}
+
+	/**
+	 * Run the phases from one on, those before having been run, shared or
+	 * restored.
+	 * 
+	 * @param from
+	 *            index of the first phase to run
+	 */
+
+	public void run(int from) {
+		run(from, noOfPhases);
+	}
+
+	/**
+	 * Run a range of phases, those before having been run, shared or
+	 * restored.
+	 * 
+	 * @param from
+	 *            index of the first phase to run
+	 * @param to
+	 *            index after the last phase to run
+	 */
+
+	public void run(int from, int to) {
 		// Add to phasepool so we can still cancel them quickly if required
 		phasePool = ParallelArray.createEmpty(noOfPhases, SimPhase.class,
-				Simulator.fjPool);
+				SimEngine.fjPool);
 		phasePool.asList().addAll(phases);
-		for (int i = 0; i < noOfPhases; i++) {
-			if (model.contextAcrossPhase()) {
-				// Deal with different omega per phase
-				for (Entry<String, CueList> entry : cues.entrySet()) {
-					String realName = model.getConfigCuesNames().get(
-							entry.getKey());
-					realName = realName == null ? "" : realName;
-				}
-			}
+		for (int i = from; i < to; i++) {
 			phases.get(i).runSimulator();
 		}
 	}
 
+	/**
+	 * Take on the results of another group's phase, run from the same state
+	 * with the same inputs, along with the cue lists it left.
+	 * 
+	 * @param other
+	 *            the group that ran the phase
+	 * @param phase
+	 *            index of the phase
+	 */
+
+	public void share(SimGroup other, int phase) {
+		phases.get(phase).shareResults(
+				other.phases.get(phase).getPhaseResults());
+		cues.putAll(other.cues);
+	}
+
+	/**
+	 * Take on the results of a phase from an earlier run, checkpointed at
+	 * its end, which started from the same state with the same inputs.
+	 * 
+	 * @param checkpoint
+	 *            what running the phase left
+	 * @param phase
+	 *            index of the phase
+	 */
+
+	public void restore(PhaseResults checkpoint, int phase) {
+		phases.get(phase).shareResults(checkpoint);
+		cues.putAll(checkpoint.getResults());
+	}
+
 	/**
 	 * @param control
 	 *            the message passing object to use
@@ -716,6 +820,18 @@ public class SimGroup implements Runnable {
 		this.model = model;
 	}
 
+	/**
+	 * @param simulation
+	 *            settings of the run about to start, for this group & its
+	 *            phases
+	 */
+	public void setSimulationContext(SimulationContext simulation) {
+		this.simulation = simulation;
+		for (SimPhase phase : phases) {
+			phase.setSimulationContext(simulation);
+		}
+	}
+
 	/**
 	 * @param noOfPhases
 	 *            the noOfPhases to set
@@ -726,11 +842,20 @@ public class SimGroup implements Runnable {
 
     public int trialCount() {
         int count = 0;
-        for(SimPhase p : phases) {
-            int multiplier = p.isRandom() ? Simulator.getController().getModel().getCombinationNo() : 1;
-            multiplier *= p.getTimingConfig().hasVariableDurations() ? Simulator.getController().getModel().getVariableCombinationNo() : 1;
-            count += p.getTimingConfig().getTrials() * multiplier;
+        for(int i = 0; i < phases.size(); i++) {
+            count += trialCount(i);
         }
         return count;
     }
+
+    /**
+     * @param phase index of a phase
+     * @return the number of trials run for the phase, over all its runs
+     */
+    public int trialCount(int phase) {
+        SimPhase p = phases.get(phase);
+        int multiplier = p.isRandom() ? model.getCombinationNo() : 1;
+        multiplier *= p.getTimingConfig().hasVariableDurations() ? model.getVariableCombinationNo() : 1;
+        return p.getTimingConfig().getTrials() * multiplier;
+    }
 }
\ No newline at end of file
@@ -24,6 +24,10 @@
  */
 package simulator;
 
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -35,10 +39,12 @@ import java.util.Set;
 import java.util.TreeMap;
 
 import simulator.configurables.ContextConfig;
+import simulator.util.Precision;
+import simulator.util.Recording;
 import simulator.util.Response;
 import simulator.util.Trace;
-import extra166y.Ops;
-import extra166y.ParallelArray;
+import simulator.util.VariableDistribution;
+import jsr166y.RecursiveAction;
 
 /**
  * SimModel is the main object model of the inputed data. It holds the users
@@ -59,11 +65,9 @@ public class SimModel implements Runnable {
 	// Alberto Fernández August-2011
 	// Mapping for configural cues. <K,V> K=virtual name (lower case letter),
 	// V=compound
-	private Map<String, String> configCuesNames; // e.g. <a,AB>
-	// Random seed for variable distributions.
-	private long randomSeed = System.currentTimeMillis();
-	// SimGroup parallel pool
-	private ParallelArray<SimGroup> groupPool;
+	private ConfiguralIndex configCuesNames; // e.g. <a,AB>
+	// Random seed for variable distributions, trial orders & responses.
+	private long randomSeed = VariableDistribution.randomSeed();
 	/** Timestep size. **/
 	private double timestepSize;
 
@@ -74,15 +78,188 @@ public class SimModel implements Runnable {
 	/** Whether to simulate contextual stimulus. **/
 	private boolean useContext;
 
-	/** Procedure to run a group **/
-	final Ops.Op<SimGroup, SimGroup> update = new Ops.Op<SimGroup, SimGroup>() {
+	/**
+	 * Runs a set of groups that start out the same, running each phase once
+	 * for all of them while their phases are identical & sharing the results,
+	 * then splitting them up where their phases differ. The first group of
+	 * the set holds the results of the phases so far, and the rest share
+	 * them, random draws included. Phases whose results an earlier run
+	 * cached under the same key are restored rather than run.
+	 */
+	private class SharedRun extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		/** Groups identical up to the phase. **/
+		private final List<SimGroup> members;
+		/** Index of the next phase to run, -1 to sort the groups first. **/
+		private final int phase;
+
+		SharedRun(List<SimGroup> members, int phase) {
+			this.members = members;
+			this.phase = phase;
+		}
+
 		@Override
-		public SimGroup op(final SimGroup current) {
-			current.run();
-			addCueNames(current.getCuesMap());
-			return current;
+		protected void compute() {
+			if (phase < 0) {
+				List<SharedRun> runs = new ArrayList<SharedRun>();
+				for (List<SimGroup> split : split(members, -1)) {
+					runs.add(new SharedRun(split, 0));
+				}
+				invokeAll(runs);
+				return;
+			}
+			SimGroup first = members.get(0);
+			for (int p = phase; p < first.getNoOfPhases(); p++) {
+				if (members.size() > 1) {
+					List<List<SimGroup>> splits = split(members, p);
+					if (splits.size() > 1) {
+						List<SharedRun> runs = new ArrayList<SharedRun>();
+						for (List<SimGroup> split : splits) {
+							runs.add(new SharedRun(split, p));
+						}
+						invokeAll(runs);
+						return;
+					}
+				}
+				PhaseResults checkpoint = checkpoint(first, p);
+				if (checkpoint != null) {
+					for (SimGroup group : members) {
+						group.restore(checkpoint, p);
+						control.incrementProgress(group.trialCount(p));
+					}
+					continue;
+				}
+				if (members.size() == 1) {
+					first.run(p);
+					return;
+				}
+				first.run(p, p + 1);
+				if (control.isCancelled()) {
+					return;
+				}
+				for (SimGroup group : members.subList(1, members.size())) {
+					group.share(first, p);
+					control.incrementProgress(group.trialCount(p));
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param group
+	 *            a group
+	 * @param phase
+	 *            index of one of its phases
+	 * @return the results of the phase cached from an earlier run that
+	 *         started it from the same state with the same inputs, else null.
+	 */
+
+	private PhaseResults checkpoint(SimGroup group, int phase) {
+		String key = phaseKeys.get(group)[phase];
+		return key == null ? null : SimEngine.resultCache.get(key);
+	}
+
+	/**
+	 * Work out the key each phase of a set of groups is cached under,
+	 * a hash chained from the model's settings & the group's starting state
+	 * through the inputs of each phase up to it. Groups that share a phase
+	 * are given the key of the one that runs it, whose seeds it draws from.
+	 * 
+	 * @param members
+	 *            groups identical up to the phase, in order
+	 * @param phase
+	 *            index of the phase, or -1 to sort the groups first
+	 * @param state
+	 *            hash of everything before the phase, null if it couldn't be
+	 *            hashed
+	 */
+
+	private void keyPhases(List<SimGroup> members, int phase, byte[] state) {
+		SimGroup first = members.get(0);
+		if (phase == first.getNoOfPhases()) {
+			return;
 		}
-	};
+		for (List<SimGroup> split : split(members, phase)) {
+			SimGroup owner = split.get(0);
+			byte[] next = phase < 0 ? hash(state, owner.startState()) : hash(
+					state, owner.getNameOfGroup() + ";" + phase + ";"
+							+ owner.getPhases().get(phase).inputs());
+			if (phase >= 0) {
+				String key = next == null ? null : new BigInteger(1, next)
+						.toString(16);
+				for (SimGroup group : split) {
+					phaseKeys.get(group)[phase] = key;
+				}
+			}
+			keyPhases(split, phase + 1, next);
+		}
+	}
+
+	/**
+	 * @param previous
+	 *            hash to chain from
+	 * @param state
+	 *            state to add to it, as text that's the same in any session
+	 *            for the same state
+	 * @return the hash of both, or null if the previous one is null or
+	 *         SHA-1 isn't available.
+	 */
+
+	private static byte[] hash(byte[] previous, String state) {
+		if (previous == null) {
+			return null;
+		}
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			digest.update(previous);
+			return digest.digest(state.getBytes(Charset.forName("UTF-8")));
+		} catch (NoSuchAlgorithmException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return the settings every phase's run depends on, along with the
+	 *         version results were produced by, as text to hash them.
+	 */
+
+	private String settings() {
+		return SimEngine.VERSION + ";" + context.key() + ";"
+				+ configCuesNames;
+	}
+
+	/**
+	 * Split a set of groups by whether a phase of theirs is identical.
+	 * 
+	 * @param members
+	 *            groups to split, in order
+	 * @param phase
+	 *            index of the phase, or -1 to split by whether the groups
+	 *            start out the same
+	 * @return the sets of groups, each in the original order.
+	 */
+
+	private static List<List<SimGroup>> split(List<SimGroup> members,
+			int phase) {
+		List<List<SimGroup>> splits = new ArrayList<List<SimGroup>>();
+		for (SimGroup group : members) {
+			List<SimGroup> match = null;
+			for (List<SimGroup> split : splits) {
+				SimGroup first = split.get(0);
+				if (phase < 0 ? first.canShare(group) : first.getPhases()
+						.get(phase).sameInputs(group.getPhases().get(phase))) {
+					match = split;
+					break;
+				}
+			}
+			if (match == null) {
+				match = new ArrayList<SimGroup>();
+				splits.add(match);
+			}
+			match.add(group);
+		}
+		return splits;
+	}
 	/** Boolean indicating whether simulated response stats & figures are shown. **/
 	private boolean showResponse;
 	private boolean isContextAcrossPhase;
@@ -105,10 +282,26 @@ public class SimModel implements Runnable {
 	private boolean serialCompounds;
 	/** Restrict predictions to >= 0 **/
 	private boolean restrictPredictions;
+	/** How much of the components' histories to keep. **/
+	private Recording recording;
+	/** Precision the histories & averaged results are stored at. **/
+	private Precision precision;
+	/** Give expected responses rather than sampled ones. **/
+	private boolean expectedResponses;
+	/** Stop adding random combinations once the averages settle. **/
+	private boolean adaptiveCombinations;
+	/** Largest standard error of an average that counts as settled. **/
+	private double combinationTolerance;
 	/** Decay for fuzzy activation. **/
 	private double activationDecay;
 	/** Dropoff for fuzzy activation. **/
 	private double activationDropoff;
+	/** Traces below this are dropped, 0 to keep every trace. **/
+	private double traceCutoff;
+	/** Key each group's phases are run under in the current run. **/
+	private Map<SimGroup, String[]> phaseKeys;
+	/** Settings of the current run, fixed when it starts. **/
+	private SimulationContext context;
 
     public int getResponsesPerMinute() {
         return responsesPerMinute;
@@ -150,11 +343,11 @@ public class SimModel implements Runnable {
 		groupsNo = phasesNo = 1;
 		combinationNo = 100; // 20; modified Alberto Fernández July-2011
 		// Alberto Fernández August-2011
-		configCuesNames = new TreeMap<String, String>();
+		configCuesNames = new ConfiguralIndex();
 		// Alberto Fernandez Nov-2011
 		useContext = false;
 		listAllCues = new ArrayList<String>();
-		// if(useContext) {listAllCues.add(Simulator.OMEGA+"");}
+		// if(useContext) {listAllCues.add(SimEngine.OMEGA+"");}
 		threshold = 0.875;
 		decay = 0.5;
 		showResponse = true;
@@ -170,11 +363,17 @@ public class SimModel implements Runnable {
 		setTimingPerTrial(false);
 		serialConfigurals = true;
 		restrictPredictions = true;
+		expectedResponses = false;
+		recording = Recording.FULL;
+		precision = Precision.DOUBLE;
+		adaptiveCombinations = false;
+		combinationTolerance = 0.005;
 		activationDecay = 0.15;
 		activationDropoff = 0.2;
         isConfiguralCompounds = false;
         serialResponseWeight = 0.85;
         responsesPerMinute = 100;
+		traceCutoff = 0;
 	}
 
 	/**
@@ -278,7 +477,7 @@ public class SimModel implements Runnable {
 			}
 		}
 
-		if (configural && !cueName.equals(Simulator.OMEGA + "")) {
+		if (configural && !cueName.equals(SimEngine.OMEGA + "")) {
 			String compoundName;
 			if (cueName.length() == 1) {
 				// configural cue
@@ -310,6 +509,13 @@ public class SimModel implements Runnable {
 		return activationDecay;
 	}
 
+	/**
+	 * @return the trace cutoff, 0 if traces are not approximated.
+	 */
+	public double getTraceCutoff() {
+		return traceCutoff;
+	}
+
 	/**
 	 * @return the activationDropoff
 	 */
@@ -345,7 +551,15 @@ public class SimModel implements Runnable {
 		return combinationNo;
 	}
 
-	public Map<String, String> getConfigCuesNames() {
+	/**
+	 * @return the settings of the current run, null before the first.
+	 */
+
+	public SimulationContext getSimulationContext() {
+		return context;
+	}
+
+	public ConfiguralIndex getConfigCuesNames() {
 		return configCuesNames;
 	}
 
@@ -553,6 +767,44 @@ public class SimModel implements Runnable {
 		return isGeo;
 	}
 
+	/**
+	 * @return true if random combinations stop once the averages settle,
+	 *         the combination numbers being the most to run.
+	 */
+	public boolean isAdaptiveCombinations() {
+		return adaptiveCombinations;
+	}
+
+	/**
+	 * @return the largest standard error of an average weight, or response,
+	 *         for adaptive combinations to stop at.
+	 */
+	public double getCombinationTolerance() {
+		return combinationTolerance;
+	}
+
+	/**
+	 * @return the precision histories & averaged results are stored at.
+	 */
+	public Precision getPrecision() {
+		return precision;
+	}
+
+	/**
+	 * @return how much of the components' per-trial histories runs keep.
+	 */
+	public Recording getRecording() {
+		return recording;
+	}
+
+	/**
+	 * @return true if responses are the decision rule's expectation rather
+	 *         than sampled.
+	 */
+	public boolean isExpectedResponses() {
+		return expectedResponses;
+	}
+
 	/**
 	 * @return the restrictPredictions
 	 */
@@ -602,7 +854,7 @@ public class SimModel implements Runnable {
 		values = new TreeMap();
 		groups = new LinkedHashMap<String, SimGroup>();
 		// Alberto Fernández August-2011
-		configCuesNames = new TreeMap<String, String>();
+		configCuesNames = new ConfiguralIndex();
 		// Alberto Fernandez Nov-2011
 		// listAllCues = new ArrayList<String>();
 	}
@@ -620,6 +872,15 @@ public class SimModel implements Runnable {
 		this.activationDecay = activationDecay;
 	}
 
+	/**
+	 * @param traceCutoff
+	 *            smallest eligibility trace to keep updating, 0 to update
+	 *            every component
+	 */
+	public void setTraceCutoff(double traceCutoff) {
+		this.traceCutoff = traceCutoff;
+	}
+
 	/**
 	 * @param activationDropoff
 	 *            the activationDropoff to set
@@ -737,6 +998,48 @@ public class SimModel implements Runnable {
 	 */
 	public void setRandomSeed(long randomSeed) {
 		this.randomSeed = randomSeed;
+		VariableDistribution.setRandomSeed(randomSeed);
+	}
+
+	/**
+	 * @param adaptiveCombinations
+	 *            true to stop random combinations once the averages settle
+	 */
+	public void setAdaptiveCombinations(boolean adaptiveCombinations) {
+		this.adaptiveCombinations = adaptiveCombinations;
+	}
+
+	/**
+	 * @param combinationTolerance
+	 *            the largest standard error for adaptive combinations to stop
+	 *            at
+	 */
+	public void setCombinationTolerance(double combinationTolerance) {
+		this.combinationTolerance = combinationTolerance;
+	}
+
+	/**
+	 * @param precision
+	 *            precision to store histories & averaged results at
+	 */
+	public void setPrecision(Precision precision) {
+		this.precision = precision;
+	}
+
+	/**
+	 * @param recording
+	 *            how much of the components' per-trial histories to keep
+	 */
+	public void setRecording(Recording recording) {
+		this.recording = recording;
+	}
+
+	/**
+	 * @param expectedResponses
+	 *            true to give expected responses rather than sampled ones
+	 */
+	public void setExpectedResponses(boolean expectedResponses) {
+		this.expectedResponses = expectedResponses;
 	}
 
 	/**
@@ -812,11 +1115,11 @@ public class SimModel implements Runnable {
 	public void setUseContext(boolean on) {
 		this.useContext = on;
 		if (useContext) {
-			if (!listAllCues.contains(Simulator.OMEGA + "")) {
-				listAllCues.add(Simulator.OMEGA + "");
+			if (!listAllCues.contains(SimEngine.OMEGA + "")) {
+				listAllCues.add(SimEngine.OMEGA + "");
 			}
 		} else {
-			listAllCues.remove(Simulator.OMEGA + "");
+			listAllCues.remove(SimEngine.OMEGA + "");
 		}
 	}
 
@@ -864,17 +1167,44 @@ public class SimModel implements Runnable {
 		// J Gray - 2012: This section wasn't actually running concurrent, but
 		// now does
 		listAllCues.clear();
-		groupPool = ParallelArray.createEmpty(groupsNo, SimGroup.class,
-				Simulator.fjPool);
-		groupPool.asList().addAll(groups.values());
         try {
-		    groupPool.withMapping(update).all();
+		    // Groups being run again have had their cue lists reset
+		    for (SimGroup group : groups.values()) {
+		    	SimEngine.resultCache.removeHolding(group.getCuesMap()
+		    			.values());
+		    }
+		    context = new SimulationContext(this);
+		    for (SimGroup group : groups.values()) {
+		    	group.setSimulationContext(context);
+		    }
+		    phaseKeys = new HashMap<SimGroup, String[]>();
+		    for (SimGroup group : groups.values()) {
+		    	phaseKeys.put(group, new String[group.getNoOfPhases()]);
+		    }
+		    List<SimGroup> members = new ArrayList<SimGroup>(groups.values());
+		    keyPhases(members, -1, hash(new byte[0], settings()));
+		    // Groups with identical leading phases run them once between
+		    // them, resuming from the first phase whose inputs changed
+		    SimEngine.fjPool.invoke(new SharedRun(members, -1));
+		    for (SimGroup group : groups.values()) {
+		    	addCueNames(group.getCuesMap());
+		    }
+		    if (!control.isCancelled()) {
+		    	for (SimGroup group : groups.values()) {
+		    		String[] keys = phaseKeys.get(group);
+		    		for (int p = 0; p < keys.length; p++) {
+		    			if (keys[p] != null) {
+		    				SimEngine.resultCache.put(keys[p], group
+		    						.getPhases().get(p).getPhaseResults());
+		    			}
+		    		}
+		    	}
+		    }
 		    control.incrementProgress(1);
         } catch (OutOfMemoryError e) {
             System.err.println("Ran outa memory. Sadness.");
         }
         control.setComplete(true);
-        groupPool = null;
 	}
 
 	/**
@@ -896,6 +1226,13 @@ public class SimModel implements Runnable {
 					.append(sep);
 			result.append(tempGroup.phasesOutput(compound, configCuesNames));
 		}
+		if (traceCutoff > 0 && control != null) {
+			long made = control.getComponentUpdates();
+			long skipped = control.getSkippedUpdates();
+			result.append(sep).append("Trace cutoff ").append(traceCutoff)
+					.append(": skipped ").append(skipped).append(" of ")
+					.append(made + skipped).append(" component updates\n");
+		}
 		return result.toString();
 	}
 
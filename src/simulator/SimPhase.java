@@ -38,9 +38,13 @@ import simulator.configurables.ContextConfig;
 import simulator.configurables.ContextConfig.Context;
 import simulator.configurables.ITIConfig;
 import simulator.configurables.TimingConfiguration;
-import extra166y.Ops;
-import extra166y.Ops.DoubleOp;
-import extra166y.ParallelDoubleArray;
+import simulator.configurables.TimingDraws;
+import simulator.util.Precision;
+import simulator.util.RunningStats;
+import simulator.util.Seeds;
+import jsr166y.ForkJoinTask;
+import jsr166y.ForkJoinWorkerThread;
+import jsr166y.RecursiveTask;
 
 /**
  * SimPhases is the class which models and processes a phase from the
@@ -72,10 +76,6 @@ public class SimPhase {
 	private boolean random;
 	/** TD parameters. **/
 	private Double lambdaPlus, lambdaMinus, betaPlus, betaMinus, gamma, delta;
-	/** The current prediction of the US. **/
-	protected double prediction;
-	/** The previous prediction of the US. **/
-	protected double lastPrediction;
 	/** Counter for maximum trial duration. **/
 	protected int maxMaxOnset;
 	/** ITI configuration. **/
@@ -86,19 +86,17 @@ public class SimPhase {
 	private TimingConfiguration timingConfig;
 	/** Context configuration. **/
 	private ContextConfig contextCfg;
-	/** Operation for adding together two double arrays. **/
-	final Ops.BinaryDoubleOp addWeights = new Ops.BinaryDoubleOp() {
-		@Override
-		public double op(final double first, final double second) {
-			return first + second;
-		}
-	};
-
 	/**
 	 * Message passing object to update progress in the GUI & fast-cancel the
 	 * sim.
 	 **/
 	private volatile ModelControl control;
+	/** Settings of the run in progress. **/
+	private SimulationContext simulation;
+	/** Runs averaged in the last simulation, 0 if it was run once. **/
+	private int combinationsUsed;
+	/** Runs added at a time when the number of runs is adaptive. **/
+	private static final int ADAPTIVE_BATCH = 10;
 
 	/**
 	 * SimPhase's Constructor method
@@ -145,7 +143,6 @@ public class SimPhase {
 		timingConfig = timing;
 		// timingConfig.setTrials(trials);
 		iti.setTrials(trials);
-		lastPrediction = prediction = 0.0f;
 		maxMaxOnset = 0;
 		// Added to allow ITI modelling.
 		itis = iti;
@@ -163,19 +160,40 @@ public class SimPhase {
 	 * @param tempRes
 	 *            Map to populate with results
 	 * @param probeResults2
+	 * @param draws
+	 *            ITIs & variable durations for the run
 	 */
 
 	protected void algorithm(List<Trial> sequence,
 			Map<String, CueList> tempRes, boolean context,
-			Map<String, CueList> probeResults2) {
+			Map<String, CueList> probeResults2, TimingDraws draws) {
+		// The US predictions this & last timestep
+		double prediction = 0;
+		double lastPrediction = 0;
+		// Stimuli seen & longest trial, shared with the phase at the end
+		Set<CS> present = new HashSet<CS>();
+		int maxOnset = 0;
+		// This run's place in its variable durations
+		TimingDraws.Cursor durations = draws.cursor();
+		// Thresholds for this run's simulated responses
+		Random responses = new Random(draws.getSeed());
 		// Map cues to iterators of cues.
 		Map<CS, CueList> tempMap;
-		Map<CS, Queue<SimCue>> cueLog = new HashMap<CS, Queue<SimCue>>();
-		HashSet<Trial> uniqSeq = new HashSet<Trial>();
-		uniqSeq.addAll(sequence);
-		Set<String> inThisRun = new HashSet<String>();
-		List<CS> csActiveLastStep = new ArrayList<CS>();
-		List<SimCue> activeLastStep = new ArrayList<SimCue>();
+		CueLog cueLog = new CueLog();
+		// Compound lists merged into this trial, by timeline target.
+		CueList[] targets = new CueList[0];
+		// Probe cues present last step & this step, by slot.
+		boolean[] probeLastStep = new boolean[0];
+		boolean[] probeThisStep = new boolean[0];
+		// Compiled timelines, by the trial they were compiled for.
+		Map<Trial, TrialTimeline> timelines = new HashMap<Trial, TrialTimeline>();
+		boolean restrictPredictions = simulation.isRestrictPredictions();
+		boolean serialCompounds = simulation.isSerialCompounds();
+		boolean serialConfigurals = simulation.isSerialConfigurals();
+		boolean zeroTraces = simulation.isZeroTraces();
+		double traceCutoff = simulation.getTraceCutoff();
+		int window = simulation.getRecording().getWindow();
+		Precision precision = simulation.getPrecision();
 		if (context) {
 			// Set the alpha on the context we're using here
 			tempRes.get(contextCfg.getContext().toString()).setAlpha(
@@ -192,14 +210,13 @@ public class SimPhase {
             probeCSActiveThisTrial.clear();
             long count = System.currentTimeMillis();
 
-			cueLog.clear();
 			lastPrediction = 0d;// new Double(0);
 			String curNameSt = sequence.get(i - 1).toString();
 			SimStimulus currentSt = stimuli.get(curNameSt);
 			tempMap = new HashMap<CS, CueList>();
 
 			Trial trial = sequence.get(i - 1).copy();
-			getPresentCS().addAll(trial.getCues());
+			present.addAll(trial.getCues());
 
 			// Get the stimuli present this trial, copy them to the temporary
 			// map
@@ -210,22 +227,21 @@ public class SimPhase {
 				} catch (NullPointerException e) {
 				}
 				tempMap.put(cs, tempRes.get(cs.getName()));
-				cueLog.put(cs, new LinkedList<SimCue>());
-				if (Simulator.getController().getModel().isZeroTraces()) {
+				if (zeroTraces) {
 					tempMap.get(cs).zeroTraces();
 				}
 			}
 
-			int iti = (int) Math.round(itis.next()
-					/ Simulator.getController().getModel().getTimestepSize());
+			int iti = (int) Math.round(draws.getITI(i - 1)
+					/ simulation.getTimestepSize());
 
 			// Produce actual timings for this trial
-			Map<CS, int[]> timings = timingConfig.makeTimings(tempMap.keySet());
+			Map<CS, int[]> timings = timingConfig.makeTimings(tempMap.keySet(),
+					durations);
 			int trialLength = timings.get(CS.TOTAL)[1];
 
 			// Serial configurals & compounds
-			if (Simulator.getController().getModel().isSerialConfigurals()
-					|| Simulator.getController().getModel().isSerialCompounds()) {
+			if (serialConfigurals || serialCompounds) {
 				// Identify the sequences in this trial
 				Set<CS> set = new HashSet<CS>(trial.getCues());
 				Map<List<List<CS>>, int[]> serial = timingConfig.sequence(set,
@@ -249,25 +265,25 @@ public class SimPhase {
 
 					CueList compound = tempRes.containsKey(realName) ? tempRes
 							.get(realName) : new CompoundCueList(realName, 0d,
-							group.getModel().getThreshold(), group.getModel()
-									.getDecay(), group.getModel()
-									.getTraceType(), group.getModel()
-									.getDecisionRule());
+							simulation.getThreshold(), simulation.getDecay(),
+							simulation.getTraceType(),
+							simulation.getDecisionRule());
 					tempRes.put(realName, compound);
 
 					tempRes.get(configural.getName()).restart();
 					tempMap.put(configural, tempRes.get(configural.getName()));
-					if (Simulator.getController().getModel().isZeroTraces()) {
+					if (zeroTraces) {
 						tempMap.get(configural).zeroTraces();
 					}
-					getPresentCS().add(configural);
+					present.add(configural);
 					trial.getCues().add(configural);
-					currentSt.addPart(configural);
+					synchronized (currentSt) {
+						currentSt.addPart(configural);
+					}
 					CS timingCS = new ConfiguralCS(realName, 0, 0, realName,
 							true);
 					timings.put(timingCS, entry.getValue());
-					if (Simulator.getController().getModel()
-							.isSerialConfigurals()) {
+					if (serialConfigurals) {
 						String serialConfigural = SimGroup.getKeyByValue(group
 								.getModel().getConfigCuesNames(), realName);
 						// Update the name of the compound to include this
@@ -276,7 +292,9 @@ public class SimPhase {
 								+ serialConfigural;
 						tempRes.remove(realName);
 						tempMap.remove(configural);
-						cues.remove(realName);
+						synchronized (cues) {
+							cues.remove(realName);
+						}
 						compound.setSymbol(newName);
 						configural.setName(newName);
 						timingCS.setName(newName);
@@ -299,284 +317,382 @@ public class SimPhase {
 						tempRes.get(configural.getName()).restart();
 						tempMap.put(configural,
 								tempRes.get(configural.getName()));
-						if (Simulator.getController().getModel().isZeroTraces()) {
+						if (zeroTraces) {
 							tempMap.get(configural).zeroTraces();
 						}
-						getPresentCS().add(configural);
+						present.add(configural);
 						trial.getCues().add(configural);
 						timings.put(configural, entry.getValue());
-						currentSt.addPart(configural);
+						synchronized (currentSt) {
+							currentSt.addPart(configural);
+						}
 					}
 				}
 			}
 
 			if (i <= trials) {
-				maxMaxOnset = Math
-						.max(maxMaxOnset, timings.get(CS.CS_TOTAL)[1]);
+				maxOnset = Math.max(maxOnset, timings.get(CS.CS_TOTAL)[1]);
+			}
+
+			// Compile this trial's timeline, or reuse the last one if
+			// nothing has changed since.
+			CS[] slots = trial.getCues().toArray(new CS[0]);
+			String signature = TrialTimeline.signature(slots, timings);
+			TrialTimeline timeline = timelines.get(sequence.get(i - 1));
+			if (timeline == null || !timeline.getSignature().equals(signature)) {
+				timeline = new TrialTimeline(slots, timings, tempMap, group
+						.getModel().getConfigCuesNames(), signature);
+				timelines.put(sequence.get(i - 1), timeline);
+			}
+			CueList[] lists = new CueList[slots.length];
+			for (int k = 0; k < slots.length; k++) {
+				lists[k] = tempMap.get(slots[k]);
+				if (lists[k] != null) {
+					lists[k].setTraceCutoff(traceCutoff);
+				}
+			}
+			CueList contextList = context ? tempMap.get(contextCfg.getCS())
+					: null;
+			String contextProbe = context ? contextCfg.getCS()
+					+ trial.getProbeSymbol() : null;
+			// Compounds are looked up when first merged into each trial, as
+			// the serial configurals above may swap lists between trials.
+			String[] targetNames = timeline.getTargets();
+			if (targets.length < targetNames.length) {
+				targets = new CueList[targetNames.length];
+			} else {
+				Arrays.fill(targets, null);
+			}
+			String[][] probeTargets = null;
+			if (trial.isProbe()) {
+				probeTargets = probeTargets(timeline, slots, trial);
+				if (probeThisStep.length < slots.length) {
+					probeLastStep = new boolean[slots.length];
+					probeThisStep = new boolean[slots.length];
+				}
+				Arrays.fill(probeLastStep, false);
 			}
+			// Changed this to make the context last as long as the CSs, even
+			// when doing backwards conditioning
+			int csTime = timings.get(CS.CS_TOTAL)[1]
+					- timings.get(CS.CS_TOTAL)[0];
+			double reward = currentSt.isReinforced() ? getLambdaPlus() : 0;
+			double learningRate = currentSt.isReinforced() ? getBetaPlus()
+					: getBetaMinus();
+			double discount = getGamma();
+			// Once the timeline settles (i.e. in the ITI) cues that aren't
+			// present are advanced in closed form rather than step by step.
+			double idleDecay = idleDecay(timeline.getIdle(), lists);
+			boolean skipping = false;
+			double weightedError = 0;
+			double decay = 1;
+			int end = trialLength + iti;
+			cueLog.reset(slots.length, timeline.getSettled() + 1);
 
 			// Timesteps loop within each trial.
 
 			// Run through all the timesteps, duration of the trial is the total
 			// period
 			// returned by the timings generator.
-			for (int j = 0; j < (trialLength + iti) && !control.isCancelled(); j++) {
+			int j;
+			for (j = 0; j < end && !control.isCancelled(); j++) {
+				int step = timeline.step(j);
 				activeList.clear();
+				if (probeTargets != null) {
+					Arrays.fill(probeThisStep, false);
+				}
 				// Ready to update prediction
 				prediction = 0d;// new Double(0);
-				if (context) {
-                    //Changed this to make the context last as long as the CSs, even
-                    //when doing backwards conditioning
-                    int csTime = timings.get(CS.CS_TOTAL)[1] - timings.get(CS.CS_TOTAL)[0];
-					if (csTime - 1 == tempMap.get(
-							contextCfg.getCS()).getIndex()) {
-						tempMap.get(contextCfg.getCS()).restart();
-                        try {
-                            probeResults2.get(contextCfg.getCS()+trial.getProbeSymbol()).restart();
-                        } catch (NullPointerException e) {
-                            //Not a probe
-                        }
+				if (context && csTime - 1 == contextList.getIndex()) {
+					contextList.restart();
+					CueList probeContext = probeResults2.get(contextProbe);
+					if (probeContext != null) {
+						probeContext.restart();
 					}
 				}
 
 				// Preloop to reset CSs that ended last timestep
 				// for repeated CS serial compounds
-
-				for (CS cs : trial.getCues()) {
-					// Timing range for this CS
-					int onset = 0;
-					int offset = 0;
-					if (cs.isSerialConfigural() || !cs.isConfigural()
-							&& !Context.isContext(cs.getName())) {
-						onset = timings.get(cs)[0];
-						offset = timings.get(cs)[1];
-					}
-					if (!Context.isContext(cs + "")
-							&& (cs.isSerialConfigural() || !cs.isConfigural())
-							&& ((j == offset)) && !cs.isCompound()) {
-						tempMap.get(cs).restart();
-					}
+				for (int k : timeline.getRestart(step)) {
+					lists[k].restart();
 				}
 
-				// Collect CSs this timestep.
-				List<CS> activeCS = new ArrayList<CS>();
-
-				// Update each stimulus
-				for (CS cs : trial.getCues()) {
-					// Timing range for this CS
-					int onset = 0;
-					int offset = 0;
-					if (cs.isSerialConfigural() || !cs.isConfigural()
-							&& !Context.isContext(cs.getName())) {
-						onset = timings.get(cs)[0];
-						offset = timings.get(cs)[1];
-					}
+				// Update each stimulus present right now, only these
+				// contribute to the prediction.
+				for (int k : timeline.getActive(step)) {
+					// Lazily expand if we need to grow the CSC
+					SimCue active = lists[k].nextCue();
+					// Start eligibility trace for the active component
+					active.setActive(true);
+					activeList.add(active);
 
-					// Prevent overlaps by repeated CSs
-					boolean already = false;
-					for (SimCue cue : activeList) {
-						if (cue.getSymbol().equals(cs.getName())) {
-							already = true;
-						}
+					// Log active CS as well as cue
+					cueLog.add(k, active);
+					if (probeTargets != null) {
+						probeThisStep[k] = true;
 					}
-					// Check if this stimulus is present right now, only update
-					// it
-					// and allow it to contribute to the prediction if it is.
-					if (!already
-							&& (cs.isSerialConfigural() || !cs.isConfigural())
-							&& (Context.isContext(cs + "") || (onset <= j && j < offset))
-							&& !cs.isCompound()) {
-
-						// Lazily expand if we need to grow the CSC
-						SimCue active = tempMap.get(cs).nextCue();
-						// Start eligibility trace for the active component
-						active.setActive(true);
-						inThisRun.add(cs.getName());
-						activeList.add(active);
-                        csActiveThisTrial.add(cs.getName());
-
-						// Log active CS as well as cue
-						activeCS.add(cs);
-						Queue<SimCue> log = cueLog.get(cs);
-						if (log == null) {
-							log = new LinkedList<SimCue>();
-							log.add(active);
-							cueLog.put(cs, log);
-						} else {
-							log.add(active);
-						}
-
-						// Update predictions
-						// Prediction that the active components are making
-						prediction += active.getLastAssocValue();
-						// tempMap.get(curCue).restart();
 
-					}
+					// Update predictions
+					// Prediction that the active components are making
+					prediction += active.getLastAssocValue();
 				}
 
-				// To handle configurals on the fly, we make a sorted list of
-				// the names of the active cues
-				// then retrieve the configural that corresponds from the
-				// group's map
-				List<SimCue> bits = new ArrayList<SimCue>(activeList);
-				Collections.sort(bits);
-				StringBuilder sb = new StringBuilder();
-				for (SimCue s : bits) {
-
-					sb.append(s.getSymbol());
-				}
-				String configuralName = "";
-				configuralName += SimGroup.getKeyByValue(group.getModel()
-						.getConfigCuesNames(), sb.toString());
-				CS configural = new ConfiguralCS(configuralName, 0, 0,
-						sb.toString(), false);
-				if (tempMap.containsKey(configural)) {
+				// Configurals for the active cues are looked up when the
+				// timeline is compiled.
+				int configural = timeline.getConfigural(step);
+				if (configural >= 0) {
 					// Lazily expand if we need to grow the CSC
-                    SimCue active = null;
-                    try {
-					    active = tempMap.get(configural).nextCue();
-                    } catch (NullPointerException e) {
-                        System.err.println(e);
-                    }
+					SimCue active = lists[configural].nextCue();
 					// Start eligibility trace for the active component
 					active.setActive(true);
 					activeList.add(active);
 					// Update predictions
 					// Prediction that the active components are making
 					prediction += active.getLastAssocValue();
-					inThisRun.add(configural.getName());
-                    csActiveThisTrial.add(configural.getName());
 				}
 
 				// If a gap in a sequence of some cues happens
 				// reset the iterators.
-				resetInactive(trial.getCues(), activeList, tempMap);
+				for (int k : timeline.getReset(step)) {
+					if (lists[k] != null) {
+						lists[k].restart();
+					}
+				}
 
 				// Make sure predictions are at least 0
-				if (Simulator.getController().getModel()
-						.isRestrictPredictions()) {
+				if (restrictPredictions) {
 					prediction = Math.max(prediction, 0);
 					lastPrediction = Math.max(lastPrediction, 0);
 				}
 
 				// Construct beta error term
-				double betaError = getGamma() * prediction - lastPrediction;
-				// System.out.println(betaError);
-				// Is the US active right now?
-				boolean usOn = ((timings.get(CS.US)[0]) <= j && j < (timings
-						.get(CS.US)[1]));
+				double betaError = discount * prediction - lastPrediction;
 				// Reinforce during US duration
-				betaError += usOn ? (currentSt.isReinforced() ? getLambdaPlus()
-						: 0) : 0;
+				betaError += timeline.isUsOn(step) ? reward : 0;
 
 				// Multiply by learning rate
-				betaError *= currentSt.isReinforced() ? getBetaPlus()
-						: getBetaMinus();
-				// Update the cues
-				updateCues(betaError, tempRes, tempMap.keySet());
-				// Merge if a compound is present
-				if (activeList.size() > 1
-						&& !Simulator.getController().getModel()
-								.isSerialCompounds()) {
-					mergeCues(curNameSt.substring(0, curNameSt.length() - 1),
-							tempRes, activeList);
-					String merged = "";
-					for (SimCue c : activeList) {
-						merged += c.getSymbol();
+				betaError *= learningRate;
+				// Update the cues, by name not CS to avoid dupe updates for
+				// repeated CSs
+				skipping |= step == timeline.getSettled()
+						&& !Double.isNaN(idleDecay);
+				if (skipping) {
+					for (int k : timeline.getSettledUpdate()) {
+						lists[k].update(betaError, delta, gamma);
 					}
-					inThisRun.add(merged);
-                    csActiveThisTrial.add(merged);
+					weightedError += betaError * decay;
+					decay *= idleDecay;
+				} else {
+					for (int k : timeline.getUpdate()) {
+						if (lists[k] != null) {
+							lists[k].update(betaError, delta, gamma);
+						}
+					}
+				}
+				// Merge if a compound is present
+				int compound = timeline.getCompound(step);
+				if (compound >= 0 && !serialCompounds) {
+					mergeCues(target(targets, compound, targetNames[compound],
+							tempRes), activeList);
+                    csActiveThisTrial.add(targetNames[compound]);
 				}
 				// Use probe *cues*
-				// Possible probe list
-				Set<CS> possibleProbes = new HashSet<CS>(csActiveLastStep);
-				possibleProbes.addAll(activeCS);
-				if (trial.isProbe()) {
-					for (CS cs : possibleProbes) {
-						if (cs.isProbe()) {
-							for (SimCue cue : activeList) {
-								if (cue.getSymbol().equals(cs.getName())) {
-                                    probeCSActiveThisTrial.add(updateProbeCues(cs.getProbeSymbol(),
-                                            probeResults2, cue, trial));
-                                    //And for the context as well if there
-                                    if(context) {
-                                        for(SimCue ctxt : activeList) {
-                                            if(Context.isContext(ctxt.getSymbol())) {
-                                                String probe = contextCfg.getSymbol() + "(" + cs.getProbeSymbol() + ")";
-                                                probeCSActiveThisTrial.add(updateProbeCues(probe,
-                                                        probeResults2, ctxt, trial));
-                                                break;
-                                            }
+				// Possible probes are those present this step or at the
+				// last serial transition
+				if (probeTargets != null) {
+					for (int k : timeline.getProbes()) {
+						if (!probeThisStep[k] && !probeLastStep[k]) {
+							continue;
+						}
+						for (SimCue cue : activeList) {
+							if (cue.getSymbol().equals(slots[k].getName())) {
+                                probeCSActiveThisTrial.add(updateProbeCues(
+                                        probeTargets[k][0], probeResults2, cue));
+                                //And for the context as well if there
+                                if(context) {
+                                    for(SimCue ctxt : activeList) {
+                                        if(Context.isContext(ctxt.getSymbol())) {
+                                            probeCSActiveThisTrial.add(updateProbeCues(
+                                                    probeTargets[k][1], probeResults2, ctxt));
+                                            break;
                                         }
                                     }
-								}
+                                }
 							}
 						}
 					}
 				}
 
 				// Merge serial compounds if required.
-				if (Simulator.getController().getModel().isSerialCompounds()) {
+				if (serialCompounds) {
 					// Determine the active compound
-					CS activeCompound = null;
-					for (Entry<CS, int[]> entry : timings.entrySet()) {
-						int onset = timings.get(entry.getKey())[0];
-						int offset = timings.get(entry.getKey())[1];
-						if (onset <= j && j < offset
-								&& !entry.getKey().isConfigural()
-								&& entry.getKey().isSerialConfigural()) {
-							activeCompound = entry.getKey();
-							break;
-						}
-					}
+					int activeCompound = timeline.getSerialTarget(step);
 
-					if (activeCompound != null) {
-						/*
-						 * List<String> activeThisStep = new
-						 * ArrayList<String>(); for(SimCue cue : activeList) {
-						 * activeThisStep.add(cue.getSymbol()); }
-						 */
-						Collections.sort(activeCS);
+					if (activeCompound >= 0) {
 						// Identify if we are at a transition (or if the next
 						// stage is a transition)
 						// but not transitions from nothing.
-						boolean proceed = /*
-										 * !csActiveLastStep.isEmpty() &&
-										 * !activeCS.equals(csActiveLastStep) &&
-										 */
-						!activeCS.isEmpty();
+						boolean proceed = timeline.getActive(step).length > 0;
 
-						csActiveLastStep.clear();
-						csActiveLastStep.addAll(activeCS);
+						if (probeTargets != null) {
+							System.arraycopy(probeThisStep, 0, probeLastStep,
+									0, slots.length);
+						}
 
 						// Merge if required
 						if (proceed) {
-							mergeSerialCues(activeCompound.getName(), tempRes,
+							mergeSerialCues(target(targets, activeCompound,
+									targetNames[activeCompound], tempRes),
 									activeList, cueLog);
-                            csActiveThisTrial.add(activeCompound.getName());
+                            csActiveThisTrial.add(targetNames[activeCompound]);
 						}
-						activeLastStep.clear();
-						activeLastStep.addAll(activeList);
 					}
 
 				}
 
 				// Update prediction
 				lastPrediction = prediction;
+				// With nothing present the TD error stays at zero from here
+				// on, so the rest of the interval is pure decay.
+				if (skipping && timeline.getSettledUpdate().length == 0) {
+					decay *= Math.pow(idleDecay, end - j - 1);
+					j = end - 1;
+				}
+			}
+			if (skipping) {
+				for (int k : timeline.getIdle()) {
+					lists[k].advance(weightedError, decay);
+				}
 			}
-			// Ignore transitions post trial.
-			activeLastStep.clear();
-			csActiveLastStep.clear();
+			timeline.addActiveNames(j, csActiveThisTrial);
 			// Store new prediction at the end of each trial
-			store(tempRes, csActiveThisTrial);
+			store(tempRes, csActiveThisTrial, responses, window, precision);
 			// Store probe trials if required
 			if (trial.isProbe()) {
-				store(probeResults2, probeCSActiveThisTrial);
+				store(probeResults2, probeCSActiveThisTrial, responses, window,
+						precision);
 			}
             control.incrementProgress(1);
             control.setEstimatedCycleTime(System.currentTimeMillis()
                     - count);
 		}
+		for (CueList list : tempRes.values()) {
+			long[] counts = list.drainUpdateCounts();
+			control.addUpdateCounts(counts[0], counts[1]);
+		}
+		synchronized (this) {
+			presentCS.addAll(present);
+			maxMaxOnset = Math.max(maxMaxOnset, maxOnset);
+		}
+	}
+
+	/**
+	 * Draw the ITIs for a run of the phase, as the algorithm would take them
+	 * one trial at a time. Drawing them up front lets runs that share the ITI
+	 * configuration go ahead concurrently.
+	 * 
+	 * @return the ITI for each trial, in seconds.
+	 */
+
+	protected double[] drawITIs() {
+		double[] draws = new double[trials];
+		for (int i = 0; i < trials; i++) {
+			draws[i] = itis.next();
+		}
+		return draws;
+	}
+
+	/**
+	 * Draw the timings for each run of a set of variable durations, moving
+	 * the shared shuffle & ITIs on between runs as running them in turn would.
+	 * 
+	 * @param combination
+	 *            the trial order the runs are for
+	 * @return the draws for each run, by run number.
+	 */
+
+	protected TimingDraws[] drawReplicas(int combination) {
+		TimingDraws[] replicas = new TimingDraws[simulation
+				.getVariableCombinationNo()];
+		drawReplicas(combination, replicas, 0, replicas.length);
+		return replicas;
+	}
+
+	/**
+	 * Draw the timings for a range of runs of a set of variable durations.
+	 * 
+	 * @param combination
+	 *            the trial order the runs are for
+	 * @param replicas
+	 *            array to draw into, by run number
+	 * @param from
+	 *            first run to draw
+	 * @param to
+	 *            run after the last to draw
+	 */
+
+	private void drawReplicas(int combination, TimingDraws[] replicas,
+			int from, int to) {
+		for (int i = from; i < to; i++) {
+			replicas[i] = timingConfig.draw(drawITIs(), seed(combination, i));
+			// Reshuffle onset sequence
+			try {
+				timingConfig.advance();
+			} catch (NoSuchElementException e) {
+				System.err.println("Ran out of variable timings after "
+						+ (i + 1) + " runs.");
+			}
+			itis.reset();
+		}
+	}
+
+	/**
+	 * The seed for a run of this phase, given by the model's seed & where
+	 * the run falls, so a run gets the same random numbers whichever thread
+	 * takes it and whenever.
+	 * 
+	 * @param combination
+	 *            trial order of the run
+	 * @param replica
+	 *            variable duration replica of the run
+	 * @return the seed.
+	 */
+
+	private long seed(int combination, int replica) {
+		return Seeds.seed(simulation.getRandomSeed(), group
+				.getNameOfGroup().hashCode(), group.getPhases().indexOf(this),
+				combination, replica);
+	}
+
+	/**
+	 * Work out how the traces of a trial's idle cues decay once its timeline
+	 * has settled.
+	 * 
+	 * @param idle
+	 *            update slots of the idle cues
+	 * @param lists
+	 *            CSCs for the trial's slots
+	 * @return the factor the idle traces decay by each timestep, or NaN if
+	 *         they can't be advanced together in closed form.
+	 */
+
+	private double idleDecay(int[] idle, CueList[] lists) {
+		if (idle.length == 0) {
+			return Double.NaN;
+		}
+		double decay = Double.NaN;
+		for (int k : idle) {
+			if (lists[k] == null) {
+				return Double.NaN;
+			}
+			double listDecay = lists[k].getTraceType().decay(delta, gamma);
+			if (Double.isNaN(listDecay)
+					|| (!Double.isNaN(decay) && decay != listDecay)) {
+				return Double.NaN;
+			}
+			decay = listDecay;
+		}
+		return decay;
 	}
 
 	/**
@@ -622,6 +738,77 @@ public class SimPhase {
 		results.clear();
 	}
 
+	/**
+	 * @return what running the phase left, to be shared with identical
+	 *         phases.
+	 */
+
+	public PhaseResults getPhaseResults() {
+		return new PhaseResults(results, probeResults, presentCS,
+				maxMaxOnset, combinationsUsed, stimuli);
+	}
+
+	/**
+	 * Take the results of an identical phase run from the same starting
+	 * state, sharing its cue lists & the serial compounds it found, so that
+	 * they're output as if this phase had run.
+	 * 
+	 * @param other
+	 *            what running the phase left
+	 */
+
+	public void shareResults(PhaseResults other) {
+		results = new TreeMap<String, CueList>(other.getResults());
+		probeResults = new TreeMap<String, CueList>(other.getProbeResults());
+		presentCS.addAll(other.getPresentCS());
+		maxMaxOnset = Math.max(maxMaxOnset, other.getMaxMaxOnset());
+		combinationsUsed = other.getCombinationsUsed();
+		for (Entry<String, SimStimulus> entry : stimuli.entrySet()) {
+			Set<CS> parts = other.getParts(entry.getKey());
+			if (parts == null) {
+				continue;
+			}
+			synchronized (entry.getValue()) {
+				for (CS part : parts) {
+					if (!entry.getValue().contains(part)) {
+						entry.getValue().addPart(part);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Check whether this phase would run exactly as another does from the
+	 * same starting state: the same sequence, parameters, timings, ITIs &
+	 * context. Configurations are compared by the settings they give a run,
+	 * so their seeds & drawing state don't count.
+	 * 
+	 * @param other
+	 *            phase to compare to
+	 * @return true if the phases are interchangeable.
+	 */
+
+	public boolean sameInputs(SimPhase other) {
+		return initialSeq.equals(other.initialSeq)
+				&& inputs().equals(other.inputs());
+	}
+
+	/**
+	 * @return the inputs the phase's run depends on besides its starting
+	 *         state, as text that's the same in any session for the same
+	 *         inputs, to compare or hash them.
+	 */
+
+	public String inputs() {
+		Object[] inputs = { initialSeq, random, trials, lambdaPlus,
+				lambdaMinus, betaPlus, betaMinus, gamma, delta, bgSalience,
+				timingConfig == null ? null : timingConfig.key(),
+				itis == null ? null : itis.key(),
+				contextCfg == null ? null : contextCfg.key() };
+		return Arrays.toString(inputs);
+	}
+
 	/**
 	 * Returns the phase's 'beta' value which represents the non-reinforced
 	 * stimuli.
@@ -641,6 +828,14 @@ public class SimPhase {
 		return betaPlus;
 	}
 
+	/**
+	 * @return the number of runs averaged in the last simulation of the
+	 *         phase, or 0 if it was run once.
+	 */
+	public int getCombinationsUsed() {
+		return combinationsUsed;
+	}
+
 	/**
 	 * @return the contextCfg
 	 */
@@ -891,38 +1086,80 @@ public class SimPhase {
 	}
 
 	/**
-	 * Merge cues together to form a compound cue.
+	 * Find the compound list for a merge target, creating it in the results
+	 * map if this is the first time it has been merged into.
 	 * 
+	 * @param resolved
+	 *            lists already found this trial, by target
+	 * @param index
+	 *            the target
 	 * @param compoundName
 	 *            name of the compound
 	 * @param tempRes
 	 *            working results map
-	 * @param active
-	 *            list of active components
+	 * @return the compound list.
+	 */
+
+	private CueList target(CueList[] resolved, int index, String compoundName,
+			Map<String, CueList> tempRes) {
+		CueList compound = resolved[index];
+		if (compound == null) {
+			compound = tempRes.get(compoundName);
+			if (compound == null) {
+				compound = new CompoundCueList(compoundName, 0d,
+						simulation.getThreshold(), simulation.getDecay(),
+						simulation.getTraceType(), simulation.getDecisionRule());
+				tempRes.put(compoundName, compound);
+			}
+			resolved[index] = compound;
+		}
+		return compound;
+	}
+
+	/**
+	 * Name the probe lists each probe cue in a trial feeds, for the cue itself
+	 * and for the context alongside it.
+	 * 
+	 * @param timeline
+	 *            the trial's timeline
+	 * @param slots
+	 *            the trial's cues in iteration order
+	 * @param trial
+	 *            the probe trial
+	 * @return the cue & context probe names, by slot.
 	 */
 
-	protected void mergeCues(String compoundName, Map<String, CueList> tempRes,
-			List<SimCue> active) {
-		compoundName = "";
-		for (SimCue cue : active) {
-			compoundName += cue.getSymbol();
+	private String[][] probeTargets(TrialTimeline timeline, CS[] slots,
+			Trial trial) {
+		String[][] names = new String[slots.length][];
+		// Identify results by cuename+trialname to make probe cues uniquely
+		// identifiable per trial type.
+		String trialProbe = trial.getProbeSymbol();
+		for (int k : timeline.getProbes()) {
+			String probe = slots[k].getProbeSymbol();
+			names[k] = new String[] {
+					probe + trialProbe,
+					contextCfg.getSymbol() + "(" + probe + ")" + trialProbe };
 		}
+		return names;
+	}
 
-		if (active.size() > 1) {
-			CueList compound = tempRes.containsKey(compoundName) ? tempRes
-					.get(compoundName) : new CompoundCueList(compoundName, 0d,
-					group.getModel().getThreshold(), group.getModel()
-							.getDecay(), group.getModel().getTraceType(), group
-							.getModel().getDecisionRule());
-			SimCue cue = compound.nextCue();
-			double totalAssoc = 0;
-			for (SimCue tmp : active) {
-				totalAssoc += tmp.getLastAssocValue();
-			}
-			cue.setAssocValue(totalAssoc);
+	/**
+	 * Merge cues together to form a compound cue.
+	 * 
+	 * @param compound
+	 *            the compound list
+	 * @param active
+	 *            list of active components
+	 */
 
-			tempRes.put(compoundName, compound);
+	protected void mergeCues(CueList compound, List<SimCue> active) {
+		SimCue cue = compound.nextCue();
+		double totalAssoc = 0;
+		for (SimCue tmp : active) {
+			totalAssoc += tmp.getLastAssocValue();
 		}
+		cue.setAssocValue(totalAssoc);
 	}
 
 	/**
@@ -933,19 +1170,18 @@ public class SimPhase {
 	 * takes the value of the last A + first B + first C. Here, we achieve this
 	 * by calling this method with the active set of cues at each transition.
 	 * 
+	 * @param compound
+	 *            the serial compound list
+	 * @param active
+	 *            list of active components
 	 * @param activeLastStep
+	 *            log of the components active so far this trial
 	 */
 
-	protected void mergeSerialCues(String compoundName,
-			Map<String, CueList> tempRes, List<SimCue> active,
-			Map<CS, Queue<SimCue>> activeLastStep) {
+	protected void mergeSerialCues(CueList compound, List<SimCue> active,
+			CueLog activeLastStep) {
 		// activeLastStep.addAll(active);
 		if (!active.isEmpty()) {
-			CueList compound = tempRes.containsKey(compoundName) ? tempRes
-					.get(compoundName) : new CompoundCueList(compoundName, 0d,
-					group.getModel().getThreshold(), group.getModel()
-							.getDecay(), group.getModel().getTraceType(), group
-							.getModel().getDecisionRule());
 			SimCue cue = compound.nextCue();
 			// Need to zero this on the first go
 			double totalAssoc = cue.getLastAssocValue();
@@ -956,9 +1192,9 @@ public class SimPhase {
 			 * }
 			 */
 			// Sum other cues as well
-			for (Queue<SimCue> q : activeLastStep.values()) {
-				if (!q.isEmpty()) {
-					SimCue tmp = q.remove();
+			for (int k = 0; k < activeLastStep.getSlots(); k++) {
+				SimCue tmp = activeLastStep.poll(k);
+				if (tmp != null) {
 					assoc = tmp.getLastAssocValue();
 					trace = 1;//tmp.getLastTrace();
 					totalAssoc += assoc * trace;
@@ -972,57 +1208,62 @@ public class SimPhase {
 			}
 			totalAssoc /= active.size() + 1;
 			//cue.setAvgAssocValue(totalAssoc);
-
-			tempRes.put(compoundName, compound);
 		}
 
 	}
 
 	/**
-	 * Helper function for random runs. Reconstitutes a map of lists of weights
-	 * and a map of trial counts into a map of averaged cues.
+	 * Helper function for random runs. Reconstitutes the totals of each cue
+	 * into a map of averaged cues, carrying the spread across runs.
 	 * 
 	 * @param tempRes
 	 *            Map to return results into
-	 * @param avgResult
-	 *            Map of cue names -> lists of weights
-	 * @param trialCounts
-	 *            Map of trial counts for cscs.
+	 * @param totals
+	 *            Map of cue names -> totals over the runs
 	 */
 
 	private void reconstitute(Map<String, CueList> tempRes,
-			TreeMap<String, List<ParallelDoubleArray[]>> avgResult,
-			Map<String, Integer> trialCounts, Map<String, List<Integer>> maxCues) {
-		for (Entry<String, List<ParallelDoubleArray[]>> entry : avgResult
-				.entrySet()) {
+			Map<String, CueTotals> totals) {
+		for (Entry<String, CueTotals> entry : totals.entrySet()) {
+			CueTotals cueTotals = entry.getValue();
 			CueList tmpCueList = entry.getKey().length() == 1 ? new CueList(
-					entry.getKey(), cues.get(entry.getKey()).getAlpha(), group
-							.getModel().getThreshold(), group.getModel()
-							.getDecay(), group.getModel().getTraceType(), group
-							.getModel().getDecisionRule())
-					: new CompoundCueList(entry.getKey(), 0d, group.getModel()
-							.getThreshold(), group.getModel().getDecay(), group
-							.getModel().getTraceType(), group.getModel()
-							.getDecisionRule());
+					entry.getKey(), cues.get(entry.getKey()).getAlpha(),
+					simulation.getThreshold(), simulation.getDecay(),
+					simulation.getTraceType(), simulation.getDecisionRule())
+					: new CompoundCueList(entry.getKey(), 0d,
+							simulation.getThreshold(), simulation.getDecay(),
+							simulation.getTraceType(),
+							simulation.getDecisionRule());
 			if (Context.isContext(tmpCueList.getSymbol())) {
 				tmpCueList.setAlpha(contextCfg.getAlpha());
 			}
-			tmpCueList.setAverageWeights(entry.getValue().get(0)[0].asList());
-			tmpCueList.setAverageResponse(entry.getValue().get(0)[1].asList());
-			tmpCueList.setTrialCount(trialCounts.get(entry.getKey()));
-			tmpCueList.setMaxCueList(maxCues.get(entry.getKey()));
-			for (int i = 2; i < entry.getValue().size(); i++) {
+			// The averages follow the last run, components the longest
+			RunningStats weights = cueTotals.getWeights();
+			RunningStats responses = cueTotals.getResponses();
+			tmpCueList.setAverageWeights(weights.getMeans(weights
+					.getLastLength()));
+			tmpCueList.setAverageWeightsSd(weights.getSds(weights
+					.getLastLength()));
+			tmpCueList.setAverageResponse(responses.getMeans(responses
+					.getLastLength()));
+			tmpCueList.setRuns(cueTotals.getRuns());
+			tmpCueList.setTrialCount(cueTotals.getTrialCount());
+			tmpCueList.setMaxCueList(cueTotals.getMaxCues());
+			for (RunningStats[] stats : cueTotals.getComponents()) {
 				SimCue tmpCue;
 				tmpCue = entry.getKey().length() == 1 ? new SimCue(
 						entry.getKey(), cues.get(entry.getKey()).getAlpha())
 						: new SimCue(entry.getKey(), 0d);
-				tmpCue.setAssocValueVector(entry.getValue().get(i)[0].asList());
-				tmpCue.setResponses(entry.getValue().get(i)[1].asList());
-				tmpCue.setAvgAssocValueVector(entry.getValue().get(i)[2].asList());
+				tmpCue.setAssocValueVector(stats[0].getMeans(stats[0]
+						.getLength()));
+				tmpCue.setAssocValueSd(stats[0].getSds(stats[0].getLength()));
+				tmpCue.setResponses(stats[1].getMeans(stats[1].getLength()));
+				tmpCue.setAvgAssocValueVector(stats[2].getMeans(stats[2]
+						.getLength()));
 				tmpCueList.add(tmpCue);
 				tmpCueList.setSymbol(entry.getKey());
 			}
-			//tmpCueList.remakeResponses();
+			tmpCueList.setHistoryPrecision(simulation.getPrecision());
 			if (!tmpCueList.isEmpty()) {
 				tempRes.put(entry.getKey(), tmpCueList);
 			}
@@ -1030,230 +1271,279 @@ public class SimPhase {
 	}
 
 	/**
-	 * Reset the iterators of any cues from the first list not in the second.
-	 * 
-	 * @param set
-	 *            list of cues to test
-	 * @param activeList
-	 *            list to not reset
-	 * @param tempMap
-	 *            iterators
+	 * Running totals of the results of a set of random runs, for the cues &
+	 * the probe cues.
 	 */
 
-	private int resetInactive(Set<CS> set, List<SimCue> activeList,
-			Map<CS, CueList> tempMap) {
-		Map<String, CS> names = new HashMap<String, CS>();
-		int count = 0;
-		for (CS cs : set) {
-			if (!cs.isCompound()) {
-				names.put(cs.getName(), cs);
+	private class RandomTotals {
+		private final Map<String, CueTotals> totals = new TreeMap<String, CueTotals>();
+		private final Map<String, CueTotals> probeTotals = new TreeMap<String, CueTotals>();
+		/** Number of runs added. **/
+		private long runs = 0;
+
+		/**
+		 * Add the results of a run.
+		 * 
+		 * @param tempRes
+		 *            results of the run
+		 * @param probeRes
+		 *            probe results of the run
+		 */
+
+		void add(Map<String, CueList> tempRes, Map<String, CueList> probeRes) {
+			CueTotals.add(totals, tempRes, runs);
+			CueTotals.add(probeTotals, probeRes, runs);
+			runs++;
+		}
+
+		/**
+		 * Add the totals of a later set of runs.
+		 * 
+		 * @param later
+		 *            totals of runs after these
+		 */
+
+		void merge(RandomTotals later) {
+			CueTotals.merge(totals, runs, later.totals, later.runs);
+			CueTotals.merge(probeTotals, runs, later.probeTotals, later.runs);
+			runs += later.runs;
+		}
+
+		/**
+		 * @param tolerance
+		 *            largest standard error to accept
+		 * @param responseScale
+		 *            factor putting the responses on the weights' scale, 0
+		 *            to hold only the weights to the tolerance
+		 * @return true if every average is known to within the tolerance.
+		 */
+
+		boolean isSettled(double tolerance, double responseScale) {
+			return CueTotals.maxStandardError(totals, responseScale) <= tolerance
+					&& CueTotals.maxStandardError(probeTotals, responseScale) <= tolerance;
+		}
+
+		/**
+		 * Turn the totals back into cues.
+		 * 
+		 * @param res
+		 *            map to put the cues in
+		 * @param probeRes
+		 *            map to put the probe cues in
+		 */
+
+		void reconstitute(Map<String, CueList> res,
+				Map<String, CueList> probeRes) {
+			SimPhase.this.reconstitute(res, totals);
+			SimPhase.this.reconstitute(probeRes, probeTotals);
+		}
+	}
+
+	/**
+	 * A range of runs of the phase, each a trial order & its timings, split
+	 * in half until each is run on its own. Halves are totalled then merged in
+	 * order, so the sums are grouped the same way however many threads take
+	 * part.
+	 */
+
+	private class RandomRuns extends RecursiveTask<RandomTotals> {
+		private static final long serialVersionUID = 1L;
+		/** Trial order for each run. **/
+		private final List<List<Trial>> sequences;
+		/** Timings for each run with fixed durations. **/
+		private final TimingDraws[] draws;
+		/** Timings for each replica of each run with variable durations. **/
+		private final TimingDraws[][] replicas;
+		/** Range of runs. **/
+		private final int from, to;
+		private final boolean context;
+
+		RandomRuns(List<List<Trial>> sequences, TimingDraws[] draws,
+				TimingDraws[][] replicas, int from, int to, boolean context) {
+			this.sequences = sequences;
+			this.draws = draws;
+			this.replicas = replicas;
+			this.from = from;
+			this.to = to;
+			this.context = context;
+		}
+
+		@Override
+		protected RandomTotals compute() {
+			if (to - from <= 1) {
+				return from < to ? run(from) : new RandomTotals();
 			}
+			int mid = (from + to) >>> 1;
+			RandomRuns first = new RandomRuns(sequences, draws, replicas,
+					from, mid, context);
+			RandomRuns second = new RandomRuns(sequences, draws, replicas,
+					mid, to, context);
+			second.fork();
+			RandomTotals totals = first.compute();
+			totals.merge(second.join());
+			return totals;
 		}
-		for (Entry entry : names.entrySet()) {
-			boolean contains = false;
-			for (SimCue cue : activeList) {
-				if (cue.getSymbol().equals(entry.getKey())) {
-					contains = true;
-					break;
-				}
+
+		/**
+		 * Run a single combination.
+		 * 
+		 * @param i
+		 *            the combination
+		 * @return totals for that combination alone.
+		 */
+
+		private RandomTotals run(int i) {
+			RandomTotals totals = new RandomTotals();
+			if (control.isCancelled()) {
+				return totals;
 			}
-			if (!contains) {
-                try {
-				    tempMap.get(entry.getValue()).restart();
-				    count++;
-                } catch (NullPointerException e) {
-                    //Oh just fucking deal with it
-                }
+			// Copies an exact copy of the result treemap and
+			// runs the algorithm using this temporarily copy.
+			TreeMap<String, CueList> tempRes;
+			synchronized (cues) {
+				tempRes = copyKeysMapToTreeMap(cues);
 			}
+			TreeMap<String, CueList> tempProbeRes = new TreeMap<String, CueList>();
+
+			// Run the algorithm for this sequence
+			if (replicas != null && replicas[i] != null) {
+				runRandom(sequences.get(i), tempRes, context, tempProbeRes,
+						replicas[i]);
+			} else {
+				algorithm(sequences.get(i), tempRes, context, tempProbeRes,
+						draws[i]); // Alberto Fernández July-2011
+			}
+
+			// Add the results to the averaged equivalent weights
+			totals.add(tempRes, tempProbeRes);
+			return totals;
 		}
-		return count;
 	}
 
 	/**
-	 * Helper function for random runs. Maintains a running total of weights and
-	 * trial counts, averaged at each step.
+	 * Run a task on the fork-join pool, or in this thread if it is already
+	 * one of the pool's.
 	 * 
-	 * @param tempRes
-	 * @param avgResult
-	 * @param trialCounts
-	 * @param divide
-	 */
-
-	private void runningRandomTotal(TreeMap<String, CueList> tempRes,
-			TreeMap<String, List<ParallelDoubleArray[]>> avgResult,
-			Map<String, Integer> trialCounts, DoubleOp divide,
-			Map<String, List<Integer>> maxCues) {
-		ParallelDoubleArray[] avg;
-		// Add the results to the averaged equivalent weights
-		for (Entry<String, CueList> cues : tempRes.entrySet()) {
-			List<ParallelDoubleArray[]> avgList = avgResult.get(cues.getKey());
-			// Create a list for this cue if it is missing
-			if (avgList == null) {
-				avgList = new ArrayList<ParallelDoubleArray[]>();
-				avgResult.put(cues.getKey(), avgList);
-			}
-			ParallelDoubleArray weights;
-			weights = ParallelDoubleArray.createEmpty(cues.getValue()
-					.getAverageWeights().size(), Simulator.fjPool);
-			// Average weights first
-			weights.asList().addAll(cues.getValue().getAverageWeights());
-			try {
-				avg = avgList.get(0);
-			} catch (IndexOutOfBoundsException e) {
-				avg = new ParallelDoubleArray[2];
-				avg[0] = ParallelDoubleArray.createEmpty(cues.getValue()
-						.getAverageWeights().size(), Simulator.fjPool);
-				avgResult.get(cues.getValue().getSymbol()).add(avg);
-			}
-			avg[0].setLimit(weights.asList().size());
-			avg[0].replaceWithMapping(addWeights,
-					weights.replaceWithMapping(divide));
-			// Average responses next
-			weights.asList().clear();
-			weights.asList().addAll(cues.getValue().getAverageResponse());
-			try {
-				avg = avgList.get(1);
-			} catch (IndexOutOfBoundsException e) {
-				avg[1] = ParallelDoubleArray.createEmpty(cues.getValue()
-						.getAverageWeights().size(), Simulator.fjPool);
-				avgResult.get(cues.getValue().getSymbol()).add(avg);
-			}
-			avg[1].setLimit(weights.asList().size());
-			avg[1].replaceWithMapping(addWeights,
-					weights.replaceWithMapping(divide));
-			// Trial counts
-			trialCounts.put(cues.getKey(), cues.getValue().getTrialCount());
-			// Max components for each trial.
-			List<Integer> totalMax = new ArrayList<Integer>();
-			if (maxCues.containsKey(cues.getKey())) {
-				for (int i = 0; i < cues.getValue().getMaxCueList().size(); i++) {
-					int existingMax = 0;
-					int newMax = 0;
-					try {
-						existingMax = maxCues.get(cues.getKey()).get(i);
-					} catch (Exception e) {
-						// System.err.println(i + "_" + cues.getKey());
-					}
-					try {
-						newMax = cues.getValue().getMaxCueList().get(i);
-					} catch (Exception e) {
-						// System.err.println(i + " " + cues.getKey());
-					}
-					totalMax.add(Math.max(existingMax, newMax));
-				}
-				maxCues.put(cues.getKey(), totalMax);
+	 * @param task
+	 *            task to run
+	 * @return the task's result.
+	 */
+
+	private static <T> T invoke(ForkJoinTask<T> task) {
+		if (Thread.currentThread() instanceof ForkJoinWorkerThread) {
+			return task.invoke();
+		}
+		return SimEngine.fjPool.invoke(task);
+	}
+
+	/**
+	 * Draws the timings for a range of runs & gives the task running them.
+	 */
+
+	private abstract class Batch {
+		/**
+		 * @param from
+		 *            first run
+		 * @param to
+		 *            run after the last
+		 * @return the task running those runs.
+		 */
+		abstract RandomRuns runs(int from, int to);
+	}
+
+	/**
+	 * Run up to a number of runs and total them. With adaptive combinations
+	 * on the runs go in batches, stopping once the averages' standard errors
+	 * are within the model's tolerance. Batches are fixed in size & merged in
+	 * order, so where it stops doesn't depend on the threads.
+	 * 
+	 * @param cap
+	 *            most runs to make
+	 * @param batch
+	 *            draws & runs each range
+	 * @return the totals of the runs made.
+	 */
+
+	private RandomTotals runBatches(int cap, Batch batch) {
+		boolean adaptive = simulation.isAdaptiveCombinations();
+		// Simulated responses are held to the tolerance per chance to respond
+		double responseScale = simulation.showResponse() ? 1d / Math.max(1,
+				simulation.getResponsesPerMinute()) : 0;
+		int size = adaptive ? Math.min(ADAPTIVE_BATCH, cap) : cap;
+		RandomTotals totals = null;
+		int done = 0;
+		do {
+			int to = Math.min(cap, done + size);
+			RandomTotals later = invoke(batch.runs(done, to));
+			if (totals == null) {
+				totals = later;
 			} else {
-				maxCues.put(cues.getKey(), cues.getValue().getMaxCueList());
+				totals.merge(later);
 			}
+			done = to;
+		} while (done < cap
+				&& !control.isCancelled()
+				&& !(adaptive && totals.isSettled(
+						simulation.getCombinationTolerance(), responseScale)));
+		combinationsUsed = done;
+		return totals;
+	}
 
-			// Iterate through all the components of the cue and add their
-			// weight vectors
-			// to the average vector, expanding it if necessary
-			for (int p = 0; p < cues.getValue().size()
-					&& !cues.getValue().get(p).getAssocValueVector().isEmpty(); p++) {
-				SimCue cue = cues.getValue().get(p);
+	/**
+	 * Run a shuffled set of variable distributions.
+	 * 
+	 * @param sequence
+	 * @param res
+	 * @param context
+	 * @param probeResults2
+	 */
 
-				try {
-					avg = avgList.get(p + 2);
-				} catch (IndexOutOfBoundsException e) {
-					avg = new ParallelDoubleArray[3];
-					avg[0] = ParallelDoubleArray.createEmpty(cue
-							.getAssocValueVector().size(), Simulator.fjPool);
-					avg[1] = ParallelDoubleArray.createEmpty(cue.getResponses()
-							.size(), Simulator.fjPool);
-					avg[2] = ParallelDoubleArray.createEmpty(cue
-							.getAvgAssocValueVector().size(), Simulator.fjPool);
-					
-					avgResult.get(cue.getSymbol()).add(avg);
-				}
-				// Weights first
-				weights = ParallelDoubleArray.createEmpty(cue
-						.getAssocValueVector().size(), Simulator.fjPool);
-				weights.asList().addAll(cue.getAssocValueVector());
-				int limit = Math.max(weights.asList().size(), avg[0].size());
-				avg[0].setLimit(limit);
-				weights.setLimit(limit);
-				avg[0].replaceWithMapping(addWeights,
-						weights.replaceWithMapping(divide));
-				// Responses second
-				weights = ParallelDoubleArray.createEmpty(cue.getResponses()
-						.size(), Simulator.fjPool);
-				weights.asList().addAll(cue.getResponses());
-				limit = Math.max(weights.asList().size(), avg[1].size());
-				weights.setLimit(limit);
-				avg[1].setLimit(limit);
-				avg[1].replaceWithMapping(addWeights,
-						weights.replaceWithMapping(divide));
-				// Avg'd weights last
-				weights = ParallelDoubleArray.createEmpty(cue.getAvgAssocValueVector()
-						.size(), Simulator.fjPool);
-				weights.asList().addAll(cue.getAvgAssocValueVector());
-				limit = Math.max(weights.asList().size(), avg[2].size());
-				weights.setLimit(limit);
-				avg[2].setLimit(limit);
-				avg[2].replaceWithMapping(addWeights,
-						weights.replaceWithMapping(divide));
+	public void runRandom(final List<Trial> sequence, Map<String, CueList> res,
+			final boolean context, Map<String, CueList> probeResults2) {
+		int cap = simulation.getVariableCombinationNo();
+		final TimingDraws[] replicas = new TimingDraws[cap];
+		RandomTotals totals = runBatches(cap, new Batch() {
+			@Override
+			RandomRuns runs(int from, int to) {
+				drawReplicas(0, replicas, from, to);
+				return new RandomRuns(Collections.nCopies(replicas.length,
+						sequence), replicas, null, from, to, context);
 			}
+		});
+		if (control.isCancelled()) {
+			return;
 		}
+		// Reconstitute the lists of weights to an appropriate cue object
+		totals.reconstitute(res, probeResults2);
 	}
 
 	/**
-	 * Run a shuffled set of variable distributions.
+	 * Run a shuffled set of variable distributions, as drawn up front by
+	 * <code>drawReplicas</code>. The replicas share nothing but the cues they
+	 * start from, so they run concurrently & are averaged back up the tree.
 	 * 
 	 * @param sequence
 	 * @param res
 	 * @param context
 	 * @param probeResults2
+	 * @param replicas
+	 *            timings for each replica
 	 */
 
-	public void runRandom(List<Trial> sequence, Map<String, CueList> res,
-			boolean context, Map<String, CueList> probeResults2) {
-		Map<String, Integer> trialCounts = new HashMap<String, Integer>();
-		Map<String, Integer> probeTrialCounts = new HashMap<String, Integer>();
-		Map<String, List<Integer>> maxCues = new HashMap<String, List<Integer>>();
-		Map<String, List<Integer>> maxProbeCues = new HashMap<String, List<Integer>>();
+	protected void runRandom(List<Trial> sequence, Map<String, CueList> res,
+			boolean context, Map<String, CueList> probeResults2,
+			TimingDraws[] replicas) {
 		// Alberto Fernández July-2011
 		// J Gray Dec-2011
-		Ops.DoubleOp divide = new Ops.DoubleOp() {
-
-			@Override
-			public double op(double value) {
-				return value / group.getModel().getVariableCombinationNo();
-			}
-		};
 		// Shuffle process
-		TreeMap<String, List<ParallelDoubleArray[]>> avgResult = new TreeMap<String, List<ParallelDoubleArray[]>>();
-		TreeMap<String, List<ParallelDoubleArray[]>> avgProbeResult = new TreeMap<String, List<ParallelDoubleArray[]>>();
-		TreeMap<String, CueList> tempRes, probeRes;
-		for (int i = 0; i < group.getModel().getVariableCombinationNo()
-				&& !control.isCancelled(); i++) {
-			// Copies an exact copy of the result treemap and
-			// runs the algorithm using this temporary copy.
-			tempRes = copyKeysMapToTreeMap(cues);
-			probeRes = new TreeMap<String, CueList>();
-			// Time one cycle
-			// Run the algorithm for this sequence
-			algorithm(sequence, tempRes, context, probeRes);
-			// Reshuffle onset sequence
-            try {
-			    timingConfig.advance();
-            } catch (NoSuchElementException e) {
-                System.err.println("Ran out of variable timings after "+(control.getProgress()-1)+" trials.");
-            }
-			itis.reset();
-
-			// Add the results to the averaged equivalent weights
-			runningRandomTotal(tempRes, avgResult, trialCounts, divide, maxCues);
-			runningRandomTotal(probeRes, avgProbeResult, probeTrialCounts,
-                    divide, maxProbeCues);
-		}
+		RandomTotals totals = invoke(new RandomRuns(Collections.nCopies(
+				replicas.length, sequence), replicas, null, 0,
+				replicas.length, context));
 		if (control.isCancelled()) {
 			return;
 		}
 		// Reconstitute the lists of weights to an appropriate cue object
-		reconstitute(res, avgResult, trialCounts, maxCues);
-		reconstitute(probeResults2, avgProbeResult, probeTrialCounts,
-				maxProbeCues);
+		totals.reconstitute(res, probeResults2);
 	}
 
 	/**
@@ -1272,76 +1562,58 @@ public class SimPhase {
 	public void runSimulator() {
 		results = copyKeysMapToTreeMap(cues);
 		probeResults = new TreeMap<String, CueList>();// copyKeysMapToTreeMap(cues);
-		boolean context = group.getModel().isUseContext();
+		final boolean context = simulation.isUseContext();
+		combinationsUsed = 0;
 		// Sequence is running randomly
 		if (isRandom()) {
-			Map<String, Integer> trialCounts = new HashMap<String, Integer>();
-			Map<String, Integer> probeTrialCounts = new HashMap<String, Integer>();
-			Map<String, List<Integer>> maxCues = new HashMap<String, List<Integer>>();
-			Map<String, List<Integer>> maxProbeCues = new HashMap<String, List<Integer>>();
 			// Alberto Fernández July-2011
 			// J Gray Dec-2011
 
 			// end changes July-2011
 
-			Ops.DoubleOp divide = new Ops.DoubleOp() {
-
+			// Shuffle process, each combination carrying on from the last
+			final List<Trial> tempSeq = new ArrayList<Trial>(orderedSeq);
+			final List<List<Trial>> sequences = new ArrayList<List<Trial>>();
+			final TimingDraws[] draws = new TimingDraws[group.noOfCombin()];
+			final TimingDraws[][] replicas = new TimingDraws[group.noOfCombin()][];
+			final boolean variable = timingConfig.hasVariableDurations();
+			// With their timings drawn the combinations are independent, so
+			// run them as a fork-join tree & sum the averages back up it.
+			RandomTotals totals = runBatches(group.noOfCombin(), new Batch() {
 				@Override
-				public double op(double value) {
-					return value / group.noOfCombin();
-				}
-			};
-
-			// Shuffle process
-			Random generator = new Random();
-			TreeMap<String, List<ParallelDoubleArray[]>> avgResult = new TreeMap<String, List<ParallelDoubleArray[]>>();
-			TreeMap<String, List<ParallelDoubleArray[]>> avgProbeResult = new TreeMap<String, List<ParallelDoubleArray[]>>();
-			TreeMap<String, CueList> tempRes, tempProbeRes;
-			for (int i = 0; i < group.noOfCombin() && !control.isCancelled(); i++) {
-				List<Trial> tempSeq = orderedSeq;
-				int n;
-				for (int x = 0; x < trials && orderedSeq.size() > 1; x++) {
-					n = generator.nextInt(orderedSeq.size() - 1);
-					Trial swap = tempSeq.get(x);
-					tempSeq.remove(x);
-					tempSeq.add(n, swap);
-				}
-				// Copies an exact copy of the result treemap and
-				// runs the algorithm using this temporarily copy.
-				tempRes = copyKeysMapToTreeMap(cues);
-				tempProbeRes = new TreeMap<String, CueList>();// copyKeysMapToTreeMap(cues);
-
-				// Run the algorithm for this sequence
-				if (timingConfig.hasVariableDurations()) {
-					runRandom(tempSeq, tempRes, context, tempProbeRes);
-				} else {
-
-					algorithm(tempSeq, tempRes, context, tempProbeRes); // Alberto
-																		// Fern·ndez
-																		// July-2011
-
+				RandomRuns runs(int from, int to) {
+					for (int i = from; i < to; i++) {
+						// Replica -1 keys the trial order
+						Random generator = new Random(seed(i, -1));
+						int n;
+						for (int x = 0; x < trials && orderedSeq.size() > 1; x++) {
+							n = generator.nextInt(orderedSeq.size() - 1);
+							Trial swap = tempSeq.get(x);
+							tempSeq.remove(x);
+							tempSeq.add(n, swap);
+						}
+						sequences.add(new ArrayList<Trial>(tempSeq));
+						if (variable) {
+							replicas[i] = drawReplicas(i);
+							// Reset onset sequence
+							timingConfig.restartOnsets();
+						} else {
+							draws[i] = timingConfig.draw(drawITIs(), seed(i, 0));
+						}
+						itis.reset();
+					}
+					return new RandomRuns(sequences, draws, replicas, from,
+							to, context);
 				}
+			});
 
-				// Reset onset sequence
-                timingConfig.restartOnsets();
-				itis.reset();
-
-				// Add the results to the averaged equivalent weights
-				runningRandomTotal(tempRes, avgResult, trialCounts, divide,
-						maxCues);
-				// Add the results to the averaged equivalent weights
-				runningRandomTotal(tempProbeRes, avgProbeResult,
-						probeTrialCounts, divide, maxProbeCues);
-			}
 			if (control.isCancelled()) {
 				return;
 			}
 			// Reconstitute the lists of weights to an appropriate cue object
 			results = new TreeMap<String, CueList>();
-			reconstitute(results, avgResult, trialCounts, maxCues);
 			probeResults = new TreeMap<String, CueList>();
-			reconstitute(probeResults, avgProbeResult, probeTrialCounts,
-					maxProbeCues);
+			totals.reconstitute(results, probeResults);
 			// control.incrementProgress(1);//(100d/(group.noOfCombin()+1))/group.getNoOfPhases());
 		}
 		// A standard sequence
@@ -1349,7 +1621,8 @@ public class SimPhase {
 			if (timingConfig.hasVariableDurations()) {
 				runRandom(orderedSeq, results, context, probeResults);
 			} else {
-				algorithm(orderedSeq, results, context, probeResults); // Alberto
+				algorithm(orderedSeq, results, context, probeResults,
+						timingConfig.draw(drawITIs(), seed(0, 0))); // Alberto
 																		// Fern·ndez
 																		// July-2011
 			}
@@ -1397,6 +1670,19 @@ public class SimPhase {
 		this.control = control;
 	}
 
+	/**
+	 * @param simulation
+	 *            settings of the run about to start, which the phase's timings
+	 *            are made to suit.
+	 */
+	public void setSimulationContext(SimulationContext simulation) {
+		this.simulation = simulation;
+		timingConfig.setTimestep(simulation.getTimestepSize());
+		itis.setTimestep(simulation.getTimestepSize());
+		timingConfig.setRandomSeed(simulation.getRandomSeed());
+		itis.setRandomSeed(simulation.getRandomSeed());
+	}
+
 	/**
 	 * @param cues
 	 *            the cues to set
@@ -1513,13 +1799,23 @@ public class SimPhase {
 	 * 
 	 * @param tempRes
 	 * @param current
+	 * @param random
+	 *            generator for the run's simulated responses
+	 * @param window
+	 *            trials each component's histories hold, 0 for all
+	 * @param precision
+	 *            precision to store the histories at
 	 */
 
-	protected void store(Map<String, CueList> tempRes, Set<String> current) {
+	protected void store(Map<String, CueList> tempRes, Set<String> current,
+			Random random, int window, Precision precision) {
 		for (CueList cue : tempRes.values()) {
 			// Changed to contains to accommodate lazy compound formation
 			if (current.contains(cue.getSymbol())) {
-				cue.store();
+				cue.setHistoryWindow(window);
+				cue.setHistoryPrecision(precision);
+				cue.setSimulationContext(simulation);
+				cue.store(random);
 				cue.restart();
 			}
 		}
@@ -1558,25 +1854,22 @@ public class SimPhase {
 	 * Update the probe cues map.
 	 * 
 	 * @param compoundName
+	 *            name of the probe list, as given by <code>probeTargets</code>
 	 * @param tempRes
 	 * @param cue
-	 * @param trial
 	 */
 
 	protected String updateProbeCues(String compoundName,
-			Map<String, CueList> tempRes, SimCue cue, Trial trial) {
-		// Identify results by cuename+trialname to make probe cues uniquely
-		// identifiable per trial type.
-		compoundName += trial.getProbeSymbol();
-		CueList compound = tempRes.containsKey(compoundName) ? tempRes
-				.get(compoundName) : new CompoundCueList(compoundName, 0d,
-				group.getModel().getThreshold(), group.getModel().getDecay(),
-				group.getModel().getTraceType(), group.getModel()
-						.getDecisionRule());
+			Map<String, CueList> tempRes, SimCue cue) {
+		CueList compound = tempRes.get(compoundName);
+		if (compound == null) {
+			compound = new CompoundCueList(compoundName, 0d,
+					simulation.getThreshold(), simulation.getDecay(),
+					simulation.getTraceType(), simulation.getDecisionRule());
+			tempRes.put(compoundName, compound);
+		}
 		SimCue compoundCue = compound.nextCue();
 		compoundCue.setAssocValue(cue.getLastAssocValue());
-
-		tempRes.put(compoundName, compound);
         return compoundName;
 	}
 	
@@ -1584,14 +1877,17 @@ public class SimPhase {
 	 * Takes a trial description string and returns a list of all the CS'
 	 * in it.
 	 * @param phaseString
+	 * @param isTimingPerTrial
+	 *            true if timings are set per trial, so repeats of a stimulus
+	 *            are told apart
 	 * @return
 	 */
 	
-	public static Collection<CS> stringToCSList(String phaseString) {
+	public static Collection<CS> stringToCSList(String phaseString,
+			boolean isTimingPerTrial) {
         phaseString = phaseString.replaceAll("\\s", "");
 		List<CS> stimuli = new ArrayList<CS>();
 		phaseString = phaseString == null ? "" : phaseString;
-		boolean isTimingPerTrial = Simulator.getController().getModel().isTimingPerTrial();
 		// A CS has an index (which of that character is this in the trial string)
 		int index = 0;
 		// A group - which substring is it in
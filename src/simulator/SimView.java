@@ -96,6 +96,8 @@ import simulator.editor.TimingEditor;
 import simulator.editor.TrialStringEditor;
 import simulator.util.Distributions;
 import simulator.util.GreekSymbol;
+import simulator.util.Precision;
+import simulator.util.Recording;
 import simulator.util.Trace;
 import simulator.util.ValuesTableModel;
 
@@ -232,7 +234,7 @@ public class SimView extends JFrame {
 									String compound = ((String) record[0])
 											.substring(2, ((String) record[0])
 													.length() - 1);
-									if (compound.startsWith(Simulator.OMEGA
+									if (compound.startsWith(SimEngine.OMEGA
 											+ "")) { //$NON-NLS-1$
 										compound = compound.substring(1);
 									}
@@ -777,7 +779,8 @@ public class SimView extends JFrame {
 
 	private JMenu menuFile, menuDesignSettings, menuHelp;
 	private JMenuItem menuItemNew, menuItemOpen, menuItemSave, menuItemExport,
-			menuItemQuit, menuItemComb, menuItemGuide, menuItemAbout, menuItemRPM;
+			menuItemQuit, menuItemComb, menuItemGuide, menuItemAbout, menuItemRPM,
+			menuItemTraceCutoff, menuItemRandomSeed;
 	private JCheckBoxMenuItem menuItemUSAcrossPhases, menuItemSetCompound,
 			menuItemSetConfiguralCompounds; // menuItemSetConfiguralCompounds by
 											// Alberto Fern�ndez August-2011
@@ -818,6 +821,16 @@ public class SimView extends JFrame {
 	private JMenu menuTrace;
 
 	private JRadioButtonMenuItem menuItemReplaceTrace;
+	/** Recording profile menus. **/
+	private JMenu menuRecording;
+	private JRadioButtonMenuItem menuItemSummaryRecording;
+	private JRadioButtonMenuItem menuItemFinalRecording;
+	private JRadioButtonMenuItem menuItemFullRecording;
+	/** Storage precision menus. **/
+	private JMenu menuPrecision;
+	private JRadioButtonMenuItem menuItemDoublePrecision;
+	private JRadioButtonMenuItem menuItemFloatPrecision;
+	private JRadioButtonMenuItem menuItemQuantizedPrecision;
 
 	private JMenuItem menuItemVarComb;
 
@@ -833,6 +846,16 @@ public class SimView extends JFrame {
 	/** Restrict predictions to above zero. **/
 	private JCheckBoxMenuItem menuItemRestrictPredictions;
 
+	/** Expected rather than sampled responses. **/
+	private JCheckBoxMenuItem menuItemExpectedResponses;
+
+	/** Stop random combinations once the averages settle. **/
+	private JCheckBoxMenuItem menuItemAdaptiveCombinations;
+	private JMenuItem menuItemCombinationTolerance;
+
+	/** Keep results on disk as well as in memory. **/
+	private JCheckBoxMenuItem menuItemDiskCache;
+
     public static int activeRow = -1;
     public static int activeCol = -1;
 
@@ -983,6 +1006,8 @@ public class SimView extends JFrame {
 																	// Fernandez
 																	// August-2011
         menuItemRPM.addActionListener(event);
+		menuItemTraceCutoff.addActionListener(event);
+		menuItemRandomSeed.addActionListener(event);
 		menuItemGuide.addActionListener(event);
 		menuItemAbout.addActionListener(event);
 		menuItemThreshold.addActionListener(event);
@@ -992,6 +1017,10 @@ public class SimView extends JFrame {
 		menuItemTimingPerTrial.addActionListener(event);
 		menuItemSerialCompounds.addActionListener(event);
 		menuItemRestrictPredictions.addActionListener(event);
+		menuItemExpectedResponses.addActionListener(event);
+		menuItemAdaptiveCombinations.addActionListener(event);
+		menuItemCombinationTolerance.addActionListener(event);
+		menuItemDiskCache.addActionListener(event);
 	}
 
 	/*
@@ -1656,6 +1685,16 @@ public class SimView extends JFrame {
 		menuItemVarComb.setActionCommand("VarDistCombinations"); //$NON-NLS-1$
 		menuProcSettings.add(menuItemVarComb);
 
+		menuItemAdaptiveCombinations = new JCheckBoxMenuItem(
+				Messages.getString("SimView.adaptiveCombinations"), false); //$NON-NLS-1$
+		menuItemAdaptiveCombinations.setActionCommand("adaptiveCombinations"); //$NON-NLS-1$
+		menuProcSettings.add(menuItemAdaptiveCombinations);
+
+		menuItemCombinationTolerance = new JMenuItem(
+				Messages.getString("SimView.combinationTolerance")); //$NON-NLS-1$
+		menuItemCombinationTolerance.setActionCommand("combinationTolerance"); //$NON-NLS-1$
+		menuProcSettings.add(menuItemCombinationTolerance);
+
 		menuItemTimingPerTrial = new JCheckBoxMenuItem(
 				Messages.getString("SimView.timingPerTrial"), false); //$NON-NLS-1$
 		// menuItemTimingPerPhase.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_D,
@@ -1697,6 +1736,21 @@ public class SimView extends JFrame {
         menuItemRPM.setActionCommand("rpm"); //$NON-NLS-1$
         menuProcSettings.add(menuItemRPM);
 
+		menuItemExpectedResponses = new JCheckBoxMenuItem(
+				Messages.getString("SimView.expectedResponses"), false); //$NON-NLS-1$
+		menuItemExpectedResponses.setActionCommand("expectedResponses"); //$NON-NLS-1$
+		menuProcSettings.add(menuItemExpectedResponses);
+
+		menuItemTraceCutoff = new JMenuItem(
+				Messages.getString("SimView.traceCutoff")); //$NON-NLS-1$
+		menuItemTraceCutoff.setActionCommand("traceCutoff"); //$NON-NLS-1$
+		menuProcSettings.add(menuItemTraceCutoff);
+
+		menuItemRandomSeed = new JMenuItem(
+				Messages.getString("SimView.randomSeed")); //$NON-NLS-1$
+		menuItemRandomSeed.setActionCommand("randomSeed"); //$NON-NLS-1$
+		menuProcSettings.add(menuItemRandomSeed);
+
 		menuItemUSAcrossPhases = new JCheckBoxMenuItem(
 				Messages.getString("SimView.usPerPhase"), false); //$NON-NLS-1$
 		menuItemUSAcrossPhases.setAccelerator(KeyStroke.getKeyStroke(
@@ -1727,6 +1781,43 @@ public class SimView extends JFrame {
 		menuItemReplaceTrace.setAccelerator(KeyStroke.getKeyStroke(
 				KeyEvent.VK_3, ActionEvent.CTRL_MASK));
 
+		menuRecording = new JMenu(Messages.getString("SimView.recordingMenu")); //$NON-NLS-1$
+		ButtonGroup recording = new ButtonGroup();
+		menuItemSummaryRecording = new JRadioButtonMenuItem(
+				Recording.SUMMARY.toString(), false);
+		menuRecording.add(menuItemSummaryRecording);
+		recording.add(menuItemSummaryRecording);
+		menuItemFinalRecording = new JRadioButtonMenuItem(
+				Recording.FINAL_COMPONENTS.toString(), false);
+		menuRecording.add(menuItemFinalRecording);
+		recording.add(menuItemFinalRecording);
+		menuItemFullRecording = new JRadioButtonMenuItem(
+				Recording.FULL.toString(), true);
+		menuRecording.add(menuItemFullRecording);
+		recording.add(menuItemFullRecording);
+		menuProcSettings.add(menuRecording);
+
+		menuPrecision = new JMenu(Messages.getString("SimView.precisionMenu")); //$NON-NLS-1$
+		ButtonGroup precision = new ButtonGroup();
+		menuItemDoublePrecision = new JRadioButtonMenuItem(
+				Precision.DOUBLE.toString(), true);
+		menuPrecision.add(menuItemDoublePrecision);
+		precision.add(menuItemDoublePrecision);
+		menuItemFloatPrecision = new JRadioButtonMenuItem(
+				Precision.FLOAT.toString(), false);
+		menuPrecision.add(menuItemFloatPrecision);
+		precision.add(menuItemFloatPrecision);
+		menuItemQuantizedPrecision = new JRadioButtonMenuItem(
+				Precision.QUANTIZED.toString(), false);
+		menuPrecision.add(menuItemQuantizedPrecision);
+		precision.add(menuItemQuantizedPrecision);
+		menuProcSettings.add(menuPrecision);
+
+		menuItemDiskCache = new JCheckBoxMenuItem(
+				Messages.getString("SimView.diskCache"), false); //$NON-NLS-1$
+		menuItemDiskCache.setActionCommand("diskCache"); //$NON-NLS-1$
+		menuProcSettings.add(menuItemDiskCache);
+
 		menuContext = new JMenu(Messages.getString("SimView.contextSim")); //$NON-NLS-1$
 		menuDesignSettings.add(menuContext);
 		ButtonGroup contexts = new ButtonGroup();
@@ -1897,6 +1988,21 @@ public class SimView extends JFrame {
 			return Double.parseDouble(input);
 	}
 
+	/**
+	 * It displays a JOptionPane.showInputDialog on top of the view's frame
+	 * asking a string. The request message and current value are provided as
+	 * arguments.
+	 * 
+	 * @param s
+	 *            the message that is been displayed to the screen.
+	 * @param cur
+	 *            the current value that the variable, that will be change, has.
+	 * @return the new value of the variable, or null if cancelled.
+	 */
+	public String getStringInput(String s, String cur) {
+		return JOptionPane.showInputDialog(s, cur);
+	}
+
 	/**
 	 * It displays a JOptionPane.showInputDialog on top of the view's frame
 	 * asking an integer. The request message and current value are provided as
@@ -1960,6 +2066,29 @@ public class SimView extends JFrame {
 	 * @return true if the bounded accumulating trace type is selected.
 	 */
 
+	/**
+	 * 
+	 * @return the storage precision selected.
+	 */
+
+	public Precision getPrecision() {
+		if (menuItemFloatPrecision.isSelected()) {
+			return Precision.FLOAT;
+		} else if (menuItemQuantizedPrecision.isSelected()) {
+			return Precision.QUANTIZED;
+		}
+		return Precision.DOUBLE;
+	}
+
+	public Recording getRecording() {
+		if (menuItemSummaryRecording.isSelected()) {
+			return Recording.SUMMARY;
+		} else if (menuItemFinalRecording.isSelected()) {
+			return Recording.FINAL_COMPONENTS;
+		}
+		return Recording.FULL;
+	}
+
 	public Trace getTraceType() {
 		if (menuItemBoundedTrace.isSelected()) {
 			return Trace.BOUNDED;
@@ -2023,6 +2152,33 @@ public class SimView extends JFrame {
 		return menuItemRestrictPredictions.isSelected();
 	}
 
+	/**
+	 * 
+	 * @return true if responses are expected rather than sampled.
+	 */
+
+	public boolean isExpectedResponses() {
+		return menuItemExpectedResponses.isSelected();
+	}
+
+	/**
+	 * 
+	 * @return true if results are cached on disk as well as in memory.
+	 */
+
+	public boolean isDiskCache() {
+		return menuItemDiskCache.isSelected();
+	}
+
+	/**
+	 * 
+	 * @return true if random combinations stop once the averages settle.
+	 */
+
+	public boolean isAdaptiveCombinations() {
+		return menuItemAdaptiveCombinations.isSelected();
+	}
+
 	/**
 	 * Return if the compounds values are going to be shown
 	 * 
@@ -2191,6 +2347,10 @@ public class SimView extends JFrame {
 		menuItemThreshold.setSelected(true);
 		// Bounded traces on
 		setTraceType(Trace.REPLACING);
+		// Full histories
+		setRecording(Recording.FULL);
+		// Double precision storage
+		setPrecision(Precision.DOUBLE);
 		otherTableModel.setInitialValuesTable();
 		// Zero'd traces not on.
 		zeroTraces.setSelected(false);
@@ -2199,6 +2359,10 @@ public class SimView extends JFrame {
 		// Timings by trial off
 		menuItemTimingPerTrial.setSelected(false);
 		menuItemRestrictPredictions.setSelected(true);
+		// Sampled responses
+		menuItemExpectedResponses.setSelected(false);
+		// Fixed combinations
+		menuItemAdaptiveCombinations.setSelected(false);
 		getPhasesTable().getColumnModel().getColumn(1).setCellEditor(new TrialStringEditor());
 	}
 
@@ -2285,6 +2449,18 @@ public class SimView extends JFrame {
 		menuItemRestrictPredictions.setSelected(on);
 	}
 
+	public void setExpectedResponses(boolean on) {
+		menuItemExpectedResponses.setSelected(on);
+	}
+
+	public void setAdaptiveCombinations(boolean on) {
+		menuItemAdaptiveCombinations.setSelected(on);
+	}
+
+	public void setDiskCache(boolean on) {
+		menuItemDiskCache.setSelected(on);
+	}
+
 	/**
 	 * Sets the status of a component, it could be a button or a menu item. This
 	 * helps the smooth procedure of the application. It stops the user to
@@ -2343,6 +2519,38 @@ public class SimView extends JFrame {
 	 *            set to true to use bounded accumulating trace type
 	 */
 
+	/**
+	 * 
+	 * @param precision
+	 *            storage precision to select
+	 */
+
+	public void setPrecision(Precision precision) {
+		switch (precision) {
+		case FLOAT:
+			menuItemFloatPrecision.setSelected(true);
+			break;
+		case QUANTIZED:
+			menuItemQuantizedPrecision.setSelected(true);
+			break;
+		default:
+			menuItemDoublePrecision.setSelected(true);
+		}
+	}
+
+	public void setRecording(Recording recording) {
+		switch (recording) {
+		case SUMMARY:
+			menuItemSummaryRecording.setSelected(true);
+			break;
+		case FINAL_COMPONENTS:
+			menuItemFinalRecording.setSelected(true);
+			break;
+		default:
+			menuItemFullRecording.setSelected(true);
+		}
+	}
+
 	public void setTraceType(Trace trace) {
 		switch (trace) {
 		case BOUNDED:
@@ -2541,11 +2749,13 @@ public class SimView extends JFrame {
 							- offset);
 					List<CS> stimuli = new ArrayList<CS>();
 					phaseString = phaseString == null ? "" : phaseString; //$NON-NLS-1$
-					stimuli.addAll(SimPhase.stringToCSList(phaseString));
+					stimuli.addAll(SimPhase.stringToCSList(phaseString,
+							model.isTimingPerTrial()));
 
 					TimingConfiguration timings = ((TimingConfiguration) phasesTable
 							.getValueAt(j, i));
 					timings.setStimuli(stimuli);
+					timings.setTimestep(model.getTimestepSize());
 					if (!phaseString.contains("+") && !phaseString.isEmpty()) {
 						timings.setReinforced(false);
 					} else {
@@ -0,0 +1,268 @@
+/**
+ *
+ */
+package simulator;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import simulator.util.Precision;
+import simulator.util.Recording;
+import simulator.util.Response;
+import simulator.util.Trace;
+
+/**
+ * The settings of a model as they stood when a run started, handed down from
+ * the model to its groups, phases & cue lists so that the run reads them from
+ * its own model rather than whichever one the application holds, and can't
+ * see them change part way through. Being immutable it can be shared by the
+ * threads of a run, & being serializable it can be hashed to key the results
+ * that depend on it.
+ */
+public final class SimulationContext implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/** Seed for trial orders, variable durations & responses. **/
+	private final long randomSeed;
+	/** Random trial orders to average. **/
+	private final int combinationNo;
+	/** Variable duration draws to average. **/
+	private final int variableCombinationNo;
+	/** Timestep size. **/
+	private final double timestepSize;
+	/** Response threshold. **/
+	private final double threshold;
+	/** Response decay. **/
+	private final double decay;
+	/** Whether to simulate contextual stimulus. **/
+	private final boolean useContext;
+	/** Whether context is carried across phases. **/
+	private final boolean contextAcrossPhase;
+	/** Whether this is a CSC simulation. **/
+	private final boolean csc;
+	/** Geometric rather than arithmetic means for variable durations. **/
+	private final boolean geometricMean;
+	/** Exponential rather than uniform variable durations. **/
+	private final boolean exponential;
+	/** Default context salience. **/
+	private final double contextAlpha;
+	/** Trace type. **/
+	private final Trace traceType;
+	/** Decision rule for simulated responses. **/
+	private final Response decisionRule;
+	/** Timings set per trial type rather than per stimulus. **/
+	private final boolean timingPerTrial;
+	/** Whether to form serial configurals. **/
+	private final boolean serialConfigurals;
+	/** Zero traces between trials. **/
+	private final boolean zeroTraces;
+	/** Whether to form serial compounds. **/
+	private final boolean serialCompounds;
+	/** Whether to form configural compounds. **/
+	private final boolean configuralCompounds;
+	/** Restrict predictions to >= 0. **/
+	private final boolean restrictPredictions;
+	/** How much of the components' histories to keep. **/
+	private final Recording recording;
+	/** Precision the histories & averaged results are stored at. **/
+	private final Precision precision;
+	/** Give expected responses rather than sampled ones. **/
+	private final boolean expectedResponses;
+	/** Stop adding random combinations once the averages settle. **/
+	private final boolean adaptiveCombinations;
+	/** Largest standard error of an average that counts as settled. **/
+	private final double combinationTolerance;
+	/** Decay for fuzzy activation. **/
+	private final double activationDecay;
+	/** Dropoff for fuzzy activation. **/
+	private final double activationDropoff;
+	/** Traces below this are dropped, 0 to keep every trace. **/
+	private final double traceCutoff;
+	/** Chances to respond per minute. **/
+	private final int responsesPerMinute;
+	/** Weight of a serial compound's own response against its parts'. **/
+	private final double serialResponseWeight;
+	/** Whether simulated responses are shown. **/
+	private final boolean showResponse;
+
+	/**
+	 * @param model
+	 *            the model to take the settings of
+	 */
+	public SimulationContext(SimModel model) {
+		randomSeed = model.getRandomSeed();
+		combinationNo = model.getCombinationNo();
+		variableCombinationNo = model.getVariableCombinationNo();
+		timestepSize = model.getTimestepSize();
+		threshold = model.getThreshold();
+		decay = model.getDecay();
+		useContext = model.isUseContext();
+		contextAcrossPhase = model.contextAcrossPhase();
+		csc = model.isCSC();
+		geometricMean = model.isGeometricMean();
+		exponential = model.isExponential();
+		contextAlpha = model.getContextAlpha();
+		traceType = model.getTraceType();
+		decisionRule = model.getDecisionRule();
+		timingPerTrial = model.isTimingPerTrial();
+		serialConfigurals = model.isSerialConfigurals();
+		zeroTraces = model.isZeroTraces();
+		serialCompounds = model.isSerialCompounds();
+		configuralCompounds = model.isConfiguralCompounds();
+		restrictPredictions = model.isRestrictPredictions();
+		recording = model.getRecording();
+		precision = model.getPrecision();
+		expectedResponses = model.isExpectedResponses();
+		adaptiveCombinations = model.isAdaptiveCombinations();
+		combinationTolerance = model.getCombinationTolerance();
+		activationDecay = model.getActivationDecay();
+		activationDropoff = model.getActivationDropoff();
+		traceCutoff = model.getTraceCutoff();
+		responsesPerMinute = model.getResponsesPerMinute();
+		serialResponseWeight = model.getSerialResponseWeight();
+		showResponse = model.showResponse();
+	}
+
+	/**
+	 * @return the settings as text, the same in any session for the same
+	 *         settings, to hash them.
+	 */
+	public String key() {
+		Object[] settings = { randomSeed, combinationNo,
+				variableCombinationNo, timestepSize, threshold, decay,
+				useContext, contextAcrossPhase, csc, geometricMean,
+				exponential, contextAlpha, traceType.name(),
+				decisionRule.name(), timingPerTrial, serialConfigurals,
+				zeroTraces, serialCompounds, configuralCompounds,
+				restrictPredictions, recording.name(), precision.name(),
+				expectedResponses, adaptiveCombinations, combinationTolerance,
+				activationDecay, activationDropoff, traceCutoff,
+				responsesPerMinute, serialResponseWeight, showResponse };
+		return Arrays.toString(settings);
+	}
+
+	public boolean contextAcrossPhase() {
+		return contextAcrossPhase;
+	}
+
+	public double getActivationDecay() {
+		return activationDecay;
+	}
+
+	public double getActivationDropoff() {
+		return activationDropoff;
+	}
+
+	public int getCombinationNo() {
+		return combinationNo;
+	}
+
+	public double getCombinationTolerance() {
+		return combinationTolerance;
+	}
+
+	public double getContextAlpha() {
+		return contextAlpha;
+	}
+
+	public double getDecay() {
+		return decay;
+	}
+
+	public Response getDecisionRule() {
+		return decisionRule;
+	}
+
+	public Precision getPrecision() {
+		return precision;
+	}
+
+	public long getRandomSeed() {
+		return randomSeed;
+	}
+
+	public Recording getRecording() {
+		return recording;
+	}
+
+	public int getResponsesPerMinute() {
+		return responsesPerMinute;
+	}
+
+	public double getSerialResponseWeight() {
+		return serialResponseWeight;
+	}
+
+	public double getThreshold() {
+		return threshold;
+	}
+
+	public double getTimestepSize() {
+		return timestepSize;
+	}
+
+	public double getTraceCutoff() {
+		return traceCutoff;
+	}
+
+	public Trace getTraceType() {
+		return traceType;
+	}
+
+	public int getVariableCombinationNo() {
+		return variableCombinationNo;
+	}
+
+	public boolean isAdaptiveCombinations() {
+		return adaptiveCombinations;
+	}
+
+	public boolean isConfiguralCompounds() {
+		return configuralCompounds;
+	}
+
+	public boolean isCSC() {
+		return csc;
+	}
+
+	public boolean isExpectedResponses() {
+		return expectedResponses;
+	}
+
+	public boolean isExponential() {
+		return exponential;
+	}
+
+	public boolean isGeometricMean() {
+		return geometricMean;
+	}
+
+	public boolean isRestrictPredictions() {
+		return restrictPredictions;
+	}
+
+	public boolean isSerialCompounds() {
+		return serialCompounds;
+	}
+
+	public boolean isSerialConfigurals() {
+		return serialConfigurals;
+	}
+
+	public boolean isTimingPerTrial() {
+		return timingPerTrial;
+	}
+
+	public boolean isUseContext() {
+		return useContext;
+	}
+
+	public boolean isZeroTraces() {
+		return zeroTraces;
+	}
+
+	public boolean showResponse() {
+		return showResponse;
+	}
+}
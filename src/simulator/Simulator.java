@@ -1,7 +1,5 @@
 package simulator;
 
-import jsr166y.ForkJoinPool;
-
 import javax.swing.*;
 import java.awt.*;
 import java.awt.List;
@@ -16,9 +14,6 @@ public class Simulator {
 	private static SimModel model = new SimModel();
 	private SimView view;
 	private static SimController controller;
-	public static final double VERSION = 0.999;
-	public static ForkJoinPool fjPool = new ForkJoinPool();
-	public static final char OMEGA = '\u03A9';
 
 	/**
 	 * @return the controller
@@ -37,14 +37,20 @@ public class Trial {
 
     /* Position in the trial string. */
     private int trialNumber;
+	/** Timings are set per trial rather than per stimulus. **/
+	private boolean timingPerTrial;
 
-	public Trial(String trialString, boolean isProbe, int stringIndex) {
-		this(trialString, isProbe, stringIndex, trialString, 0, 0);
+	public Trial(String trialString, boolean isProbe, int stringIndex,
+			boolean timingPerTrial) {
+		this(trialString, isProbe, stringIndex, trialString, 0, 0,
+				timingPerTrial);
 	}
 
 	public Trial(String trialString, boolean isProbe, int stringIndex,
-			String selStim, int stringPos, int trialNumber) {
+			String selStim, int stringPos, int trialNumber,
+			boolean timingPerTrial) {
         this.trialNumber = trialNumber;
+		this.timingPerTrial = timingPerTrial;
 		this.trialString = trialString;
 		this.isProbe = isProbe;
 		this.cues = new HashSet<CS>();
@@ -73,7 +79,7 @@ public class Trial {
 				if (probeCount.containsKey(c + "")) {
 					count = probeCount.get(c + "");
 				}
-                if(!timingPerTrial()) {
+                if(!timingPerTrial) {
                     stringPos = 0;
                     count = 0;
                 }
@@ -102,7 +108,7 @@ public class Trial {
 			// Need a check on context characters here to make sure they don't
 			// throw off hashing
 			if (Character.isLetter(c) && !Context.isContext(c + "")
-					&& timingPerTrial()) {
+					&& timingPerTrial) {
 				index++;
 			}
 			stringPos++;
@@ -116,7 +122,7 @@ public class Trial {
 	}
 
 	public Trial copy() {
-		Trial newTrial = new Trial(trialString, isProbe, 0);
+		Trial newTrial = new Trial(trialString, isProbe, 0, timingPerTrial);
 		newTrial.setCues(cues);
         newTrial.setTrialNumber(trialNumber);
 		return newTrial;
@@ -164,13 +170,6 @@ public class Trial {
 		this.trialString = trialString;
 	}
 
-	/**
-	 * @return
-	 */
-	private boolean timingPerTrial() {
-		return Simulator.getController().getModel().isTimingPerTrial();
-	}
-
 	@Override
 	public String toString() {
 		return trialString;
@@ -0,0 +1,586 @@
+/**
+ *
+ */
+package simulator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import simulator.configurables.ContextConfig.Context;
+
+/**
+ * A trial type compiled against the timings produced for it. Rather than
+ * re-deriving on every timestep which stimuli are present, which CSCs need
+ * restarting and which configural fires, the timeline works all of this out
+ * once and stores it per timestep as arrays of slots. A slot is the position
+ * of a CS in the iteration order of the trial's cue set, so the same timeline
+ * can be replayed against any copy of the trial that iterates its cues in the
+ * same order with the same timings.
+ *
+ * Past the last onset or offset nothing changes from step to step, so the
+ * timeline stops there and every later timestep (i.e. the ITI) reuses the
+ * final, settled, step. Cues that are not present in the settled step are
+ * idle; their traces only decay from then on.
+ */
+
+public class TrialTimeline {
+
+	/** Shared empty slot array. **/
+	private static final int[] NONE = new int[0];
+
+	/** Orders cue names the way SimCue sorts, context first. **/
+	private static final Comparator<String> CUE_ORDER = new Comparator<String>() {
+		@Override
+		public int compare(String first, String second) {
+			if (Context.isContext(first)) {
+				return -1;
+			} else if (Context.isContext(second)) {
+				return 1;
+			}
+			return first.compareTo(second);
+		}
+	};
+
+	/** Description of the trial & timings this was compiled from. **/
+	private final String signature;
+	/** Names of the slots. **/
+	private final String[] names;
+	/** Slots active at each step, in trial order. **/
+	private final int[][] active;
+	/** Slots whose CSC restarts at the start of each step. **/
+	private final int[][] restart;
+	/** Slots whose CSC resets after each step as they are not active. **/
+	private final int[][] reset;
+	/** Slot of the configural active at each step, or -1. **/
+	private final int[] configural;
+	/** Whether the US is on at each step. **/
+	private final boolean[] usOn;
+	/** Name of the serial compound active at each step, or null. **/
+	private final String[] serialCompound;
+	/** One slot for each distinct cue name, for updating weights. **/
+	private final int[] update;
+	/** Update slots that are present once the timeline has settled. **/
+	private final int[] settledUpdate;
+	/** Update slots that are idle once the timeline has settled. **/
+	private final int[] idle;
+	/** Names of the compounds merged into over the trial. **/
+	private final String[] targets;
+	/** Target the present cues merge into at each step, or -1. **/
+	private final int[] compound;
+	/** Target of the active serial compound at each step, or -1. **/
+	private final int[] serialTarget;
+	/** Slots of probe cues. **/
+	private final int[] probes;
+
+	/**
+	 * Compile a timeline.
+	 *
+	 * @param slots
+	 *            the trial's cues in iteration order
+	 * @param timings
+	 *            onsets & offsets for this trial
+	 * @param tempMap
+	 *            map of the trial's cues to their CSCs
+	 * @param configCuesNames
+	 *            the model's configural to compound mapping
+	 * @param signature
+	 *            signature of the slots & timings, as given by
+	 *            <code>signature</code>
+	 */
+
+	public TrialTimeline(CS[] slots, Map<CS, int[]> timings,
+			Map<CS, CueList> tempMap, Map<String, String> configCuesNames,
+			String signature) {
+		this.signature = signature;
+		int n = slots.length;
+		names = new String[n];
+		boolean[] eligible = new boolean[n];
+		boolean[] context = new boolean[n];
+		int[] onsets = new int[n];
+		int[] offsets = new int[n];
+		int last = 0;
+
+		for (int k = 0; k < n; k++) {
+			CS cs = slots[k];
+			names[k] = cs.getName();
+			context[k] = Context.isContext(names[k]);
+			eligible[k] = (cs.isSerialConfigural() || !cs.isConfigural())
+					&& !cs.isCompound();
+			if (eligible[k] && !context[k]) {
+				int[] window = timings.get(cs);
+				if (window != null) {
+					onsets[k] = window[0];
+					offsets[k] = window[1];
+				}
+				last = Math.max(last, Math.max(onsets[k], offsets[k]));
+			}
+		}
+		int[] us = timings.get(CS.US);
+		last = Math.max(last, Math.max(us[0], us[1]));
+		List<Entry<CS, int[]>> serials = serialEntries(timings);
+		for (Entry<CS, int[]> entry : serials) {
+			last = Math.max(last,
+					Math.max(entry.getValue()[0], entry.getValue()[1]));
+		}
+
+		// Last slot holding each non-compound name, as a map of CS would
+		Map<String, Integer> bySymbol = new LinkedHashMap<String, Integer>();
+		// First slot holding each name, for updates
+		Map<String, Integer> byName = new LinkedHashMap<String, Integer>();
+		for (int k = 0; k < n; k++) {
+			if (!slots[k].isCompound()) {
+				bySymbol.put(names[k], k);
+			}
+			if (!byName.containsKey(names[k])) {
+				byName.put(names[k], k);
+			}
+		}
+		update = toArray(byName.values());
+
+		// Names of the configurals this trial could fire
+		Set<String> configurals = new HashSet<String>();
+		for (CS cs : tempMap.keySet()) {
+			if (isConfiguralKey(cs)) {
+				configurals.add(cs.getName());
+			}
+		}
+
+		int length = last + 2;
+		active = new int[length][];
+		restart = new int[length][];
+		reset = new int[length][];
+		configural = new int[length];
+		usOn = new boolean[length];
+		serialCompound = new String[length];
+		compound = new int[length];
+		serialTarget = new int[length];
+		Map<String, Integer> targetIndex = new LinkedHashMap<String, Integer>();
+
+		List<Integer> slotList = new ArrayList<Integer>();
+		List<String> activeNames = new ArrayList<String>();
+		for (int j = 0; j < length; j++) {
+			// Restarts for CSs that ended last timestep
+			slotList.clear();
+			for (int k = 0; k < n; k++) {
+				if (eligible[k] && !context[k] && j == offsets[k]) {
+					slotList.add(k);
+				}
+			}
+			restart[j] = toArray(slotList);
+
+			// Present stimuli, skipping repeats of a CS already present
+			slotList.clear();
+			activeNames.clear();
+			for (int k = 0; k < n; k++) {
+				if (eligible[k] && !activeNames.contains(names[k])
+						&& (context[k] || (onsets[k] <= j && j < offsets[k]))) {
+					slotList.add(k);
+					activeNames.add(names[k]);
+				}
+			}
+			active[j] = toArray(slotList);
+
+			// Configural for the present stimuli
+			String configuralName = "";
+			configuralName += configuralFor(activeNames, configCuesNames);
+			configural[j] = -1;
+			if (configurals.contains(configuralName)) {
+				for (int k = 0; k < n; k++) {
+					if (names[k].equals(configuralName)
+							&& isConfiguralKey(slots[k])) {
+						configural[j] = k;
+					}
+				}
+				activeNames.add(configuralName);
+			}
+
+			// Anything not present has its CSC reset
+			slotList.clear();
+			for (Entry<String, Integer> entry : bySymbol.entrySet()) {
+				if (!activeNames.contains(entry.getKey())) {
+					slotList.add(entry.getValue());
+				}
+			}
+			reset[j] = toArray(slotList);
+
+			usOn[j] = us[0] <= j && j < us[1];
+
+			// Compound of the present cues, named in the order they merge
+			compound[j] = -1;
+			if (active[j].length + (configural[j] >= 0 ? 1 : 0) > 1) {
+				StringBuilder merged = new StringBuilder();
+				for (int k : active[j]) {
+					merged.append(names[k]);
+				}
+				if (configural[j] >= 0) {
+					merged.append(names[configural[j]]);
+				}
+				compound[j] = target(targetIndex, merged.toString());
+			}
+
+			serialTarget[j] = -1;
+			for (Entry<CS, int[]> entry : serials) {
+				if (entry.getValue()[0] <= j && j < entry.getValue()[1]) {
+					serialCompound[j] = entry.getKey().getName();
+					serialTarget[j] = target(targetIndex, serialCompound[j]);
+					break;
+				}
+			}
+		}
+		targets = targetIndex.keySet().toArray(new String[0]);
+
+		slotList.clear();
+		for (int k = 0; k < n; k++) {
+			if (slots[k].isProbe()) {
+				slotList.add(k);
+			}
+		}
+		probes = toArray(slotList);
+
+		// Split the updates by whether the cue is present after settling
+		List<Integer> present = new ArrayList<Integer>();
+		slotList.clear();
+		for (int k : update) {
+			if (activeNames.contains(names[k])) {
+				present.add(k);
+			} else {
+				slotList.add(k);
+			}
+		}
+		settledUpdate = toArray(present);
+		idle = toArray(slotList);
+	}
+
+	/**
+	 * Produce a signature for a trial's cues & timings. Two trials with the
+	 * same signature compile to the same timeline.
+	 *
+	 * @param slots
+	 *            the trial's cues in iteration order
+	 * @param timings
+	 *            onsets & offsets for this trial
+	 * @return a string describing everything the timeline depends on.
+	 */
+
+	public static String signature(CS[] slots, Map<CS, int[]> timings) {
+		StringBuilder sb = new StringBuilder();
+		for (CS cs : slots) {
+			sb.append(cs.getName()).append(cs.isSerialConfigural() ? '~' : ':');
+			sb.append(cs.hashCode()).append(',').append(cs.getGroup())
+					.append(',').append(cs.getStringPos());
+			if ((cs.isSerialConfigural() || !cs.isConfigural())
+					&& !cs.isCompound() && !Context.isContext(cs.getName())) {
+				int[] window = timings.get(cs);
+				if (window != null) {
+					sb.append('[').append(window[0]).append(',')
+							.append(window[1]).append(']');
+				}
+			}
+			sb.append(';');
+		}
+		int[] us = timings.get(CS.US);
+		sb.append('|').append(us[0]).append(',').append(us[1]);
+		for (Entry<CS, int[]> entry : serialEntries(timings)) {
+			sb.append('|').append(entry.getKey().getName()).append('[')
+					.append(entry.getValue()[0]).append(',')
+					.append(entry.getValue()[1]).append(']');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Find the configural for a set of present stimuli, i.e. the one standing
+	 * for their names in sorted order.
+	 * 
+	 * @param activeNames
+	 *            names of the present stimuli
+	 * @param configCuesNames
+	 *            the model's configural to compound mapping
+	 * @return the configural's name, or null if there is none.
+	 */
+
+	private static String configuralFor(List<String> activeNames,
+			Map<String, String> configCuesNames) {
+		if (configCuesNames instanceof ConfiguralIndex) {
+			ConfiguralIndex index = (ConfiguralIndex) configCuesNames;
+			long mask = 0;
+			for (String name : activeNames) {
+				long bits = name.length() == 1 ? index.mask(name) : -1;
+				if (bits < 0) {
+					mask = -1;
+					break;
+				}
+				mask |= bits;
+			}
+			if (mask >= 0) {
+				return index.getKey(mask);
+			}
+		}
+		List<String> sorted = new ArrayList<String>(activeNames);
+		Collections.sort(sorted, CUE_ORDER);
+		StringBuilder sb = new StringBuilder();
+		for (String name : sorted) {
+			sb.append(name);
+		}
+		return SimGroup.getKeyByValue(configCuesNames, sb.toString());
+	}
+
+	/**
+	 * 
+	 * @param cs
+	 *            a cue from the trial's map
+	 * @return true if the cue would match a configural looked up by name, as
+	 *         those are made with no hash, group or position.
+	 */
+
+	private static boolean isConfiguralKey(CS cs) {
+		return cs.hashCode() == 0 && cs.getGroup() == 0
+				&& cs.getStringPos() == 0;
+	}
+
+	/**
+	 *
+	 * @param timings
+	 *            onsets & offsets for a trial
+	 * @return the serial compound timings, in the map's order.
+	 */
+
+	private static List<Entry<CS, int[]>> serialEntries(Map<CS, int[]> timings) {
+		List<Entry<CS, int[]>> serials = new ArrayList<Entry<CS, int[]>>();
+		for (Entry<CS, int[]> entry : timings.entrySet()) {
+			if (!entry.getKey().isConfigural()
+					&& entry.getKey().isSerialConfigural()) {
+				serials.add(entry);
+			}
+		}
+		return serials;
+	}
+
+	/**
+	 * 
+	 * @param targetIndex
+	 *            index of the targets named so far
+	 * @param name
+	 *            name of a compound
+	 * @return the index of the compound's target, adding it if needed.
+	 */
+
+	private static int target(Map<String, Integer> targetIndex, String name) {
+		Integer index = targetIndex.get(name);
+		if (index == null) {
+			index = targetIndex.size();
+			targetIndex.put(name, index);
+		}
+		return index;
+	}
+
+	private static int[] toArray(Iterable<Integer> slots) {
+		List<Integer> list = new ArrayList<Integer>();
+		for (Integer slot : slots) {
+			list.add(slot);
+		}
+		if (list.isEmpty()) {
+			return NONE;
+		}
+		int[] array = new int[list.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = list.get(i);
+		}
+		return array;
+	}
+
+	/**
+	 *
+	 * @param j
+	 *            timestep within the trial
+	 * @return the index into the timeline for that timestep.
+	 */
+
+	public int step(int j) {
+		return Math.min(j, usOn.length - 1);
+	}
+
+	/**
+	 *
+	 * @param step
+	 *            index from <code>step</code>
+	 * @return the slots active at this step.
+	 */
+
+	public int[] getActive(int step) {
+		return active[step];
+	}
+
+	/**
+	 *
+	 * @param step
+	 *            index from <code>step</code>
+	 * @return the slots to restart before this step.
+	 */
+
+	public int[] getRestart(int step) {
+		return restart[step];
+	}
+
+	/**
+	 *
+	 * @param step
+	 *            index from <code>step</code>
+	 * @return the slots to reset after this step.
+	 */
+
+	public int[] getReset(int step) {
+		return reset[step];
+	}
+
+	/**
+	 *
+	 * @param step
+	 *            index from <code>step</code>
+	 * @return the slot of the active configural, or -1 if there is none.
+	 */
+
+	public int getConfigural(int step) {
+		return configural[step];
+	}
+
+	/**
+	 *
+	 * @param step
+	 *            index from <code>step</code>
+	 * @return true if the US is on at this step.
+	 */
+
+	public boolean isUsOn(int step) {
+		return usOn[step];
+	}
+
+	/**
+	 *
+	 * @param step
+	 *            index from <code>step</code>
+	 * @return the name of the active serial compound, or null.
+	 */
+
+	public String getSerialCompound(int step) {
+		return serialCompound[step];
+	}
+
+	/**
+	 * 
+	 * @param step
+	 *            index from <code>step</code>
+	 * @return the target the present cues merge into, or -1 if fewer than two
+	 *         are present.
+	 */
+
+	public int getCompound(int step) {
+		return compound[step];
+	}
+
+	/**
+	 * 
+	 * @param step
+	 *            index from <code>step</code>
+	 * @return the target of the active serial compound, or -1.
+	 */
+
+	public int getSerialTarget(int step) {
+		return serialTarget[step];
+	}
+
+	/**
+	 * @return the names of the compounds merged into, indexed by target.
+	 */
+	public String[] getTargets() {
+		return targets;
+	}
+
+	/**
+	 * @return the slots of the trial's probe cues.
+	 */
+	public int[] getProbes() {
+		return probes;
+	}
+
+	/**
+	 * @return one slot per distinct cue name.
+	 */
+	public int[] getUpdate() {
+		return update;
+	}
+
+	/**
+	 * @return the index of the settled step, after which nothing changes.
+	 */
+	public int getSettled() {
+		return usOn.length - 1;
+	}
+
+	/**
+	 * @return update slots for the cues present in the settled step.
+	 */
+	public int[] getSettledUpdate() {
+		return settledUpdate;
+	}
+
+	/**
+	 * @return update slots for the cues idle in the settled step.
+	 */
+	public int[] getIdle() {
+		return idle;
+	}
+
+	/**
+	 * @return the name of each slot.
+	 */
+	public String[] getNames() {
+		return names;
+	}
+
+	/**
+	 * Add the names of every cue active in the first <code>steps</code>
+	 * timesteps to a set.
+	 *
+	 * @param steps
+	 *            number of timesteps run
+	 * @param set
+	 *            set to add to
+	 */
+
+	public void addActiveNames(int steps, Set<String> set) {
+		int length = Math.min(steps, usOn.length);
+		Set<Integer> seen = new HashSet<Integer>();
+		for (int j = 0; j < length; j++) {
+			for (int k : active[j]) {
+				seen.add(k);
+			}
+			if (configural[j] >= 0) {
+				seen.add(configural[j]);
+			}
+		}
+		for (int k : seen) {
+			set.add(names[k]);
+		}
+	}
+
+	/**
+	 * @return the signature this timeline was compiled from.
+	 */
+	public String getSignature() {
+		return signature;
+	}
+
+	@Override
+	public String toString() {
+		return signature + " " + Arrays.deepToString(active);
+	}
+}
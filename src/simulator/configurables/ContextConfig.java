@@ -150,6 +150,14 @@ public class ContextConfig implements Serializable {
 		}
 	}
 
+	/**
+	 * @return the settings as text, the same in any session for the same
+	 *         settings, to compare & hash them.
+	 */
+	public String key() {
+		return context.name() + "(" + alpha + ")";
+	}
+
 	@Override
 	public String toString() {
 		return context + "(" + getAlpha().floatValue() + ")";
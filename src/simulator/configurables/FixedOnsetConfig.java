@@ -59,6 +59,11 @@ public class FixedOnsetConfig implements StimulusOnsetConfig, Serializable {
 		return true;
 	}
 
+	@Override
+	public String key() {
+		return "F(" + onset + ")";
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -92,6 +97,14 @@ public class FixedOnsetConfig implements StimulusOnsetConfig, Serializable {
 		this.onset = onset;
 	}
 
+	@Override
+	public void setRandomSeed(long seed) {
+	}
+
+	@Override
+	public void setTimestep(double timestep) {
+	}
+
 	@Override
 	public void setTrials(int t) {
 	}
@@ -126,6 +126,15 @@ public class ITIConfig implements Serializable {
 		return isGeo;
 	}
 
+	/**
+	 * @return the settings as text, the same in any session for the same
+	 *         settings, to compare & hash them.
+	 */
+	public String key() {
+		return "ITI(" + minimum + "," + type + "," + isGeo + ","
+				+ varied.key() + ")";
+	}
+
 	/**
 	 * Get the next ITI duration in seconds.
 	 * 
@@ -186,6 +195,22 @@ public class ITIConfig implements Serializable {
 		}
 	}
 
+	/**
+	 * @param seed
+	 *            seed of the run the variable periods are drawn for.
+	 */
+	public void setRandomSeed(long seed) {
+		varied.setRunSeed(seed);
+	}
+
+	/**
+	 * @param timestep
+	 *            timestep size, the least a nonzero variable period can be.
+	 */
+	public void setTimestep(double timestep) {
+		varied.setTimestep(timestep);
+	}
+
 	public void setTrials(int trials) {
 		varied.setTrials(trials);
 		varied.build();
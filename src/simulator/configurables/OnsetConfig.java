@@ -154,6 +154,23 @@ public class OnsetConfig implements Serializable {
 		setGeo(isGeo);
 	}
 
+	/**
+	 * @return the durations still to come from the current shuffle of each
+	 *         variable stimulus, looked up as they are here. Fixed stimuli
+	 *         are left out.
+	 */
+
+	public Map<CS, double[]> remaining() {
+		Map<CS, double[]> remaining = new TreeMap<CS, double[]>();
+		for (Entry<CS, StimulusOnsetConfig> entry : onsets.entrySet()) {
+			if (entry.getValue() instanceof VariableOnsetConfig) {
+				remaining.put(entry.getKey(), ((VariableOnsetConfig) entry
+						.getValue()).getRemainingOnsets());
+			}
+		}
+		return remaining;
+	}
+
 	public double next(CS stimulus) {
 		return onsets.get(stimulus).getNextOnset();
 	}
@@ -202,6 +219,26 @@ public class OnsetConfig implements Serializable {
 		}
 	}
 
+	/**
+	 * @param seed
+	 *            seed of the run the durations are drawn for.
+	 */
+	public void setRandomSeed(long seed) {
+		for (StimulusOnsetConfig onset : onsets.values()) {
+			onset.setRandomSeed(seed);
+		}
+	}
+
+	/**
+	 * @param timestep
+	 *            timestep size, the least a nonzero duration can be.
+	 */
+	public void setTimestep(double timestep) {
+		for (StimulusOnsetConfig onset : onsets.values()) {
+			onset.setTimestep(timestep);
+		}
+	}
+
 	/**
 	 * Set a new variable duration configuration for a stimulus.
 	 * 
@@ -351,6 +388,21 @@ public class OnsetConfig implements Serializable {
 		}
 	}
 
+	/**
+	 * @return the settings as text, the same in any session for the same
+	 *         settings, to compare & hash them.
+	 */
+	public String key() {
+		StringBuilder key = new StringBuilder("Onsets(");
+		key.append(type).append(',').append(isGeo);
+		for (Entry<CS, StimulusOnsetConfig> entry : new TreeMap<CS, StimulusOnsetConfig>(
+				onsets).entrySet()) {
+			key.append(';').append(entry.getKey().key()).append('=')
+					.append(entry.getValue().key());
+		}
+		return key.append(')').toString();
+	}
+
 	@Override
 	public String toString() {
 		StringBuffer sb = new StringBuffer();
@@ -36,6 +36,12 @@ public interface StimulusOnsetConfig {
 	 */
 	public boolean isFixed();
 
+	/**
+	 * @return the settings as text, the same in any session for the same
+	 *         settings, to compare & hash them.
+	 */
+	public String key();
+
 	/**
 	 * Reshuffle the durations.
 	 */
@@ -51,6 +57,18 @@ public interface StimulusOnsetConfig {
 	 */
 	public void restartOnsets();
 
+	/**
+	 * @param seed
+	 *            seed of the run the durations are drawn for.
+	 */
+	public void setRandomSeed(long seed);
+
+	/**
+	 * @param timestep
+	 *            timestep size, the least a nonzero duration can be.
+	 */
+	public void setTimestep(double timestep);
+
 	/** Set the number of onsets required. **/
 
 	public void setTrials(int trials);
@@ -1,7 +1,5 @@
 package simulator.configurables;
 
-import java.awt.event.InputMethodEvent;
-import java.awt.event.InputMethodListener;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
@@ -15,16 +13,11 @@ import java.util.ListIterator;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.TreeSet;
 
-import javax.swing.event.DocumentEvent;
-import javax.swing.event.DocumentListener;
-import javax.swing.text.BadLocationException;
-import javax.swing.text.Document;
-
 import simulator.CS;
 import simulator.SimPhase;
-import simulator.Simulator;
 import simulator.Trial;
 import simulator.configurables.ContextConfig.Context;
 import simulator.configurables.USConfiguration.Relationship;
@@ -41,7 +34,7 @@ import simulator.configurables.USConfiguration.Relationship;
  * 
  */
 
-public class TimingConfiguration implements Serializable, DocumentListener {
+public class TimingConfiguration implements Serializable {
 	private class StartTimeComparator implements Comparator<Entry<CS, int[]>> {
 
 		/*
@@ -87,7 +80,10 @@ public class TimingConfiguration implements Serializable, DocumentListener {
 	private boolean configured;
 	private boolean isReinforced;
 
-	private int regenCount;
+	/** Times regenerated, left out of the saved state as runs change it. **/
+	private transient int regenCount;
+	/** Timestep size, set by the model the timings are made for. **/
+	private transient double timestep;
 
 	private boolean generatedOnsets;
 	private String trialString;
@@ -108,6 +104,7 @@ public class TimingConfiguration implements Serializable, DocumentListener {
 		configured = false;
 		isReinforced = true;
 		regenCount = 0;
+		timestep = 1;
 		generatedOnsets = false;
 		trialString = "";
         trials = 0;
@@ -153,7 +150,8 @@ public class TimingConfiguration implements Serializable, DocumentListener {
 	 *            string to check against
 	 */
 	public void checkFilled(String trials, boolean timingPerTrial) {
-		List<CS> stimuli = new ArrayList<CS>(SimPhase.stringToCSList(trials));
+		List<CS> stimuli = new ArrayList<CS>(SimPhase.stringToCSList(trials,
+				timingPerTrial));
 		for(CS tmp : stimuli) {
 			if(!relations.containsKey(tmp)) {
 				configured = false;
@@ -232,10 +230,24 @@ public class TimingConfiguration implements Serializable, DocumentListener {
 	 */
 
 	public Map<CS, int[]> makeTimings(Set<CS> set) {
+		return makeTimings(set, null);
+	}
+
+	/**
+	 * As <code>makeTimings</code>, taking variable durations from a run's own
+	 * draws rather than the shared shuffle.
+	 * 
+	 * @param set
+	 *            Cues to produce timings for.
+	 * @param cursor
+	 *            position in the run's draws, or null to use the shuffle.
+	 * @return a map of cues -> start/end timestep.
+	 */
+
+	public Map<CS, int[]> makeTimings(Set<CS> set, TimingDraws.Cursor cursor) {
 		Map<CS, int[]> timings = new HashMap<CS, int[]>();
 
-		double multiplier = Simulator.getController().getModel()
-				.getTimestepSize();
+		double multiplier = timestep;
 
 		// Relative positions about t0
 		double start;
@@ -253,16 +265,16 @@ public class TimingConfiguration implements Serializable, DocumentListener {
 				switch (relation.getType()) {
 				case FORWARD:
 					end = durations.getMean(cue) - relation.getOffset();
-					start = end - durations.next(cue);
+					start = end - next(cue, cursor);
 					break;
 				case BACKWARD:
 					start = relation.getOffset() + getUsDuration();
-					end = start + durations.next(cue);
+					end = start + next(cue, cursor);
 					break;
 				case SIMULTANEOUS:
 				default:
 					start = -relation.getOffset();
-					end = start + durations.next(cue);
+					end = start + next(cue, cursor);
 					break;
 				}
 				start = Math.round(start / multiplier);
@@ -323,8 +335,7 @@ public class TimingConfiguration implements Serializable, DocumentListener {
     public Map<CS, int[]> makeTimingsBasedOnMean(Set<CS> set) {
         Map<CS, int[]> timings = new HashMap<CS, int[]>();
 
-        double multiplier = Simulator.getController().getModel()
-                .getTimestepSize();
+        double multiplier = timestep;
 
         // Relative positions about t0
         double start;
@@ -410,6 +421,36 @@ public class TimingConfiguration implements Serializable, DocumentListener {
 		return durations.next(cue);
 	}
 
+	/**
+	 * @param cue
+	 *            stimulus to get a duration for
+	 * @param cursor
+	 *            position in a run's draws, or null
+	 * @return the cue's next duration, from the draws if they cover it.
+	 */
+
+	private double next(CS cue, TimingDraws.Cursor cursor) {
+		if (cursor != null && cursor.covers(cue)) {
+			return cursor.next(cue);
+		}
+		return durations.next(cue);
+	}
+
+	/**
+	 * Take the durations left in the current shuffle as the draws for a run,
+	 * leaving the shuffle itself where it is.
+	 * 
+	 * @param itis
+	 *            the run's ITIs, in seconds
+	 * @param seed
+	 *            seed for the run's simulated responses
+	 * @return the run's draws.
+	 */
+
+	public TimingDraws draw(double[] itis, long seed) {
+		return new TimingDraws(itis, durations.remaining(), seed);
+	}
+
 	private void readObject(java.io.ObjectInputStream in) throws IOException,
 			ClassNotFoundException {
 		in.defaultReadObject();
@@ -427,10 +468,6 @@ public class TimingConfiguration implements Serializable, DocumentListener {
 				}
 				relations = onsetsNew;
 				break;
-			} else if(isTimingPerTrial()) {
-				CS cs = (CS) key;
-				//Could do a 'first check' and update as needed for missing
-				//configs, rather than on load?
 			}
 		}
 	}
@@ -458,6 +495,23 @@ public class TimingConfiguration implements Serializable, DocumentListener {
 		reset();
 	}
 
+	/**
+	 * @param seed
+	 *            seed of the run the timings are made for.
+	 */
+	public void setRandomSeed(long seed) {
+		durations.setRandomSeed(seed);
+	}
+
+	/**
+	 * @param timestep
+	 *            timestep size of the model the timings are made for.
+	 */
+	public void setTimestep(double timestep) {
+		this.timestep = timestep;
+		durations.setTimestep(timestep);
+	}
+
 	/**
 	 * Generate a list of the sequences that occur a trial based on the timings.
 	 * e.g. AB, for A F(10), fw(10 & B F(10), sm(0)
@@ -572,14 +626,16 @@ public class TimingConfiguration implements Serializable, DocumentListener {
 	 * based on the timings. e.g. AB, for A F(10), fw(10 & B F(10), sm(0)
 	 * 
 	 * @param set
+	 * @param combinations
+	 *            number of variable duration draws to look through
 	 * @return
 	 */
 
-	public List<List<List<CS>>> sequences(Collection<Trial> trials) {
+	public List<List<List<CS>>> sequences(Collection<Trial> trials,
+			int combinations) {
 		Set<List<List<CS>>> sequences = new HashSet<List<List<CS>>>();
 
-        for (int i = 0; i < Simulator.getController().getModel()
-                .getVariableCombinationNo(); i++) {
+        for (int i = 0; i < combinations; i++) {
             for (Trial trial : trials) {
                 Set<CS> set = new HashSet<CS>(trial.getCues());
                 Map<CS, int[]> timings = makeTimingsBasedOnMean(set);
@@ -593,8 +649,6 @@ public class TimingConfiguration implements Serializable, DocumentListener {
         }
         generatedOnsets = true;
         restartOnsets();
-        System.out.println(sequences);
-
         return new ArrayList<List<List<CS>>>(sequences);
 	}
 
@@ -603,10 +657,13 @@ public class TimingConfiguration implements Serializable, DocumentListener {
      * based on the timings. e.g. AB, for A F(10), fw(10 & B F(10), sm(0)
      *
      * @param set
+     * @param combinations
+     *            number of variable duration draws to look through
      * @return
      */
 
-    public List<List<List<CS>>> compounds(Collection<Trial> trials) {
+    public List<List<List<CS>>> compounds(Collection<Trial> trials,
+            int combinations) {
         Set<List<List<CS>>> sequences = new HashSet<List<List<CS>>>();
         Set<Trial> trialSet = new HashSet<Trial>(trials);
 
@@ -623,7 +680,7 @@ public class TimingConfiguration implements Serializable, DocumentListener {
                 try {
                     if(!durations.getMap().get(cs).isFixed()) {
                         repetitions = true;
-                        reps = Simulator.getController().getModel().getVariableCombinationNo();
+                        reps = combinations;
                         break;
                     }
                 } catch (NullPointerException e) {
@@ -653,8 +710,6 @@ public class TimingConfiguration implements Serializable, DocumentListener {
         }
         generatedOnsets = true;
         restartOnsets();
-        System.out.println(sequences);
-
         return new ArrayList<List<List<CS>>>(sequences);
     }
 
@@ -786,7 +841,7 @@ public class TimingConfiguration implements Serializable, DocumentListener {
 
 	public void setReinforced(boolean reinforced) {
 		if (reinforced && !isReinforced) {
-			usDuration = Simulator.getController().getModel().getTimestepSize();
+			usDuration = timestep;
 		}
 		isReinforced = reinforced;
 		usDuration = isReinforced ? usDuration : 0;
@@ -855,6 +910,24 @@ public class TimingConfiguration implements Serializable, DocumentListener {
 		this.usDuration = usDuration;
 	}
 
+	/**
+	 * @return the settings as text, the same in any session for the same
+	 *         settings, to compare & hash them.
+	 */
+	public String key() {
+		StringBuilder key = new StringBuilder("Timing(");
+		key.append(usDuration).append(',').append(isReinforced).append(',')
+				.append(generatedOnsets).append(',').append(trialString)
+				.append(',').append(trials);
+		for (Entry<CS, USConfiguration> entry : new TreeMap<CS, USConfiguration>(
+				relations).entrySet()) {
+			key.append(';').append(entry.getKey().key()).append('=')
+					.append(entry.getValue().key());
+		}
+		return key.append(';').append(durations.key()).append(')')
+				.toString();
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder sb = new StringBuilder("");
@@ -875,73 +948,38 @@ public class TimingConfiguration implements Serializable, DocumentListener {
 		return sb.toString();
 	}
 
-	/* (non-Javadoc)
-	 * @see javax.swing.event.DocumentListener#changedUpdate(javax.swing.event.DocumentEvent)
-	 */
-	@Override
-	public void changedUpdate(DocumentEvent evt) {
-		int changeLength = evt.getLength();
-		int changeOffset = evt.getOffset();
-		Document doc = evt.getDocument();
-	}
-
-	/* (non-Javadoc)
-	 * @see javax.swing.event.DocumentListener#insertUpdate(javax.swing.event.DocumentEvent)
+	/**
+	 * Take on an edited trial string.
+	 * 
+	 * @param text
+	 *            the trial string as edited
+	 * @return true if it differs from the one held, which the stimuli should
+	 *         then be updated to.
 	 */
-	@Override
-	public void insertUpdate(DocumentEvent evt) {
-		Document doc = evt.getDocument();
-		int docLength = doc.getLength();
-		String text = "";
-		try {
-			text = doc.getText(0, doc.getLength());
-		} catch (BadLocationException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
-		if(!text.equals(trialString)  && !"".equals(text)) {
-			int changeLength = evt.getLength();
-			int changeOffset = evt.getOffset();
-			updateStimuli(changeLength, changeOffset, text, false);
-			trialString = text;
+	public boolean changeTrialString(String text) {
+		if (text.equals(trialString) || "".equals(text)) {
+			return false;
 		}
+		trialString = text;
+		return true;
 	}
 
-	/* (non-Javadoc)
-	 * @see javax.swing.event.DocumentListener#removeUpdate(javax.swing.event.DocumentEvent)
-	 */
-	@Override
-	public void removeUpdate(DocumentEvent evt) {
-		Document doc = evt.getDocument();
-		int docLength = doc.getLength();
-		String text = "";
-		try {
-			text = doc.getText(0, doc.getLength());
-		} catch (BadLocationException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
-		if(!text.equals(trialString) && !"".equals(text)) {
-			int changeLength = evt.getLength();
-			int changeOffset = evt.getOffset();
-			updateStimuli(changeLength, changeOffset, text, true);
-			trialString = text;
-		}
-	}
-	
 	/**
 	 * Make a new list of stimuli, replace equivalents in maps.
 	 * @param length
 	 * @param offset
 	 * @param newString
+	 * @param remove
+	 *            true if the edit removed text, false if it inserted it
+	 * @param timingPerTrial
+	 *            true if timings are set per trial
 	 */
-	private void updateStimuli(int length, int offset, String newString, boolean remove) {
+	public void updateStimuli(int length, int offset, String newString,
+			boolean remove, boolean timingPerTrial) {
         newString = newString.replaceAll("\\s", "");
-        if(!Simulator.getController().isReferenced(this)) {
-            return;
-        }
-		Collection<CS> newStimuli = SimPhase.stringToCSList(newString);
-        if(!Simulator.getController().getModel().isTimingPerTrial()) {
+		Collection<CS> newStimuli = SimPhase.stringToCSList(newString,
+				timingPerTrial);
+        if(!timingPerTrial) {
             setStimuli(newStimuli);
             return;
         }
@@ -995,11 +1033,4 @@ public class TimingConfiguration implements Serializable, DocumentListener {
 		relations = newRelations;
 	}
 
-	/**
-	 * @return the isTimingPerTrial
-	 */
-	public boolean isTimingPerTrial() {
-		return Simulator.getController().getModel().isTimingPerTrial();
-	}
-
 }
@@ -0,0 +1,104 @@
+package simulator.configurables;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import simulator.CS;
+
+/**
+ * TimingDraws.java
+ *
+ * The ITIs & variable durations a single run of a phase will use, drawn up
+ * front from the shared timing configuration. A run reads its durations
+ * through a <code>Cursor</code> of its own, so runs holding draws can go
+ * ahead concurrently without touching the configuration they came from.
+ *
+ */
+
+public class TimingDraws {
+
+	/** ITI for each trial, in seconds. **/
+	private final double[] itis;
+	/** Durations to come for each variable stimulus, in order. **/
+	private final Map<CS, double[]> durations;
+	/** Seed for the run's simulated responses. **/
+	private final long seed;
+
+	/**
+	 * @param itis
+	 *            ITI for each trial, in seconds
+	 * @param durations
+	 *            durations to come for each variable stimulus, in a map
+	 *            ordered as the onset configuration's is, or null if all are
+	 *            fixed
+	 * @param seed
+	 *            seed for the run's simulated responses
+	 */
+
+	public TimingDraws(double[] itis, Map<CS, double[]> durations, long seed) {
+		this.itis = itis;
+		this.seed = seed;
+		this.durations = durations == null ? Collections
+				.<CS, double[]> emptyMap() : Collections
+				.unmodifiableMap(durations);
+	}
+
+	/**
+	 * @return a fresh cursor over the durations, starting from the first.
+	 */
+
+	public Cursor cursor() {
+		return new Cursor();
+	}
+
+	/**
+	 * @param trial
+	 *            trial number, counting from 0
+	 * @return the ITI for the trial in seconds.
+	 */
+
+	public double getITI(int trial) {
+		return itis[trial];
+	}
+
+	/**
+	 * @return the seed for the run's simulated responses.
+	 */
+
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Position of a run in the durations it was dealt.
+	 */
+
+	public class Cursor {
+		/** Next duration to give out for each stimulus. **/
+		private final Map<CS, Integer> positions = new TreeMap<CS, Integer>();
+
+		/**
+		 * @param cue
+		 *            stimulus to check
+		 * @return true if the cue's durations were drawn up front.
+		 */
+
+		public boolean covers(CS cue) {
+			return durations.containsKey(cue);
+		}
+
+		/**
+		 * @param cue
+		 *            a stimulus covered by these draws
+		 * @return the cue's next duration.
+		 */
+
+		public double next(CS cue) {
+			Integer position = positions.get(cue);
+			int index = position == null ? 0 : position;
+			positions.put(cue, index + 1);
+			return durations.get(cue)[index];
+		}
+	}
+}
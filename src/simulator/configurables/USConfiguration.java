@@ -152,6 +152,15 @@ public class USConfiguration implements Serializable {
 		this.type = type;
 	}
 
+	/**
+	 * @return the settings as text, the same in any session for the same
+	 *         settings, to compare & hash them. The forward default only
+	 *         guides the dialogs, so is left out.
+	 */
+	public String key() {
+		return type.name() + "(" + offset + ")";
+	}
+
 	@Override
 	public String toString() {
 		return type.getShortName() + "(" + offset + ")";
@@ -78,6 +78,14 @@ public class VariableOnsetConfig implements StimulusOnsetConfig, Serializable {
 		return varDist.next();
 	}
 
+	/**
+	 * @return the onsets still to come from the current shuffle.
+	 */
+
+	public double[] getRemainingOnsets() {
+		return varDist.remaining();
+	}
+
 	/**
 	 * @return the standard deviation
 	 */
@@ -122,6 +130,12 @@ public class VariableOnsetConfig implements StimulusOnsetConfig, Serializable {
 		return isGeometric;
 	}
 
+	@Override
+	public String key() {
+		return "V(" + mean + "," + sd + "," + trials + "," + type + ","
+				+ isGeometric + "," + varDist.key() + ")";
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -177,6 +191,16 @@ public class VariableOnsetConfig implements StimulusOnsetConfig, Serializable {
 		varDist.setShuffle(shuffle);
 	}
 
+	@Override
+	public void setRandomSeed(long seed) {
+		varDist.setRunSeed(seed);
+	}
+
+	@Override
+	public void setTimestep(double timestep) {
+		varDist.setTimestep(timestep);
+	}
+
 	@Override
 	public void setTrials(int num) {
 		trials = num;
@@ -69,7 +69,8 @@ public class TimingEditor extends AbstractCellEditor implements
 			// bring up the dialog.
 			List<CS> stimuli = new ArrayList<CS>();
 			phaseString = phaseString == null ? "" : phaseString;
-			stimuli.addAll(SimPhase.stringToCSList(phaseString));
+			stimuli.addAll(SimPhase.stringToCSList(phaseString,
+					timingPerTrial()));
 			currentConfig.setStimuli(stimuli);
 
 			// currentConfig.setStimuli(stimuli);
@@ -12,7 +12,8 @@ import javax.swing.JFormattedTextField;
 import javax.swing.JTable;
 import javax.swing.DefaultCellEditor;
 import javax.swing.JTextField;
-import javax.swing.event.DocumentListener;
+
+import simulator.configurables.TimingConfiguration;
 
 
 /**
@@ -43,8 +44,8 @@ public class TrialStringEditor extends DefaultCellEditor {
 							column);
 			//ftf.setText(value.toString());
             //int offset = Simulator.getController().getModel().isUseContext() ? 3 : 2;
-            DocumentListener target = (DocumentListener) table.getModel().getValueAt(row, column+3);
-            ftf.getDocument().addDocumentListener(target);
+            TimingConfiguration target = (TimingConfiguration) table.getModel().getValueAt(row, column+3);
+            ftf.getDocument().addDocumentListener(new TrialStringListener(target));
 			return ftf;
 		}
 
@@ -0,0 +1,81 @@
+/**
+ *
+ */
+package simulator.editor;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+
+import simulator.SimController;
+import simulator.Simulator;
+import simulator.configurables.TimingConfiguration;
+
+/**
+ * Keeps a timing configuration's stimuli in step with edits to the trial
+ * string it is for, as they are typed into the phase table. The configuration
+ * itself knows nothing of the editor.
+ */
+public class TrialStringListener implements DocumentListener {
+
+	/** Configuration to update. **/
+	private final TimingConfiguration config;
+
+	/**
+	 * @param config
+	 *            configuration to keep in step with the trial string
+	 */
+	public TrialStringListener(TimingConfiguration config) {
+		this.config = config;
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.swing.event.DocumentListener#changedUpdate(javax.swing.event.DocumentEvent)
+	 */
+	@Override
+	public void changedUpdate(DocumentEvent evt) {
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.swing.event.DocumentListener#insertUpdate(javax.swing.event.DocumentEvent)
+	 */
+	@Override
+	public void insertUpdate(DocumentEvent evt) {
+		edited(evt, false);
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.swing.event.DocumentListener#removeUpdate(javax.swing.event.DocumentEvent)
+	 */
+	@Override
+	public void removeUpdate(DocumentEvent evt) {
+		edited(evt, true);
+	}
+
+	/**
+	 * Pass an edit on to the configuration if it changed the trial string &
+	 * the configuration is the one being edited.
+	 * 
+	 * @param evt
+	 *            the edit
+	 * @param remove
+	 *            true if text was removed, false if inserted
+	 */
+	private void edited(DocumentEvent evt, boolean remove) {
+		Document doc = evt.getDocument();
+		String text = "";
+		try {
+			text = doc.getText(0, doc.getLength());
+		} catch (BadLocationException e) {
+			e.printStackTrace();
+		}
+		if (config.changeTrialString(text)) {
+			SimController controller = Simulator.getController();
+			if (controller.isReferenced(config)) {
+				config.updateStimuli(evt.getLength(), evt.getOffset(), text,
+						remove, controller.getModel().isTimingPerTrial());
+			}
+		}
+	}
+}
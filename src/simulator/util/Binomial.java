@@ -0,0 +1,135 @@
+/**
+ *
+ */
+package simulator.util;
+
+import java.util.Random;
+
+/**
+ * Draws binomially distributed counts without allocating. Small means are
+ * drawn by inversion, larger ones by Hörmann's transformed rejection (BTRS),
+ * which takes a couple of uniforms whatever the number of trials.
+ */
+public final class Binomial {
+
+	/** Mean below which inversion is used. **/
+	private static final double INVERSION_MEAN = 10;
+	/** Log factorials small enough to keep. **/
+	private static final double[] LOG_FACTORIALS = new double[256];
+
+	static {
+		LOG_FACTORIALS[0] = 0;
+		for (int k = 1; k < LOG_FACTORIALS.length; k++) {
+			LOG_FACTORIALS[k] = LOG_FACTORIALS[k - 1] + Math.log(k);
+		}
+	}
+
+	/**
+	 * @param n
+	 *            number of trials
+	 * @param p
+	 *            chance of success on each
+	 * @param random
+	 *            generator to draw from
+	 * @return the number of successes, 0 if the chance isn't a number.
+	 */
+
+	public static int sample(int n, double p, Random random) {
+		// NaN would never be accepted by the rejection loop
+		if (n <= 0 || !(p > 0)) {
+			return 0;
+		}
+		if (p >= 1) {
+			return n;
+		}
+		// Draw the rarer outcome & mirror
+		if (p > 0.5) {
+			return n - sample(n, 1 - p, random);
+		}
+		if (n * p < INVERSION_MEAN) {
+			return inversion(n, p, random);
+		}
+		return btrs(n, p, random);
+	}
+
+	/**
+	 * Walk up the distribution from 0 until a uniform is used up.
+	 */
+
+	private static int inversion(int n, double p, Random random) {
+		double q = 1 - p;
+		double s = p / q;
+		double a = (n + 1) * s;
+		double first = Math.pow(q, n);
+		while (true) {
+			double r = first;
+			double u = random.nextDouble();
+			int x = 0;
+			while (u > r) {
+				u -= r;
+				x++;
+				if (x > n) {
+					break;
+				}
+				r *= a / x - s;
+			}
+			if (x <= n) {
+				return x;
+			}
+			// Rounding ran the walk off the end, so draw again
+		}
+	}
+
+	/**
+	 * Transformed rejection with squeeze, for means of 10 or more with
+	 * p <= 0.5. W. Hörmann, The generation of binomial random variates, 1993.
+	 */
+
+	private static int btrs(int n, double p, Random random) {
+		double q = 1 - p;
+		double spq = Math.sqrt(n * p * q);
+		double b = 1.15 + 2.53 * spq;
+		double a = -0.0873 + 0.0248 * b + 0.01 * p;
+		double c = n * p + 0.5;
+		double vr = 0.92 - 4.2 / b;
+		double alpha = (2.83 + 5.1 / b) * spq;
+		double lpq = Math.log(p / q);
+		int m = (int) Math.floor((n + 1) * p);
+		double h = logFactorial(m) + logFactorial(n - m);
+		while (true) {
+			double u = random.nextDouble() - 0.5;
+			double v = random.nextDouble();
+			double us = 0.5 - Math.abs(u);
+			int k = (int) Math.floor((2 * a / us + b) * u + c);
+			if (k < 0 || k > n) {
+				continue;
+			}
+			if (us >= 0.07 && v <= vr) {
+				return k;
+			}
+			v = Math.log(v * alpha / (a / (us * us) + b));
+			if (v <= h - logFactorial(k) - logFactorial(n - k) + (k - m)
+					* lpq) {
+				return k;
+			}
+		}
+	}
+
+	/**
+	 * @param k
+	 * @return log k!, from the table or Stirling's series.
+	 */
+
+	private static double logFactorial(int k) {
+		if (k < LOG_FACTORIALS.length) {
+			return LOG_FACTORIALS[k];
+		}
+		double x = k;
+		double x2 = x * x;
+		return x * Math.log(x) - x + 0.5 * Math.log(2 * Math.PI * x) + 1
+				/ (12 * x) - 1 / (360 * x * x2) + 1 / (1260 * x2 * x2 * x);
+	}
+
+	private Binomial() {
+	}
+}
@@ -20,11 +20,11 @@ public final class Distributions implements Serializable {
 	private static final long serialVersionUID = 6118011662481327634L;
 	public static int UNIFORM = 1;
 	public static int EXPONENTIAL = 0;
-	private static long SEED = System.currentTimeMillis();
 
 	public static VariableDistribution getDistribution(int type, double mean,
 			int trials, boolean geometric) {
-		return getDistribution(type, mean, SEED, trials, geometric);
+		return getDistribution(type, mean, VariableDistribution.randomSeed(),
+				trials, geometric);
 	}
 
 	/**
@@ -0,0 +1,510 @@
+/**
+ *
+ */
+package simulator.util;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A growable record of per-trial values held in a primitive array, used in
+ * place of lists of boxed doubles for weight & response histories. Zeros
+ * added to an empty history aren't stored, so a component that first appears
+ * late in a phase costs nothing for the trials before it; they read as zero.
+ * A history can be given a window, after which it holds only that many of
+ * the latest values; indexes still count from the first value ever added, &
+ * reading one no longer held is an error. Values are stored as doubles
+ * unless a lower precision is set, in which case they read back rounded.
+ */
+public class History implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/** Stored values, valid up to size, at double precision. **/
+	private double[] values;
+	/** Stored values at float precision. **/
+	private float[] floats;
+	/** Stored values as steps of the scale, at quantized precision. **/
+	private short[] shorts;
+	/** Value of a quantized step. **/
+	private double scale;
+	/** Precision values are stored at. **/
+	private Precision precision;
+	/** Number of values stored. **/
+	private int size;
+	/** Number of leading values not stored. **/
+	private int offset;
+	/** Number of leading values, up to the offset, that are zero. **/
+	private int zeros;
+	/** Most values to store, 0 for no limit. **/
+	private int window;
+
+	public History() {
+		this(16);
+	}
+
+	/**
+	 * @param capacity
+	 *            initial number of values to make room for.
+	 */
+	public History(int capacity) {
+		values = new double[Math.max(capacity, 1)];
+		precision = Precision.DOUBLE;
+		scale = 0;
+		size = 0;
+		offset = 0;
+		zeros = 0;
+		window = 0;
+	}
+
+	/**
+	 * @param values
+	 *            array to copy the initial values from
+	 * @param size
+	 *            number of values to copy
+	 */
+	public History(double[] values, int size) {
+		this(size);
+		System.arraycopy(values, 0, this.values, 0, size);
+		this.size = size;
+	}
+
+	/**
+	 * @return the array values are stored in.
+	 */
+
+	private Object array() {
+		switch (precision) {
+		case FLOAT:
+			return floats;
+		case QUANTIZED:
+			return shorts;
+		default:
+			return values;
+		}
+	}
+
+	/**
+	 * Make sure there is room for a number of values.
+	 *
+	 * @param capacity
+	 *            number of values needed
+	 */
+
+	private void ensureCapacity(int capacity) {
+		int length = precision == Precision.FLOAT ? floats.length
+				: precision == Precision.QUANTIZED ? shorts.length
+						: values.length;
+		if (capacity <= length) {
+			return;
+		}
+		int grown = Math.max(capacity, length + (length >> 1));
+		switch (precision) {
+		case FLOAT:
+			floats = Arrays.copyOf(floats, grown);
+			break;
+		case QUANTIZED:
+			shorts = Arrays.copyOf(shorts, grown);
+			break;
+		default:
+			values = Arrays.copyOf(values, grown);
+		}
+	}
+
+	/**
+	 * Drop the oldest stored values.
+	 *
+	 * @param count
+	 *            number of values to drop
+	 */
+
+	private void drop(int count) {
+		move(count, 0, size - count);
+		zero(size - count, size);
+		size -= count;
+		offset += count;
+	}
+
+	/**
+	 * Move stored values within the array.
+	 */
+
+	private void move(int from, int to, int count) {
+		Object array = array();
+		System.arraycopy(array, from, array, to, count);
+	}
+
+	/**
+	 * @param position
+	 *            where a value is stored
+	 * @return the value.
+	 */
+
+	private double read(int position) {
+		switch (precision) {
+		case FLOAT:
+			return floats[position];
+		case QUANTIZED:
+			return shorts[position] * scale;
+		default:
+			return values[position];
+		}
+	}
+
+	/**
+	 * Store a value, widening the quantized scale first if it won't fit.
+	 * Values that aren't finite can't be quantized & are stored as zero.
+	 *
+	 * @param position
+	 *            where to store it
+	 * @param value
+	 *            the value
+	 */
+
+	private void write(int position, double value) {
+		switch (precision) {
+		case FLOAT:
+			floats[position] = (float) value;
+			break;
+		case QUANTIZED:
+			if (Double.isNaN(value) || Double.isInfinite(value)) {
+				shorts[position] = 0;
+				break;
+			}
+			double magnitude = Math.abs(value);
+			if (magnitude > scale * Short.MAX_VALUE) {
+				// Leave headroom so a growing series rescales only now & then
+				rescale(Math.max(magnitude / Short.MAX_VALUE, scale * 2));
+			}
+			shorts[position] = (short) Math.round(value / scale);
+			break;
+		default:
+			values[position] = value;
+		}
+	}
+
+	/**
+	 * Requantize the stored values to a new step.
+	 *
+	 * @param newScale
+	 *            value of a step from now on
+	 */
+
+	private void rescale(double newScale) {
+		for (int i = 0; i < size; i++) {
+			shorts[i] = (short) Math.round(shorts[i] * scale / newScale);
+		}
+		scale = newScale;
+	}
+
+	/**
+	 * Zero a range of the array.
+	 */
+
+	private void zero(int from, int to) {
+		switch (precision) {
+		case FLOAT:
+			Arrays.fill(floats, from, to, 0f);
+			break;
+		case QUANTIZED:
+			Arrays.fill(shorts, from, to, (short) 0);
+			break;
+		default:
+			Arrays.fill(values, from, to, 0d);
+		}
+	}
+
+	/**
+	 * Append a value.
+	 *
+	 * @param value
+	 *            the value to append.
+	 */
+
+	public void add(double value) {
+		if (window > 0 && size == window) {
+			drop(1);
+		}
+		ensureCapacity(size + 1);
+		write(size, value);
+		size++;
+	}
+
+	/**
+	 * Append all the values of another history. Values the other no longer
+	 * holds are skipped here too, so it may only have dropped any if this
+	 * history is empty.
+	 *
+	 * @param other
+	 *            history to append
+	 */
+
+	public void addAll(History other) {
+		if (other.offset > other.zeros) {
+			if (size() > 0) {
+				throw new IllegalStateException(
+						"Appending a history missing its first "
+								+ other.offset + " values");
+			}
+			offset = other.offset;
+			zeros = other.zeros;
+		} else {
+			addZeros(other.zeros);
+		}
+		if (window > 0 || precision != other.precision
+				|| precision == Precision.QUANTIZED) {
+			for (int i = 0; i < other.size; i++) {
+				add(other.read(i));
+			}
+			return;
+		}
+		ensureCapacity(size + other.size);
+		System.arraycopy(other.array(), 0, array(), size, other.size);
+		size += other.size;
+	}
+
+	/**
+	 * Append a run of zeros. Zeros leading the history aren't stored.
+	 *
+	 * @param count
+	 *            number of zeros to append.
+	 */
+
+	public void addZeros(int count) {
+		if (size == 0 && offset == zeros) {
+			offset += count;
+			zeros += count;
+			return;
+		}
+		if (window > 0 && size + count > window) {
+			int kept = Math.max(0, window - count);
+			drop(size - kept);
+			offset += count - (window - kept);
+			count = window - kept;
+		}
+		ensureCapacity(size + count);
+		// Values past size are always zero
+		size += count;
+	}
+
+	/**
+	 * Remove all values.
+	 */
+
+	public void clear() {
+		zero(0, size);
+		scale = 0;
+		size = 0;
+		offset = 0;
+		zeros = 0;
+	}
+
+	/**
+	 * @param index
+	 *            position of the value
+	 * @return the value at that position.
+	 */
+
+	public double get(int index) {
+		if (index >= 0 && index < zeros) {
+			return 0;
+		}
+		return read(position(index));
+	}
+
+	/**
+	 * @return the index from which every value is still held.
+	 */
+
+	public int getFirst() {
+		return offset == zeros ? 0 : offset;
+	}
+
+	/**
+	 * @return the precision values are stored at.
+	 */
+
+	public Precision getPrecision() {
+		return precision;
+	}
+
+	/**
+	 * @param index
+	 *            position of a value
+	 * @return true if the value is still held.
+	 */
+
+	public boolean holds(int index) {
+		return index >= 0 && index < zeros || index >= offset
+				&& index < offset + size;
+	}
+
+	/**
+	 * @return true if no values are stored.
+	 */
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * @return the last value stored.
+	 */
+
+	public double last() {
+		return get(size() - 1);
+	}
+
+	/**
+	 * @param index
+	 *            position of a held value
+	 * @return where the value is stored.
+	 */
+
+	private int position(int index) {
+		if (index < offset || index >= offset + size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Held: "
+					+ offset + " to " + (offset + size));
+		}
+		return index - offset;
+	}
+
+	/**
+	 * Remove a value, shifting later ones down.
+	 *
+	 * @param index
+	 *            position of the value to remove
+	 * @return the value removed.
+	 */
+
+	public double remove(int index) {
+		if (index >= 0 && index < zeros) {
+			zeros--;
+			offset--;
+			return 0;
+		}
+		int position = position(index);
+		double value = read(position);
+		move(position + 1, position, size - position - 1);
+		zero(size - 1, size);
+		size--;
+		return value;
+	}
+
+	/**
+	 * @param index
+	 *            position of the value
+	 * @param value
+	 *            new value
+	 */
+
+	public void set(int index, double value) {
+		if (index >= 0 && index < zeros && offset == zeros) {
+			// Store the zeros from here on
+			int count = offset - index;
+			ensureCapacity(size + count);
+			move(0, count, size);
+			zero(0, count);
+			size += count;
+			offset = index;
+			zeros = index;
+		}
+		write(position(index), value);
+	}
+
+	/**
+	 * Store the values at another precision from now on, converting those
+	 * held.
+	 *
+	 * @param precision
+	 *            precision to store values at
+	 */
+
+	public void setPrecision(Precision precision) {
+		if (precision == this.precision) {
+			return;
+		}
+		double[] held = new double[size];
+		double max = 0;
+		for (int i = 0; i < size; i++) {
+			held[i] = read(i);
+			// As in write, values that aren't finite don't set the scale
+			if (!Double.isNaN(held[i]) && !Double.isInfinite(held[i])) {
+				max = Math.max(max, Math.abs(held[i]));
+			}
+		}
+		int capacity = Math.max(size, 1);
+		values = null;
+		floats = null;
+		shorts = null;
+		switch (precision) {
+		case FLOAT:
+			floats = new float[capacity];
+			break;
+		case QUANTIZED:
+			shorts = new short[capacity];
+			break;
+		default:
+			values = new double[capacity];
+		}
+		this.precision = precision;
+		// Zero when nothing finite is held, so the first value sets it
+		scale = max / Short.MAX_VALUE;
+		for (int i = 0; i < size; i++) {
+			write(i, held[i]);
+		}
+	}
+
+	/**
+	 * Hold only a number of the latest values from now on.
+	 *
+	 * @param window
+	 *            most values to hold, 0 for no limit
+	 */
+
+	public void setWindow(int window) {
+		this.window = window;
+		if (window > 0 && size > window) {
+			drop(size - window);
+		}
+	}
+
+	/**
+	 * Mark a number of leading values as not held, as if added & dropped.
+	 *
+	 * @param count
+	 *            number of values to skip
+	 */
+
+	public void skip(int count) {
+		if (size > 0) {
+			throw new IllegalStateException("Skipping values before others");
+		}
+		offset += count;
+	}
+
+	/**
+	 * @return the number of values added, held or not.
+	 */
+
+	public int size() {
+		return offset + size;
+	}
+
+	/**
+	 * @return a copy of the values held.
+	 */
+
+	public double[] toArray() {
+		double[] held = new double[size];
+		for (int i = 0; i < size; i++) {
+			held[i] = read(i);
+		}
+		return held;
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(toArray());
+	}
+}
@@ -0,0 +1,31 @@
+/**
+ *
+ */
+package simulator.util;
+
+import java.io.Serializable;
+
+/**
+ * How finely the per-trial histories & averaged results are stored. The
+ * working weights & traces are always kept in double precision; this only
+ * trades the precision of what is recorded for memory.
+ */
+public enum Precision implements Serializable {
+	/** 64-bit values. **/
+	DOUBLE("Double (64-bit)"),
+	/** 32-bit values, about 7 significant digits. **/
+	FLOAT("Float (32-bit)"),
+	/** 16-bit steps of a scale kept for each series. **/
+	QUANTIZED("Quantized (16-bit)");
+
+	private String nameStr;
+
+	private Precision(String nameStr) {
+		this.nameStr = nameStr;
+	}
+
+	@Override
+	public String toString() {
+		return nameStr;
+	}
+}
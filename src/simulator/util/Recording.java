@@ -0,0 +1,44 @@
+/**
+ *
+ */
+package simulator.util;
+
+import java.io.Serializable;
+
+/**
+ * How much of each component's per-trial history a simulation keeps. The
+ * trial averages of every stimulus are kept whatever the profile; the
+ * profiles differ in how many of the latest trials each component holds its
+ * weight, averaged weight & response for.
+ */
+public enum Recording implements Serializable {
+	/** Trial averages, & components only as far as the next phase needs. **/
+	SUMMARY("Summary only", 1),
+	/** Trial averages & the components' final values. **/
+	FINAL_COMPONENTS("Summary & final components", 2),
+	/** Every component on every trial. **/
+	FULL("Full history", 0);
+
+	private String nameStr;
+	/** Trials each component history holds, 0 for all. **/
+	private int window;
+
+	private Recording(String nameStr, int window) {
+		this.nameStr = nameStr;
+		this.window = window;
+	}
+
+	/**
+	 * @return the number of latest trials a component history holds, 0 for
+	 *         all of them.
+	 */
+
+	public int getWindow() {
+		return window;
+	}
+
+	@Override
+	public String toString() {
+		return nameStr;
+	}
+}
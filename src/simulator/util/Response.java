@@ -3,7 +3,7 @@
  */
 package simulator.util;
 
-import java.util.List;
+import java.util.Random;
 
 /**
  * City University BSc Computing with Artificial Intelligence Project title:
@@ -16,32 +16,55 @@ public enum Response {
 	CHURCH_KIRKPATRICK("Church-Kirkpatrick") {
 		/**
 		 * Simulate a response per minute according to the Church-Kirkpatrick
-		 * rule. REF
+		 * rule. REF Each chance responds when the strength clears a uniformly
+		 * drawn fraction of the threshold, so the count is binomial and is
+		 * drawn directly rather than chance by chance.
 		 * 
 		 * @param threshold
 		 *            Response threshold
-		 * @param thresholds
-		 *            Pregenerated list of variable thresholds for a response
+		 * @param count
+		 *            Number of chances to respond
 		 * @param strength
 		 *            V value of this cue.
+		 * @param random
+		 *            Generator for the run's responses
 		 * @return
 		 */
 		@Override
-		public double get(double threshold, List<Double> thresholds,
-				double strength, double decay) {
-			int responses = 0;
-			try {
-				for (double boundary : thresholds) {
-					int response = strength > boundary * threshold ? 1 : 0;
-					response = boundary < 4 / thresholds.size() ? 1 : response;
-					responses += response;
-				}
-			} catch (ArrayIndexOutOfBoundsException e) {// swallow this,
-														// response is zero.
-			} catch (IndexOutOfBoundsException e) {// swallow this, response is
-													// zero.
+		public double get(double threshold, int count, double strength,
+				double decay, Random random) {
+			return Binomial.sample(count, chance(threshold, count, strength),
+					random);
+		}
+
+		/**
+		 * Expected Church-Kirkpatrick response, the mean of the binomial
+		 * count.
+		 */
+		@Override
+		public double expected(double threshold, int count, double strength,
+				double decay) {
+			return count * chance(threshold, count, strength);
+		}
+
+		@Override
+		public Kernel kernel(final double threshold, final int count,
+				double decay, boolean expected) {
+			if (expected) {
+				return new Kernel(threshold, count, decay, expected) {
+					@Override
+					public double get(double strength, Random random) {
+						return count * chance(threshold, count, strength);
+					}
+				};
 			}
-			return responses;
+			return new Kernel(threshold, count, decay, expected) {
+				@Override
+				public double get(double strength, Random random) {
+					return Binomial.sample(count, chance(threshold, count,
+							strength), random);
+				}
+			};
 		}
 	},
 	LUDVIG("Ludvig") {
@@ -50,29 +73,67 @@ public enum Response {
 		 * 
 		 * @param threshold
 		 *            Response threshold
-		 * @param thresholds
-		 *            Pregenerated list of variable thresholds for a response
+		 * @param count
+		 *            Number of chances to respond
 		 * @param strength
 		 *            V value of this cue.
+		 * @param random
+		 *            Unused, the rule is deterministic
 		 * @return
 		 */
 		@Override
-		public double get(double threshold, List<Double> thresholds,
-				double strength, double decay) {
+		public double get(double threshold, int count, double strength,
+				double decay, Random random) {
 			double responses = 0;
-			for (double t : thresholds) {
-				try {
-					responses = responses * decay + strength
-							* (strength > threshold ? 1 : 0);
-				} catch (ArrayIndexOutOfBoundsException e) {// swallow this,
-															// response is zero.
-				} catch (IndexOutOfBoundsException e) {// swallow this, response
-														// is zero.
-				}
+			for (int i = 0; i < count; i++) {
+				responses = responses * decay + strength
+						* (strength > threshold ? 1 : 0);
 			}
 			return responses;
 		}
 
+		/**
+		 * Ludvig response in closed form, the sum of the geometric series
+		 * the recurrence builds.
+		 */
+		@Override
+		public double expected(double threshold, int count, double strength,
+				double decay) {
+			if (count <= 0 || strength <= threshold) {
+				return 0;
+			}
+			if (decay == 1) {
+				return strength * count;
+			}
+			return strength * (1 - Math.pow(decay, count)) / (1 - decay);
+		}
+
+		@Override
+		public Kernel kernel(final double threshold, final int count,
+				final double decay, boolean expected) {
+			if (expected) {
+				// Sum of the geometric series, per unit of strength
+				final double sum = count <= 0 ? 0 : decay == 1 ? count
+						: (1 - Math.pow(decay, count)) / (1 - decay);
+				return new Kernel(threshold, count, decay, expected) {
+					@Override
+					public double get(double strength, Random random) {
+						return strength > threshold ? strength * sum : 0;
+					}
+				};
+			}
+			return new Kernel(threshold, count, decay, expected) {
+				@Override
+				public double get(double strength, Random random) {
+					double step = strength * (strength > threshold ? 1 : 0);
+					double responses = 0;
+					for (int i = 0; i < count; i++) {
+						responses = responses * decay + step;
+					}
+					return responses;
+				}
+			};
+		}
 	};
 	private String nameStr;
 
@@ -80,11 +141,112 @@ public enum Response {
 		this.nameStr = nameStr;
 	}
 
-	public abstract double get(double threshold, List<Double> thresholds,
+	public abstract double get(double threshold, int count, double strength,
+			double decay, Random random);
+
+	/**
+	 * Expected response per minute, worked out directly rather than sampled.
+	 * 
+	 * @param threshold
+	 *            Response threshold
+	 * @param count
+	 *            Number of chances to respond
+	 * @param strength
+	 *            V value of the cue
+	 * @param decay
+	 *            Response decay
+	 * @return the mean response.
+	 */
+	public abstract double expected(double threshold, int count,
 			double strength, double decay);
 
+	/**
+	 * Make the response for this rule with fixed parameters, to be used for
+	 * every cue & trial they apply to.
+	 * 
+	 * @param threshold
+	 *            Response threshold
+	 * @param count
+	 *            Number of chances to respond
+	 * @param decay
+	 *            Response decay
+	 * @param expected
+	 *            true to give expected responses rather than sampled ones
+	 * @return the kernel.
+	 */
+	public abstract Kernel kernel(double threshold, int count, double decay,
+			boolean expected);
+
+	/**
+	 * Chance that one of a number of Church-Kirkpatrick chances responds,
+	 * i.e. that the strength is above a boundary drawn uniformly from [0, 1)
+	 * times the threshold. Fewer than five chances always respond.
+	 * 
+	 * @param threshold
+	 *            Response threshold
+	 * @param count
+	 *            Number of chances to respond
+	 * @param strength
+	 *            V value of the cue
+	 * @return the chance of a response, 0 for a diverged (NaN) strength.
+	 */
+
+	static double chance(double threshold, int count, double strength) {
+		if (count <= 4) {
+			return 1;
+		}
+		if (Double.isNaN(strength)) {
+			return 0;
+		}
+		if (threshold > 0) {
+			return Math.max(0, Math.min(1, strength / threshold));
+		}
+		if (threshold < 0) {
+			return Math.max(0, Math.min(1, 1 - strength / threshold));
+		}
+		return strength > 0 ? 1 : 0;
+	}
+
 	@Override
 	public String toString() {
 		return nameStr;
 	}
+
+	/**
+	 * Response rule specialised to one rule & mode with its parameters
+	 * fixed, so the per-cue calls neither dispatch on the rule nor look up
+	 * the settings.
+	 */
+	public abstract static class Kernel {
+		private final double threshold;
+		private final int count;
+		private final double decay;
+		private final boolean expected;
+
+		protected Kernel(double threshold, int count, double decay,
+				boolean expected) {
+			this.threshold = threshold;
+			this.count = count;
+			this.decay = decay;
+			this.expected = expected;
+		}
+
+		/**
+		 * @return true if this kernel was made for these parameters.
+		 */
+		public boolean isFor(double threshold, int count, double decay,
+				boolean expected) {
+			return this.threshold == threshold && this.count == count
+					&& this.decay == decay && this.expected == expected;
+		}
+
+		/**
+		 * @param strength
+		 *            V value of the cue
+		 * @param random
+		 *            generator for the run's responses
+		 * @return the response per minute.
+		 */
+		public abstract double get(double strength, Random random);
+	}
 }
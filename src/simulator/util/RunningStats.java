@@ -0,0 +1,264 @@
+/**
+ *
+ */
+package simulator.util;
+
+import java.util.Arrays;
+
+/**
+ * Running mean & variance of a series of values, one per trial or timestep,
+ * over a number of runs. Kept with Welford's method in primitive arrays so a
+ * run is folded in with a single pass & no allocation, and two sets of runs
+ * are combined with the pairwise update of Chan et al. Runs that stop short,
+ * or that are missing altogether, count as zero past their end, as the
+ * averaged results always have. Runs whose histories hold only their latest
+ * values are totalled over the indexes all of them still hold.
+ */
+public class RunningStats {
+
+	/** z for a 95% confidence interval. **/
+	public static final double Z_95 = 1.959963984540054;
+
+	/** Mean at each index from the offset. **/
+	private double[] mean;
+	/** Sum of squared differences from the mean at each index. **/
+	private double[] m2;
+	/** Number of leading indexes not totalled. **/
+	private int offset;
+	/** Number of indexes any run has reached. **/
+	private int length;
+	/** Length of the last run added. **/
+	private int last;
+	/** Number of runs. **/
+	private long runs;
+
+	public RunningStats() {
+		mean = new double[16];
+		m2 = new double[16];
+		length = 0;
+		last = 0;
+		runs = 0;
+		offset = 0;
+	}
+
+	/**
+	 * Fold in a run.
+	 *
+	 * @param values
+	 *            the run's values
+	 */
+
+	public void add(History values) {
+		int size = values.size();
+		dropBelow(values.getFirst());
+		ensureLength(size);
+		runs++;
+		for (int i = offset; i < length; i++) {
+			double x = i < size ? values.get(i) : 0;
+			int k = i - offset;
+			double delta = x - mean[k];
+			mean[k] += delta / runs;
+			m2[k] += delta * (x - mean[k]);
+		}
+		last = size;
+	}
+
+	/**
+	 * Fold in a number of runs that are zero throughout, e.g. runs the values
+	 * never appeared in.
+	 *
+	 * @param count
+	 *            number of runs
+	 */
+
+	public void addZeros(long count) {
+		if (count <= 0) {
+			return;
+		}
+		long total = runs + count;
+		for (int k = 0; k < length - offset; k++) {
+			double delta = -mean[k];
+			mean[k] += delta * count / total;
+			m2[k] += delta * delta * runs * count / total;
+		}
+		runs = total;
+	}
+
+	/**
+	 * Fold in the runs of another set, taken as coming after these.
+	 *
+	 * @param later
+	 *            the later runs
+	 */
+
+	public void merge(RunningStats later) {
+		if (later.runs == 0) {
+			return;
+		}
+		dropBelow(later.offset);
+		ensureLength(later.length);
+		long total = runs + later.runs;
+		for (int i = offset; i < length; i++) {
+			int k = i - offset;
+			int j = i - later.offset;
+			double laterMean = i < later.length ? later.mean[j] : 0;
+			double laterM2 = i < later.length ? later.m2[j] : 0;
+			double delta = laterMean - mean[k];
+			mean[k] += delta * later.runs / total;
+			m2[k] += laterM2 + delta * delta * runs * later.runs / total;
+		}
+		runs = total;
+		last = later.last;
+	}
+
+	/**
+	 * Make room for more indexes. The runs so far are zero there.
+	 *
+	 * @param size
+	 *            number of indexes needed
+	 */
+
+	private void ensureLength(int size) {
+		if (size - offset > mean.length) {
+			int capacity = Math.max(size - offset, mean.length
+					+ (mean.length >> 1));
+			mean = Arrays.copyOf(mean, capacity);
+			m2 = Arrays.copyOf(m2, capacity);
+		}
+		if (size > length) {
+			length = size;
+		}
+	}
+
+	/**
+	 * Stop totalling the indexes before one, as a run no longer holds them.
+	 * 
+	 * @param first
+	 *            first index to total
+	 */
+
+	private void dropBelow(int first) {
+		if (first <= offset) {
+			return;
+		}
+		int count = Math.min(first, length) - offset;
+		if (count > 0) {
+			System.arraycopy(mean, count, mean, 0, length - offset - count);
+			System.arraycopy(m2, count, m2, 0, length - offset - count);
+			Arrays.fill(mean, length - offset - count, length - offset, 0d);
+			Arrays.fill(m2, length - offset - count, length - offset, 0d);
+		}
+		offset = first;
+		if (length < offset) {
+			length = offset;
+		}
+	}
+
+	/**
+	 * @return the number of indexes any run reached.
+	 */
+
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * @return the length of the last run added.
+	 */
+
+	public int getLastLength() {
+		return last;
+	}
+
+	/**
+	 * @return the number of runs.
+	 */
+
+	public long getRuns() {
+		return runs;
+	}
+
+	/**
+	 * @param size
+	 *            number of indexes to give
+	 * @return the means, as a history.
+	 */
+
+	public History getMeans(int size) {
+		int first = Math.min(offset, size);
+		History means = new History(size - first);
+		means.skip(first);
+		for (int i = first; i < size; i++) {
+			means.add(i < length ? mean[i - offset] : 0);
+		}
+		return means;
+	}
+
+	/**
+	 * @param size
+	 *            number of indexes to give
+	 * @return the sample standard deviations, as a history.
+	 */
+
+	public History getSds(int size) {
+		int first = Math.min(offset, size);
+		History sds = new History(size - first);
+		sds.skip(first);
+		for (int i = first; i < size; i++) {
+			sds.add(sd(i));
+		}
+		return sds;
+	}
+
+	/**
+	 * @param index
+	 * @return the sample variance at an index, 0 with fewer than two runs.
+	 */
+
+	public double variance(int index) {
+		if (runs < 2 || index < offset || index >= length) {
+			return 0;
+		}
+		return Math.max(m2[index - offset], 0) / (runs - 1);
+	}
+
+	/**
+	 * @param index
+	 * @return the sample standard deviation at an index.
+	 */
+
+	public double sd(int index) {
+		return Math.sqrt(variance(index));
+	}
+
+	/**
+	 * @return the largest standard error of the means over the indexes, or
+	 *         infinity with fewer than two runs to estimate it from.
+	 */
+
+	public double maxStandardError() {
+		if (runs < 2) {
+			return Double.POSITIVE_INFINITY;
+		}
+		double max = 0;
+		for (int i = offset; i < length; i++) {
+			max = Math.max(max, variance(i));
+		}
+		return Math.sqrt(max / runs);
+	}
+
+	/**
+	 * Half the width of the 95% confidence interval for the mean of a number
+	 * of runs with a given standard deviation.
+	 *
+	 * @param sd
+	 *            standard deviation of the runs
+	 * @param runs
+	 *            number of runs
+	 * @return the interval's half width, 0 with fewer than two runs.
+	 */
+
+	public static double ci(double sd, long runs) {
+		return runs < 2 ? 0 : Z_95 * sd / Math.sqrt(runs);
+	}
+}
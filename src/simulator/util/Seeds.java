@@ -0,0 +1,48 @@
+package simulator.util;
+
+/**
+ * Seeds.java
+ *
+ * Derives the random seeds for the parts of a simulation from the model's
+ * seed. A seed is a hash of the model seed & a list of keys saying where it is
+ * used, e.g. group, phase, combination & replica, so each part gets its own
+ * stream however the runs are scheduled. The hash is the SplitMix64 mix.
+ *
+ */
+
+public final class Seeds {
+
+	/** Odd constant stepping the hash between keys. **/
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+	/**
+	 * @param z
+	 *            value to mix
+	 * @return the value with its bits well mixed.
+	 */
+
+	public static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * @param base
+	 *            the model's seed
+	 * @param keys
+	 *            where the seed is used
+	 * @return the seed for those keys.
+	 */
+
+	public static long seed(long base, long... keys) {
+		long seed = mix(base);
+		for (long key : keys) {
+			seed = mix(seed + GOLDEN_GAMMA + mix(key));
+		}
+		return seed;
+	}
+
+	private Seeds() {
+	}
+}
@@ -32,6 +32,40 @@ public enum Trace implements Serializable {
 			newTrace += lastTrace;
 			return newTrace;
 		}
+
+		@Override
+		public Kernel kernel(final double delta, double gamma) {
+			return new Kernel(delta, gamma) {
+				@Override
+				public void update(double[] traces, boolean[] active, int size) {
+					for (int i = 0; i < size; i++) {
+						double newTrace = active[i] ? 1 : 0;
+						newTrace -= traces[i];
+						newTrace *= delta;
+						traces[i] += newTrace;
+						active[i] = false;
+					}
+				}
+
+				@Override
+				public void update(double[] traces, boolean[] active,
+						int[] live, int count) {
+					for (int n = 0; n < count; n++) {
+						int i = live[n];
+						double newTrace = active[i] ? 1 : 0;
+						newTrace -= traces[i];
+						newTrace *= delta;
+						traces[i] += newTrace;
+						active[i] = false;
+					}
+				}
+			};
+		}
+
+		@Override
+		public double decay(double delta, double gamma) {
+			return 1 - delta;
+		}
 	},
 	REPLACING("Replacing") {
 		/**
@@ -50,6 +84,41 @@ public enum Trace implements Serializable {
 			newTrace += lastTrace * delta * gamma;
 			return Math.min(1, newTrace);
 		}
+
+		@Override
+		public Kernel kernel(double delta, double gamma) {
+			final double decay = delta * gamma;
+			return new Kernel(delta, gamma) {
+				@Override
+				public void update(double[] traces, boolean[] active, int size) {
+					for (int i = 0; i < size; i++) {
+						double newTrace = active[i] ? 1 : 0;
+						newTrace += traces[i] * decay;
+						traces[i] = Math.min(1, newTrace);
+						active[i] = false;
+					}
+				}
+
+				@Override
+				public void update(double[] traces, boolean[] active,
+						int[] live, int count) {
+					for (int n = 0; n < count; n++) {
+						int i = live[n];
+						double newTrace = active[i] ? 1 : 0;
+						newTrace += traces[i] * decay;
+						traces[i] = Math.min(1, newTrace);
+						active[i] = false;
+					}
+				}
+			};
+		}
+
+		@Override
+		public double decay(double delta, double gamma) {
+			// Only geometric while the bound can't be reached
+			double decay = delta * gamma;
+			return Math.abs(decay) <= 1 ? decay : Double.NaN;
+		}
 	},
 	ACCUMULATING("Accumulating") {
 		/**
@@ -70,6 +139,35 @@ public enum Trace implements Serializable {
 			newTrace += lastTrace * delta * gamma;
 			return newTrace;
 		}
+
+		@Override
+		public Kernel kernel(double delta, double gamma) {
+			final double decay = delta * gamma;
+			return new Kernel(delta, gamma) {
+				@Override
+				public void update(double[] traces, boolean[] active, int size) {
+					for (int i = 0; i < size; i++) {
+						traces[i] = (active[i] ? 1 : 0) + traces[i] * decay;
+						active[i] = false;
+					}
+				}
+
+				@Override
+				public void update(double[] traces, boolean[] active,
+						int[] live, int count) {
+					for (int n = 0; n < count; n++) {
+						int i = live[n];
+						traces[i] = (active[i] ? 1 : 0) + traces[i] * decay;
+						active[i] = false;
+					}
+				}
+			};
+		}
+
+		@Override
+		public double decay(double delta, double gamma) {
+			return delta * gamma;
+		}
 	};
 	private String nameStr;
 	private static final long serialVersionUID = -6434454881295760000L;
@@ -94,8 +192,86 @@ public enum Trace implements Serializable {
 	public abstract double get(double delta, double gamma, double lastTrace,
 			boolean active);
 
+	/**
+	 * Make the update for this trace type with fixed parameters, to be used
+	 * for every step they apply to.
+	 * 
+	 * @param delta
+	 *            trace decay
+	 * @param gamma
+	 *            discount factor
+	 * @return the kernel.
+	 */
+	public abstract Kernel kernel(double delta, double gamma);
+
+	/**
+	 * The factor an inactive trace is multiplied by each timestep.
+	 * 
+	 * @param delta
+	 *            trace decay
+	 * @param gamma
+	 *            discount factor
+	 * @return the decay factor, or NaN if inactive traces do not decay
+	 *         geometrically under these parameters.
+	 */
+	public abstract double decay(double delta, double gamma);
+
 	@Override
 	public String toString() {
 		return nameStr;
 	}
+
+	/**
+	 * Trace update for blocks of components, specialised to one trace type
+	 * with its factors worked out up front, so the loops over the components
+	 * make no calls & test nothing but the active flags.
+	 */
+	public abstract static class Kernel {
+		private final double delta;
+		private final double gamma;
+
+		protected Kernel(double delta, double gamma) {
+			this.delta = delta;
+			this.gamma = gamma;
+		}
+
+		/**
+		 * @param delta
+		 *            trace decay
+		 * @param gamma
+		 *            discount factor
+		 * @return true if this kernel was made for these parameters.
+		 */
+		public boolean isFor(double delta, double gamma) {
+			return this.delta == delta && this.gamma == gamma;
+		}
+
+		/**
+		 * Update a block of traces in one pass, as <code>get</code> would for
+		 * each, and clear their active flags.
+		 * 
+		 * @param traces
+		 *            traces to update in place
+		 * @param active
+		 *            whether each trace's cue was just active
+		 * @param size
+		 *            number of traces in use
+		 */
+		public abstract void update(double[] traces, boolean[] active, int size);
+
+		/**
+		 * Update only the traces at the given indexes.
+		 * 
+		 * @param traces
+		 *            traces to update in place
+		 * @param active
+		 *            whether each trace's cue was just active
+		 * @param live
+		 *            indexes of the traces to update
+		 * @param count
+		 *            number of indexes in use
+		 */
+		public abstract void update(double[] traces, boolean[] active,
+				int[] live, int count);
+	}
 }
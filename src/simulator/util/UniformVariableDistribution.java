@@ -3,8 +3,6 @@
  */
 package simulator.util;
 
-import simulator.Simulator;
-
 /**
  * Class representing a uniform distribution.
  * 
@@ -48,8 +46,7 @@ public class UniformVariableDistribution extends VariableDistribution {
 	protected double nextRandom() {
 		double next = (random.nextDouble() + 0.5) * getMean();
         if (next == 0) return 0;
-		return Math.max(next, Simulator.getController().getModel()
-				.getTimestepSize());
+		return Math.max(next, getTimestep());
 	}
 
 }
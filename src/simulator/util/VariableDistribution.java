@@ -6,7 +6,6 @@ import java.util.Collections;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Random;
-import simulator.Simulator;
 
 /**
  * VariableDistribution.java
@@ -35,6 +34,16 @@ public class VariableDistribution implements Serializable {
 		randomSeed = System.currentTimeMillis();
 	}
 
+	/**
+	 * @param seed
+	 *            the seed for distributions built from now on, as set by the
+	 *            model.
+	 */
+
+	public static void setRandomSeed(long seed) {
+		randomSeed = seed;
+	}
+
 	/**
 	 * 
 	 * @return the seed for the random number generator.
@@ -68,6 +77,10 @@ public class VariableDistribution implements Serializable {
 	private boolean meanType;
 	/** Total number of trials. **/
 	private int trials;
+	/** Timestep size, the least a nonzero duration can be. **/
+	private double timestep;
+	/** Seed of the run drawing from this, 0 to use the shared seed. **/
+	private transient long runSeed;
 
 	/** Collection of shuffled onsets. **/
 
@@ -93,6 +106,7 @@ public class VariableDistribution implements Serializable {
 		index = 0;
 		this.trials = trials;
 		meanType = false;
+		timestep = 1;
 		onsets = new ArrayList<Double>();
 		isChanged = false;
 		shuffledOnsets = new ArrayList<List<Double>>();
@@ -150,7 +164,7 @@ public class VariableDistribution implements Serializable {
 			onsets.clear();
             shuffledOnsets.clear();
             onsetsIt = shuffledOnsets.listIterator();
-			random = new Random(randomSeed());
+			random = new Random(runSeed != 0 ? runSeed : randomSeed());
 			for (int i = 0; i < trials; i++) {
 				onsets.add(nextRandom());
 			}
@@ -224,6 +238,29 @@ public class VariableDistribution implements Serializable {
 		return meanType;
 	}
 
+	/**
+	 * @return the onsets still to be given out from the current shuffle, in
+	 *         the order <code>next</code> would give them.
+	 */
+	public double[] remaining() {
+		double[] remaining = new double[Math.max(onsets.size() - index, 0)];
+		for (int i = 0; i < remaining.length; i++) {
+			remaining[i] = onsets.get(index + i);
+		}
+		return remaining;
+	}
+
+	/**
+	 * @return the settings of the distribution as text, the same in any
+	 *         session for the same settings. The seed & generator are left
+	 *         out: runs draw from their own seed, which is keyed with the
+	 *         rest of their settings.
+	 */
+	public String key() {
+		return getClass().getSimpleName() + "(" + mean + "," + sd + ","
+				+ meanType + "," + trials + "," + timestep + ")";
+	}
+
 	public double next() {
 		double next = onsets.get(index);
 		index++;
@@ -242,19 +279,21 @@ public class VariableDistribution implements Serializable {
 	protected double nextRandom() {
 		double next = -1 * mean * Math.log(random.nextDouble());
         if (next == 0) return 0;
-		return Math.max(next, Simulator.getController().getModel()
-				.getTimestepSize());
+		return Math.max(next, timestep);
+	}
+
+	/**
+	 * @return the timestep size durations are drawn at least as long as.
+	 */
+	public double getTimestep() {
+		return timestep;
 	}
 
 	/**
 	 * Reshuffle the onsets list.
 	 */
 	public void regenerate() {
-        if(Simulator.getController().getView().isSetCompound()) {
-            Collections.shuffle(onsets, random);
-        } else {
-            Collections.shuffle(onsets, random);
-        }
+		Collections.shuffle(onsets, random);
 		onsetsIt.add(new ArrayList<Double>(onsets));
 		onsetsIt.previous();
 	}
@@ -299,6 +338,21 @@ public class VariableDistribution implements Serializable {
 		this.sd = sd;
 	}
 
+	/**
+	 * Draw from the seed of a run rather than the shared one, so that runs
+	 * of different models can draw at once. Durations drawn under another
+	 * run's seed are redrawn.
+	 * 
+	 * @param seed
+	 *            the seed of the run
+	 */
+	public void setRunSeed(long seed) {
+		if (runSeed != 0 && runSeed != seed) {
+			isChanged = true;
+		}
+		runSeed = seed;
+	}
+
 	/**
 	 * @param shuffle
 	 *            the shuffle of onsets to use.
@@ -308,6 +362,21 @@ public class VariableDistribution implements Serializable {
 		restartOnsets();
 	}
 
+	/**
+	 * Draw durations at least one of a timestep long, redrawing them if they
+	 * were drawn for another. Distributions saved before the timestep was
+	 * recorded are taken to have been drawn for it.
+	 * 
+	 * @param timestep
+	 *            the timestep size
+	 */
+	public void setTimestep(double timestep) {
+		if (this.timestep > 0 && this.timestep != timestep) {
+			isChanged = true;
+		}
+		this.timestep = timestep;
+	}
+
 	public void setTrials(int numTrials) {
 		    trials = numTrials;
 		    isChanged = true;
@@ -330,8 +399,7 @@ public class VariableDistribution implements Serializable {
 			double shifted = onset - actualMean;
 			shifted += mean;
             if (shifted != 0) {
-			    shifted = Math.max(shifted, Simulator.getController().getModel()
-					.getTimestepSize()); // Make lower bound 1 timestep
+			    shifted = Math.max(shifted, timestep); // Make lower bound 1 timestep
             }
 			standardized.add(shifted);
 		}
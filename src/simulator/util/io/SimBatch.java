@@ -0,0 +1,312 @@
+/**
+ *
+ */
+package simulator.util.io;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Vector;
+
+import javax.swing.table.DefaultTableModel;
+import javax.swing.table.TableModel;
+
+import jsr166y.ForkJoinPool;
+import jsr166y.RecursiveAction;
+import simulator.ExperimentException;
+import simulator.ExperimentFile;
+import simulator.ModelControl;
+import simulator.SimEngine;
+import simulator.SimModel;
+import simulator.VersionException;
+import simulator.configurables.ITIConfig;
+import simulator.configurables.TimingConfiguration;
+
+/**
+ * Runs saved experiments without the user interface, for batches on machines
+ * with no display. The experiments are read one after another, then run at
+ * once on the shared pool, each writing its results beside it or to a given
+ * directory as it finishes, named as it is with the format's extension added,
+ * e.g. experiment.ssc.xlsx. Experiments that would write the same file are
+ * refused.
+ *
+ * <pre>
+ * java simulator.util.io.SimBatch [-threads n] [-format xlsx|text]
+ *     [-out directory] [-cache directory] [-seed n] experiment.ssc...
+ * </pre>
+ *
+ * Each experiment runs from the seed saved with it, or the one given, which
+ * is printed with its results so the run can be repeated.
+ *
+ * Exits with 0 if every experiment ran & its results were written, 1 if any
+ * failed & 2 if the arguments are wrong.
+ */
+public class SimBatch {
+
+	/** An experiment run by the batch. **/
+	private static class Job extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+		/** The saved experiment. **/
+		private final File file;
+		/** What was read from it. **/
+		private ExperimentFile experiment;
+		/** The model set up from it. **/
+		private SimModel model;
+		/** Where the results go. **/
+		private File output;
+		/** Why the experiment failed, null if it hasn't. **/
+		private String error;
+
+		public Job(File file) {
+			this.file = file;
+		}
+
+		/**
+		 * Run the experiment & write its results.
+		 */
+		@Override
+		protected void compute() {
+			if (error != null) {
+				return;
+			}
+			long start = System.currentTimeMillis();
+			try {
+				ModelControl control = new ModelControl();
+				model.setControl(control);
+				model.startCalculations();
+				if (TEXT.equals(format)) {
+					writeText(model, experiment, output);
+				} else {
+					SimExport exporter = new SimExport(model,
+							table(experiment.getCSValues()),
+							table(experiment.getUSValues()),
+							table(experiment.getOtherValues()),
+							experiment.isCompound(), output.getName(), output);
+					exporter.setControl(control);
+					exporter.run();
+					if (!exporter.isSuccess()) {
+						error = "Couldn't write " + output;
+					}
+				}
+			} catch (IOException e) {
+				error = "Couldn't write " + output + ": " + e.getMessage();
+			} catch (RuntimeException e) {
+				error = e.toString();
+				e.printStackTrace();
+			}
+			if (error == null) {
+				System.err.println(file + ": " + output + " in "
+						+ (System.currentTimeMillis() - start) / 1000d
+						+ "s, seed " + model.getRandomSeed());
+			}
+			// Let the results go once written
+			model = null;
+		}
+
+		/**
+		 * Name where the results go, the experiment's own name with the
+		 * format's extension added, so that experiments differing only in
+		 * their extension don't share it.
+		 *
+		 * @param directory
+		 *            where the results go, null for beside the experiment
+		 * @return where the results go.
+		 */
+		public File setOutput(File directory) {
+			String name = file.getName()
+					+ (TEXT.equals(format) ? ".txt" : ".xlsx"); //$NON-NLS-1$ //$NON-NLS-2$
+			output = new File(directory == null ? file.getAbsoluteFile()
+					.getParentFile() : directory, name).getAbsoluteFile();
+			return output;
+		}
+
+		/**
+		 * Read the experiment & set it up as a model, as the controller
+		 * does when it's opened & run. Done one experiment at a time, as
+		 * the timings' defaults are shared.
+		 */
+		public void load() {
+			ITIConfig.resetDefaults();
+			TimingConfiguration.clearDefaults();
+			try {
+				experiment = ExperimentFile.read(file);
+				model = experiment.createModel();
+				if (seed != null) {
+					model.setRandomSeed(seed);
+				}
+			} catch (IOException e) {
+				error = "Couldn't read: " + e.getMessage();
+			} catch (VersionException e) {
+				error = "From an incompatible version";
+			} catch (ClassNotFoundException e) {
+				error = "Couldn't read: " + e.getMessage();
+			} catch (ExperimentException e) {
+				error = e.getMessage();
+			} catch (RuntimeException e) {
+				error = e.toString();
+			}
+		}
+	}
+
+	/** Spreadsheet output. **/
+	public static final String XLSX = "xlsx";
+	/** Plain text output, as shown in the main window. **/
+	public static final String TEXT = "text";
+
+	/** Output format of this batch. **/
+	private static String format = XLSX;
+	/** Seed to run every experiment from, null for their own. **/
+	private static Long seed;
+
+	/**
+	 * @param args
+	 *            options & the experiment files to run
+	 */
+	public static void main(String[] args) {
+		int threads = Runtime.getRuntime().availableProcessors();
+		File directory = null;
+		File cache = null;
+		List<Job> jobs = new ArrayList<Job>();
+		try {
+			for (int i = 0; i < args.length; i++) {
+				if (args[i].equals("-threads")) {
+					threads = Integer.parseInt(args[++i]);
+					if (threads < 1) {
+						throw new IllegalArgumentException(
+								"-threads must be at least 1");
+					}
+				} else if (args[i].equals("-format")) {
+					format = args[++i];
+					if (!format.equals(XLSX) && !format.equals(TEXT)) {
+						throw new IllegalArgumentException("Unknown format "
+								+ format);
+					}
+				} else if (args[i].equals("-out")) {
+					directory = new File(args[++i]);
+				} else if (args[i].equals("-cache")) {
+					cache = new File(args[++i]);
+				} else if (args[i].equals("-seed")) {
+					seed = Long.valueOf(args[++i]);
+				} else if (args[i].startsWith("-")) {
+					throw new IllegalArgumentException("Unknown option "
+							+ args[i]);
+				} else {
+					jobs.add(new Job(new File(args[i])));
+				}
+			}
+		} catch (ArrayIndexOutOfBoundsException e) {
+			usage("Missing value for " + args[args.length - 1]);
+		} catch (NumberFormatException e) {
+			usage("-threads & -seed take a number");
+		} catch (IllegalArgumentException e) {
+			usage(e.getMessage());
+		}
+		if (jobs.isEmpty()) {
+			usage("No experiments given");
+		}
+		if (directory != null && !directory.isDirectory()
+				&& !directory.mkdirs()) {
+			usage("Can't make " + directory);
+		}
+		Set<File> outputs = new HashSet<File>();
+		for (Job job : jobs) {
+			if (!outputs.add(job.setOutput(directory))) {
+				usage(job.output + " would be written by more than one"
+						+ " experiment");
+			}
+		}
+
+		SimEngine.fjPool = new ForkJoinPool(threads);
+		if (cache != null) {
+			SimEngine.resultCache.setDirectory(cache);
+		}
+		for (Job job : jobs) {
+			job.load();
+		}
+		final List<Job> batch = jobs;
+		SimEngine.fjPool.invoke(new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute() {
+				invokeAll(batch);
+			}
+		});
+		SimEngine.fjPool.shutdown();
+
+		int failed = 0;
+		for (Job job : jobs) {
+			if (job.error != null) {
+				System.err.println(job.file + ": " + job.error);
+				failed++;
+			}
+		}
+		if (failed > 0) {
+			System.err.println(failed + " of " + jobs.size()
+					+ " experiments failed");
+		}
+		System.exit(failed > 0 ? 1 : 0);
+	}
+
+	/**
+	 * @param rows
+	 *            rows of a values table as saved
+	 * @return a table model holding them, for the exporter.
+	 */
+
+	static TableModel table(Vector<Object[]> rows) {
+		int columns = 0;
+		for (Object[] row : rows) {
+			columns = Math.max(columns, row.length);
+		}
+		Object[][] data = rows.toArray(new Object[rows.size()][]);
+		return new DefaultTableModel(data, new Object[columns]);
+	}
+
+	/**
+	 * Print what went wrong with the arguments & how to give them, then
+	 * exit.
+	 *
+	 * @param problem
+	 *            what went wrong
+	 */
+
+	private static void usage(String problem) {
+		System.err.println(problem);
+		System.err.println("Usage: SimBatch [-threads n] [-format xlsx|text]"
+				+ " [-out directory] [-cache directory] [-seed n]"
+				+ " experiment.ssc...");
+		System.exit(2);
+	}
+
+	/**
+	 * Write the results of a model as text, as shown in the main window.
+	 *
+	 * @param model
+	 *            the model run
+	 * @param experiment
+	 *            the experiment it was set up from
+	 * @param output
+	 *            file to write to
+	 * @throws IOException
+	 *             if the file can't be written.
+	 */
+
+	private static void writeText(SimModel model, ExperimentFile experiment,
+			File output) throws IOException {
+		Writer out = new OutputStreamWriter(new FileOutputStream(output),
+				"UTF-8");
+		try {
+			out.write(model.textOutput(experiment.isCompound()));
+		} finally {
+			out.close();
+		}
+	}
+}
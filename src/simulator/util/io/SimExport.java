@@ -29,7 +29,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.text.MessageFormat;import java.util.*;
 
-import javax.swing.table.AbstractTableModel;
+import javax.swing.table.TableModel;
 
 import org.apache.poi.hssf.util.HSSFColor;
 import org.apache.poi.ss.usermodel.Cell;
@@ -44,6 +44,7 @@ import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import simulator.*;
 import simulator.configurables.ContextConfig.Context;
 import simulator.util.GreekSymbol;
+import simulator.util.Recording;
 
 /**
  * Exports the results from the simulator to a spreadsheet. It uses the HSSF
@@ -62,7 +63,10 @@ public class SimExport implements Runnable {
 	private Cell cell;
 	private CellStyle cs1, cs2, cs3, cs4, cs5;
 	private final SimModel model;
-	private SimView view;
+	/** Parameter values, as shown in the value tables. **/
+	private final TableModel csValues, usValues, otherValues;
+	/** Whether compound results are exported too. **/
+	private final boolean compounds;
 	private String name;
 	private File file;
 	private boolean success;
@@ -99,16 +103,27 @@ public class SimExport implements Runnable {
 	/**
 	 * SimExport's Constructor method.
 	 * 
-	 * @param view
-	 *            the application's view.
 	 * @param model
 	 *            the current model where that values will come from.
+	 * @param csValues
+	 *            CS parameter values, by row of cue name & value
+	 * @param usValues
+	 *            US parameter values, by row of parameter & value per phase
+	 * @param otherValues
+	 *            other parameter values, by row of parameter & value per phase
+	 * @param compounds
+	 *            true to export the results of compounds too
 	 * @param directory
 	 *            the last chosen directory
 	 */
-	public SimExport(SimView view, SimModel model, String name, File file) {
-		this.view = view;
+	public SimExport(SimModel model, TableModel csValues,
+			TableModel usValues, TableModel otherValues, boolean compounds,
+			String name, File file) {
 		this.model = model;
+		this.csValues = csValues;
+		this.usValues = usValues;
+		this.otherValues = otherValues;
+		this.compounds = compounds;
 		this.file = file;
 		this.name = name;
 		success = true;
@@ -220,7 +235,7 @@ public class SimExport implements Runnable {
                 for (int y = 1; y < cueNames.length + 1; y++) {
                     String cueName = cueNames[y - 1];
                     if (cueName.length() == 1
-                            || view.isSetCompound()) {
+                            || compounds) {
                         jobs += results.get(cueName).getTrialCount()*(results.get(cueName).size()+1)*2;
                         jobs += results.get(cueName).getTrialCount()*2;
                     }
@@ -344,13 +359,19 @@ task.sheet = sheet;
                         exportTasks.add(task);
 					} else {
 
+                        if (!curcue.getAssocValueVector().holds(z - 1)
+                                && z - 1 < curcue.getAssocValueSize()) {
+                            // Trial not kept by the recording profile
+                            this.control.incrementProgress(1);
+                            continue;
+                        }
                         task = new ExportTask();
                         task.rowNum = rowPos;
 task.sheet = sheet;
                         task.col = colPos + z;
                         try {
 						    task.value = curcue.getAssocValueVector()
-								.get(z - 1).doubleValue();
+								.get(z - 1);
                         } catch (IndexOutOfBoundsException e) {
                             System.err.println("Ran out of trials for cue "+(x)+" of " +interfaceName+" at t"+(z-1));
                             task.value = 0d;
@@ -539,7 +560,7 @@ task.sheet = sheet;
 
 		rowPos++;
 
-		AbstractTableModel cstmv = view.getCSValuesTableModel();
+		TableModel cstmv = csValues;
 		for (int r = 0; r < cstmv.getRowCount(); r++) {
 			// if (group.getCuesMap().containsKey(cstmv.getValueAt(r,0))){
             String tableName = (String) cstmv.getValueAt(r, 0);
@@ -601,7 +622,7 @@ task.sheet = sheet;
 
 		rowPos++;
 
-		AbstractTableModel ustmv = view.getUSValuesTableModel();
+		TableModel ustmv = usValues;
 		for (int r = 0; r < ustmv.getRowCount(); r++) {
 			Object ovalue = ustmv.getValueAt(r, 1);
 			//row = sheet.createRow(rowPos);
@@ -641,7 +662,7 @@ task.sheet = sheet;
 		// (short)(colPos + 1)));
 
 		rowPos++;
-		AbstractTableModel otmv = view.getOtherValuesTableModel();
+		TableModel otmv = otherValues;
 		for (int r = 0; r < otmv.getRowCount(); r++) {
 			Object ovalue = otmv.getValueAt(r, 1);
 			//row = sheet.createRow(rowPos);
@@ -898,45 +919,49 @@ exportTasks.add(task);
 
 			// Alberto Fernandez August-2011: export (1) cues, (2) compounds,
 			// (3) configural cues
+			// Components over time unless only the summary was kept
+			boolean components = model.getRecording() != Recording.SUMMARY;
 
-			// Realtime
-			//row = sheet.createRow(rowPos);
-			task = new ExportTask();
+			if (components) {
+				// Realtime
+				//row = sheet.createRow(rowPos);
+				task = new ExportTask();
 task.rowNum = rowPos;
 task.sheet = sheet;
 task.col = colPos;
-			task.value = Messages.getString("realtime.v");
-			task.style = cs2;
+				task.value = Messages.getString("realtime.v");
+				task.style = cs2;
 exportTasks.add(task);
 exportTasks.add(task);
-			rowPos++;
+				rowPos++;
 
-			// first row: Trial names
-			//row = sheet.createRow(rowPos);
-			trialRow(max, colPos, rowPos, sheet);
+				// first row: Trial names
+				//row = sheet.createRow(rowPos);
+				trialRow(max, colPos, rowPos, sheet);
 
-			rowPos++;
+				rowPos++;
 
-			// export Cues
-			for (int y = 1; y < cueNames.length + 1; y++) {
-				String cueName = cueNames[y - 1];
-				if (cueName.length() == 1
-						&& (Character.isUpperCase(cueName.charAt(cueName
-								.length() - 1)))) {
-					rowPos = exportComponents(cueName, curPhase, sheet, rowPos,
-							colPos, results);
+				// export Cues
+				for (int y = 1; y < cueNames.length + 1; y++) {
+					String cueName = cueNames[y - 1];
+					if (cueName.length() == 1
+							&& (Character.isUpperCase(cueName.charAt(cueName
+									.length() - 1)))) {
+						rowPos = exportComponents(cueName, curPhase, sheet, rowPos,
+								colPos, results);
+					}
 				}
-			}
-			rowPos++;
-			// export compound Cues
-			for (int y = 1; view.isSetCompound() && y < cueNames.length + 1; y++) {
-				String cueName = cueNames[y - 1];
-				if (cueName.length() > 1) {
-					rowPos = exportComponents(cueName, curPhase, sheet, rowPos,
-							colPos, results);
+				rowPos++;
+				// export compound Cues
+				for (int y = 1; compounds && y < cueNames.length + 1; y++) {
+					String cueName = cueNames[y - 1];
+					if (cueName.length() > 1) {
+						rowPos = exportComponents(cueName, curPhase, sheet, rowPos,
+								colPos, results);
+					}
 				}
+				rowPos++;
 			}
-			rowPos++;
 
 			// Trial average
 			//row = sheet.createRow(rowPos);
@@ -969,7 +994,7 @@ exportTasks.add(task);
 			}
 			rowPos++;
 			// export compound Cues
-			for (int y = 1; view.isSetCompound() && y < cueNames.length + 1; y++) {
+			for (int y = 1; compounds && y < cueNames.length + 1; y++) {
 				String cueName = cueNames[y - 1];
 				if (cueName.length() > 1) {
 					rowPos = exportTrial(cueName, curPhase, sheet, rowPos,
@@ -979,44 +1004,46 @@ exportTasks.add(task);
 			rowPos++;
 
 			if (true) {
-				// Response
-				//row = sheet.createRow(rowPos);
-				task = new ExportTask();
+				if (components) {
+					// Response
+					//row = sheet.createRow(rowPos);
+					task = new ExportTask();
 task.rowNum = rowPos;
 task.sheet = sheet;
 task.col = colPos;
-				task.value = Messages.getString("realtime.response");
-				task.style = cs2;
+					task.value = Messages.getString("realtime.response");
+					task.style = cs2;
 exportTasks.add(task);
 exportTasks.add(task);
 
-				rowPos++;
+					rowPos++;
 
-				// first row: Trial names
-				//row = sheet.createRow(rowPos);
-				trialRow(max, colPos, rowPos, sheet);
+					// first row: Trial names
+					//row = sheet.createRow(rowPos);
+					trialRow(max, colPos, rowPos, sheet);
 
-				rowPos++;
+					rowPos++;
 
-				// export Cues
-				for (int y = 1; y < cueNames.length + 1; y++) {
-					String cueName = cueNames[y - 1];
-					if (cueName.length() == 1
-							&& (Character.isUpperCase(cueName.charAt(cueName
-									.length() - 1)))) {
-						rowPos = exportResponse(cueName, curPhase, sheet,
-								rowPos, colPos, results);
+					// export Cues
+					for (int y = 1; y < cueNames.length + 1; y++) {
+						String cueName = cueNames[y - 1];
+						if (cueName.length() == 1
+								&& (Character.isUpperCase(cueName.charAt(cueName
+										.length() - 1)))) {
+							rowPos = exportResponse(cueName, curPhase, sheet,
+									rowPos, colPos, results);
+						}
 					}
-				}
-				// export compound Cues
-				for (int y = 1; view.isSetCompound() && y < cueNames.length + 1; y++) {
-					String cueName = cueNames[y - 1];
-					if (cueName.length() > 1) {
-						rowPos = exportResponse(cueName, curPhase, sheet,
-								rowPos, colPos, results);
+					// export compound Cues
+					for (int y = 1; compounds && y < cueNames.length + 1; y++) {
+						String cueName = cueNames[y - 1];
+						if (cueName.length() > 1) {
+							rowPos = exportResponse(cueName, curPhase, sheet,
+									rowPos, colPos, results);
+						}
 					}
+					rowPos++;
 				}
-				rowPos++;
 
 				rowPos++;
 				// Response
@@ -1049,7 +1076,7 @@ exportTasks.add(task);
 					}
 				}
 				// export compound Cues
-				for (int y = 1; view.isSetCompound() && y < cueNames.length + 1; y++) {
+				for (int y = 1; compounds && y < cueNames.length + 1; y++) {
 					String cueName = cueNames[y - 1];
 					if (cueName.length() > 1) {
 						rowPos = exportAverageResponse(cueName, curPhase,
@@ -1080,33 +1107,35 @@ exportTasks.add(task);
 			}
 
 			if (configural) {
-				// Realtime
-				//row = sheet.createRow(rowPos);
-				task = new ExportTask();
+				if (components) {
+					// Realtime
+					//row = sheet.createRow(rowPos);
+					task = new ExportTask();
 task.rowNum = rowPos;
 task.sheet = sheet;
 task.col = colPos;
-				task.value = Messages.getString("realtime.v");
-				task.style = cs2;
+					task.value = Messages.getString("realtime.v");
+					task.style = cs2;
 exportTasks.add(task);
 exportTasks.add(task);
-				rowPos++;
+					rowPos++;
 
-				// first row: Trial names
-				//row = sheet.createRow(rowPos);
-				trialRow(maxConfigural, colPos, rowPos, sheet);
+					// first row: Trial names
+					//row = sheet.createRow(rowPos);
+					trialRow(maxConfigural, colPos, rowPos, sheet);
 
-				rowPos++;
+					rowPos++;
 
-				for (int y = 1; y < cueNames.length + 1; y++) {
-					String cueName = cueNames[y - 1];
-					String interfaceName;
-					if (cueName.length() == 1
-							&& Character.isLowerCase(cueName.charAt(cueName
-									.length() - 1))) {
-						// export compound Cues
-						rowPos = exportComponents(cueName, curPhase, sheet,
-								rowPos, colPos, results);
+					for (int y = 1; y < cueNames.length + 1; y++) {
+						String cueName = cueNames[y - 1];
+						String interfaceName;
+						if (cueName.length() == 1
+								&& Character.isLowerCase(cueName.charAt(cueName
+										.length() - 1))) {
+							// export compound Cues
+							rowPos = exportComponents(cueName, curPhase, sheet,
+									rowPos, colPos, results);
+						}
 					}
 				}
 
@@ -1184,23 +1213,25 @@ exportTasks.add(task);
         }
 		//row = sheet.createRow(rowPos);
 
-		task = new ExportTask();
-        task.rowNum = rowPos;
-        task.sheet = sheet;
-        task.col = colPos;
-		task.value = Messages.getString("realtime.v");
-		task.style = cs2;
-        exportTasks.add(task);
-//exportTasks.add(task);
-		rowPos++;
-		//row = sheet.createRow(rowPos);
-        trialRow(trials, colPos, rowPos, sheet);
-        rowPos++;
+        boolean components = model.getRecording() != Recording.SUMMARY;
+        if (components) {
+		    task = new ExportTask();
+            task.rowNum = rowPos;
+            task.sheet = sheet;
+            task.col = colPos;
+		    task.value = Messages.getString("realtime.v");
+		    task.style = cs2;
+            exportTasks.add(task);
+		    rowPos++;
+		    //row = sheet.createRow(rowPos);
+            trialRow(trials, colPos, rowPos, sheet);
+            rowPos++;
 
-        for(String cueName : results.keySet()) {
-		    rowPos = exportComponents(cueName, curPhase, sheet, rowPos, colPos,
-				results) + 1;
+            for(String cueName : results.keySet()) {
+		        rowPos = exportComponents(cueName, curPhase, sheet, rowPos, colPos,
+				    results) + 1;
 
+            }
         }
 		//row = sheet.createRow(rowPos);
 		task = new ExportTask();
@@ -1221,21 +1252,23 @@ exportTasks.add(task);
 				colPos, results) + 1;
         }
 
-		task = new ExportTask();
-        task.rowNum = rowPos;
-        task.sheet = sheet;
-        task.col = colPos;
-		task.value = Messages.getString("realtime.response");
-		task.style = cs2;
-        exportTasks.add(task);
+        if (components) {
+		    task = new ExportTask();
+            task.rowNum = rowPos;
+            task.sheet = sheet;
+            task.col = colPos;
+		    task.value = Messages.getString("realtime.response");
+		    task.style = cs2;
+            exportTasks.add(task);
 
-		rowPos++;
-		//row = sheet.createRow(rowPos);
-        trialRow(trials, colPos, rowPos, sheet);
-        rowPos++;
-        for(String cueName : results.keySet()) {
-		    rowPos = exportResponse(cueName, curPhase, sheet, rowPos, colPos,
-				results) + 1;
+		    rowPos++;
+		    //row = sheet.createRow(rowPos);
+            trialRow(trials, colPos, rowPos, sheet);
+            rowPos++;
+            for(String cueName : results.keySet()) {
+		        rowPos = exportResponse(cueName, curPhase, sheet, rowPos, colPos,
+				    results) + 1;
+            }
         }
 
 		return rowPos;
@@ -1275,6 +1308,12 @@ task.col = (colPos);
 						task.style = cs3;
 exportTasks.add(task);
 					} else {
+						if (!curcue.getResponses().holds(z - 1)
+								&& z - 1 < curcue.getResponses().size()) {
+							// Trial not kept by the recording profile
+							this.control.incrementProgress(1);
+							continue;
+						}
 
 						task = new ExportTask();
 task.rowNum = rowPos;
@@ -0,0 +1,512 @@
+/**
+ *
+ */
+package simulator.util.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jsr166y.ForkJoinPool;
+import simulator.ExperimentException;
+import simulator.ExperimentFile;
+import simulator.ModelControl;
+import simulator.SimEngine;
+import simulator.SimModel;
+import simulator.VersionException;
+import simulator.configurables.ITIConfig;
+import simulator.configurables.TimingConfiguration;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Runs saved experiments sent to it over HTTP on this machine, so that
+ * everyone using it shares one bounded pool rather than each simulator
+ * starting its own. Experiments wait in a queue, highest priority first, and
+ * a few run at once on the pool. Only the loopback address is listened on.
+ *
+ * <pre>
+ * java simulator.util.io.SimServer [-port n] [-threads n] [-jobs n]
+ *     [-cache directory]
+ *
+ * POST   /jobs?priority=n          an .ssc file as the body, sent as
+ *                                  application/octet-stream, gives the job id
+ * GET    /jobs                     state of every job, one per line
+ * GET    /jobs/id                  state of a job
+ * GET    /jobs/id/results[?format=xlsx|text]
+ *                                  results of a finished job, streamed
+ * DELETE /jobs/id                  cancels a job, or forgets a finished one
+ * </pre>
+ *
+ * A job's state is given as its id, state, priority, progress & total
+ * progress, as the run's {@link ModelControl} counts them, then why it failed
+ * if it did. Only the classes a saved experiment is made of are read from what's
+ * sent.
+ */
+public class SimServer implements HttpHandler {
+
+	/** Where a job has got to. **/
+	public enum State {
+		QUEUED, RUNNING, DONE, FAILED, CANCELLED
+	}
+
+	/** An experiment sent to the server. **/
+	private static class Job implements Comparable<Job> {
+
+		/** Number given to the job. **/
+		private final int id;
+		/** Higher runs sooner. **/
+		private final int priority;
+		/** What was sent. **/
+		private final ExperimentFile experiment;
+		/** Progress & cancellation of the run. **/
+		private final ModelControl control = new ModelControl();
+		/** Where the job has got to. **/
+		private volatile State state = State.QUEUED;
+		/** The model set up from it, once it runs. **/
+		private volatile SimModel model;
+		/** Why the job failed, null if it hasn't. **/
+		private volatile String error;
+
+		public Job(int id, int priority, ExperimentFile experiment) {
+			this.id = id;
+			this.priority = priority;
+			this.experiment = experiment;
+		}
+
+		/**
+		 * Highest priority first, then in the order sent.
+		 */
+		@Override
+		public int compareTo(Job other) {
+			if (priority != other.priority) {
+				return priority > other.priority ? -1 : 1;
+			}
+			return id < other.id ? -1 : id == other.id ? 0 : 1;
+		}
+
+		/**
+		 * @return the state of the job as a line.
+		 */
+		public String status() {
+			StringBuilder line = new StringBuilder();
+			line.append(id).append(' ').append(state).append(' ')
+					.append(priority).append(' ')
+					.append((int) control.getProgress()).append(' ')
+					.append(control.getTotalProgress());
+			if (error != null) {
+				line.append(' ').append(error);
+			}
+			return line.append('\n').toString();
+		}
+	}
+
+	/** Takes queued jobs & runs them, one at a time. **/
+	private class Runner extends Thread {
+
+		public Runner(int number) {
+			super("SimServer runner " + number);
+		}
+
+		@Override
+		public void run() {
+			while (true) {
+				Job job;
+				try {
+					job = queue.take();
+				} catch (InterruptedException e) {
+					return;
+				}
+				synchronized (job) {
+					// Cancelled while it was being taken
+					if (job.state != SimServer.State.QUEUED) {
+						continue;
+					}
+					job.state = SimServer.State.RUNNING;
+				}
+				runJob(job);
+			}
+		}
+	}
+
+	/** Port listened on by default. **/
+	public static final int PORT = 8421;
+
+	/** Jobs waiting to run. **/
+	private final PriorityBlockingQueue<Job> queue = new PriorityBlockingQueue<Job>();
+	/** Every job not yet forgotten, by id. **/
+	private final Map<Integer, Job> jobs = new LinkedHashMap<Integer, Job>();
+	/** Id of the next job. **/
+	private final AtomicInteger nextId = new AtomicInteger(1);
+	/** Listens for requests. **/
+	private final HttpServer server;
+	/** Jobs run at once. **/
+	private final int runners;
+
+	/**
+	 * @param port
+	 *            port to listen on, on the loopback address
+	 * @param runners
+	 *            jobs run at once on the shared pool
+	 * @throws IOException
+	 *             if the port can't be listened on.
+	 */
+	public SimServer(int port, int runners) throws IOException {
+		this.runners = runners;
+		server = HttpServer.create(
+				new InetSocketAddress(InetAddress.getByName("127.0.0.1"), port),
+				0);
+		server.createContext("/jobs", this);
+		server.setExecutor(Executors.newCachedThreadPool());
+	}
+
+	/**
+	 * Start taking jobs & running them.
+	 */
+	public void start() {
+		for (int i = 0; i < runners; i++) {
+			new Runner(i + 1).start();
+		}
+		server.start();
+	}
+
+	/**
+	 * Set up a job's model & run it. The models are set up one at a time, as
+	 * the timings' defaults are shared.
+	 *
+	 * @param job
+	 *            the job to run
+	 */
+	private void runJob(Job job) {
+		try {
+			SimModel model;
+			synchronized (SimServer.class) {
+				ITIConfig.resetDefaults();
+				TimingConfiguration.clearDefaults();
+				model = job.experiment.createModel();
+			}
+			job.control.setTotalProgress(model.totalNumPhases() + 1);
+			model.setControl(job.control);
+			job.model = model;
+			model.startCalculations();
+			job.state = job.control.isCancelled() ? State.CANCELLED
+					: State.DONE;
+		} catch (ExperimentException e) {
+			job.error = e.getMessage();
+			job.state = State.FAILED;
+		} catch (Throwable e) {
+			// Anything else fails just the job, the runner goes on to the next
+			job.error = e.toString();
+			job.state = State.FAILED;
+			e.printStackTrace();
+		}
+		if (job.state != State.DONE) {
+			job.model = null;
+		}
+	}
+
+	/**
+	 * Answer a request on /jobs.
+	 */
+	@Override
+	public void handle(HttpExchange exchange) throws IOException {
+		try {
+			String method = exchange.getRequestMethod();
+			String[] path = exchange.getRequestURI().getPath().substring(1)
+					.split("/");
+			Job job = null;
+			if (path.length > 1) {
+				try {
+					synchronized (jobs) {
+						job = jobs.get(Integer.valueOf(path[1]));
+					}
+				} catch (NumberFormatException e) {
+					// Not found below
+				}
+				if (job == null || path.length > 3
+						|| (path.length == 3 && !path[2].equals("results"))) {
+					respond(exchange, 404, "No such job\n");
+					return;
+				}
+			}
+			if (path.length == 1 && method.equals("POST")) {
+				submit(exchange);
+			} else if (path.length == 1 && method.equals("GET")) {
+				StringBuilder body = new StringBuilder();
+				synchronized (jobs) {
+					for (Job each : jobs.values()) {
+						body.append(each.status());
+					}
+				}
+				respond(exchange, 200, body.toString());
+			} else if (path.length == 2 && method.equals("GET")) {
+				respond(exchange, 200, job.status());
+			} else if (path.length == 2 && method.equals("DELETE")) {
+				cancel(job);
+				respond(exchange, 200, job.status());
+			} else if (path.length == 3 && method.equals("GET")) {
+				results(exchange, job);
+			} else {
+				respond(exchange, 405, "Not allowed\n");
+			}
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Queue the experiment sent with a request.
+	 *
+	 * @param exchange
+	 *            the request
+	 * @throws IOException
+	 *             if the response can't be sent.
+	 */
+	private void submit(HttpExchange exchange) throws IOException {
+		int priority = 0;
+		String value = parameter(exchange, "priority");
+		if (value != null) {
+			try {
+				priority = Integer.parseInt(value);
+			} catch (NumberFormatException e) {
+				respond(exchange, 400, "priority takes a number\n");
+				return;
+			}
+		}
+		String type = exchange.getRequestHeaders().getFirst("Content-Type");
+		if (type == null || !type.startsWith("application/octet-stream")) {
+			respond(exchange, 415, "Send as application/octet-stream\n");
+			return;
+		}
+		ExperimentFile experiment;
+		try {
+			experiment = ExperimentFile.read(exchange.getRequestBody());
+		} catch (VersionException e) {
+			respond(exchange, 400, "From an incompatible version\n");
+			return;
+		} catch (ClassNotFoundException e) {
+			respond(exchange, 400, "Couldn't read: " + e.getMessage() + "\n");
+			return;
+		} catch (IOException e) {
+			respond(exchange, 400, "Couldn't read: " + e.getMessage() + "\n");
+			return;
+		}
+		Job job = new Job(nextId.getAndIncrement(), priority, experiment);
+		synchronized (jobs) {
+			jobs.put(job.id, job);
+		}
+		queue.add(job);
+		respond(exchange, 201, job.id + "\n");
+	}
+
+	/**
+	 * Cancel a job that's queued or running, or forget one that's finished.
+	 *
+	 * @param job
+	 *            the job
+	 */
+	private void cancel(Job job) {
+		synchronized (job) {
+			if (job.state == State.QUEUED) {
+				queue.remove(job);
+				job.state = State.CANCELLED;
+			} else if (job.state == State.RUNNING) {
+				// Set as cancelled by its runner once the run stops
+				job.control.setCancelled(true);
+			} else {
+				synchronized (jobs) {
+					jobs.remove(job.id);
+				}
+				job.model = null;
+			}
+		}
+	}
+
+	/**
+	 * Stream the results of a finished job, as text or a spreadsheet.
+	 *
+	 * @param exchange
+	 *            the request
+	 * @param job
+	 *            the job
+	 * @throws IOException
+	 *             if the results can't be written.
+	 */
+	private void results(HttpExchange exchange, Job job) throws IOException {
+		SimModel model = job.model;
+		if (job.state != State.DONE || model == null) {
+			respond(exchange, 409, job.status());
+			return;
+		}
+		String format = parameter(exchange, "format");
+		ExperimentFile experiment = job.experiment;
+		if (format == null || format.equals(SimBatch.TEXT)) {
+			exchange.getResponseHeaders().set("Content-Type",
+					"text/plain; charset=UTF-8");
+			exchange.sendResponseHeaders(200, 0);
+			Writer out = new OutputStreamWriter(exchange.getResponseBody(),
+					"UTF-8");
+			out.write(model.textOutput(experiment.isCompound()));
+			out.close();
+		} else if (format.equals(SimBatch.XLSX)) {
+			File output = File.createTempFile("job" + job.id, ".xlsx");
+			try {
+				SimExport exporter = new SimExport(model,
+						SimBatch.table(experiment.getCSValues()),
+						SimBatch.table(experiment.getUSValues()),
+						SimBatch.table(experiment.getOtherValues()),
+						experiment.isCompound(), "job" + job.id, output);
+				exporter.setControl(new ModelControl());
+				exporter.run();
+				if (!exporter.isSuccess()) {
+					respond(exchange, 500, "Couldn't write the results\n");
+					return;
+				}
+				exchange.getResponseHeaders().set("Content-Type",
+						"application/vnd.openxmlformats-officedocument"
+								+ ".spreadsheetml.sheet");
+				exchange.sendResponseHeaders(200, 0);
+				InputStream in = new FileInputStream(output);
+				OutputStream out = exchange.getResponseBody();
+				try {
+					byte[] buffer = new byte[8192];
+					int read;
+					while ((read = in.read(buffer)) > 0) {
+						out.write(buffer, 0, read);
+					}
+				} finally {
+					in.close();
+					out.close();
+				}
+			} finally {
+				output.delete();
+			}
+		} else {
+			respond(exchange, 400, "Unknown format " + format + "\n");
+		}
+	}
+
+	/**
+	 * @param exchange
+	 *            a request
+	 * @param name
+	 *            name of a query parameter
+	 * @return its value, or null if it wasn't given.
+	 */
+	private static String parameter(HttpExchange exchange, String name) {
+		String query = exchange.getRequestURI().getQuery();
+		if (query == null) {
+			return null;
+		}
+		for (String pair : query.split("&")) {
+			int equals = pair.indexOf('=');
+			if (equals > 0 && pair.substring(0, equals).equals(name)) {
+				return pair.substring(equals + 1);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Send a whole text response.
+	 *
+	 * @param exchange
+	 *            the request
+	 * @param code
+	 *            HTTP status
+	 * @param body
+	 *            text to send
+	 * @throws IOException
+	 *             if it can't be sent.
+	 */
+	private static void respond(HttpExchange exchange, int code, String body)
+			throws IOException {
+		byte[] bytes = body.getBytes("UTF-8");
+		exchange.getResponseHeaders().set("Content-Type",
+				"text/plain; charset=UTF-8");
+		exchange.sendResponseHeaders(code, bytes.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(bytes);
+		out.close();
+	}
+
+	/**
+	 * @param args
+	 *            options
+	 */
+	public static void main(String[] args) {
+		int port = PORT;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int runners = 2;
+		File cache = null;
+		try {
+			for (int i = 0; i < args.length; i++) {
+				if (args[i].equals("-port")) {
+					port = Integer.parseInt(args[++i]);
+				} else if (args[i].equals("-threads")) {
+					threads = Integer.parseInt(args[++i]);
+				} else if (args[i].equals("-jobs")) {
+					runners = Integer.parseInt(args[++i]);
+				} else if (args[i].equals("-cache")) {
+					cache = new File(args[++i]);
+				} else {
+					throw new IllegalArgumentException("Unknown option "
+							+ args[i]);
+				}
+			}
+			if (threads < 1 || runners < 1) {
+				throw new IllegalArgumentException(
+						"-threads & -jobs must be at least 1");
+			}
+		} catch (ArrayIndexOutOfBoundsException e) {
+			usage("Missing value for " + args[args.length - 1]);
+		} catch (NumberFormatException e) {
+			usage("-port, -threads & -jobs take a number");
+		} catch (IllegalArgumentException e) {
+			usage(e.getMessage());
+		}
+
+		SimEngine.fjPool = new ForkJoinPool(threads);
+		if (cache != null) {
+			SimEngine.resultCache.setDirectory(cache);
+		}
+		try {
+			new SimServer(port, runners).start();
+		} catch (IOException e) {
+			System.err.println("Can't listen on port " + port + ": "
+					+ e.getMessage());
+			System.exit(1);
+		}
+		System.err.println("Taking jobs at http://127.0.0.1:" + port
+				+ "/jobs on " + threads + " threads, " + runners
+				+ " at once");
+	}
+
+	/**
+	 * Print what went wrong with the arguments & how to give them, then
+	 * exit.
+	 *
+	 * @param problem
+	 *            what went wrong
+	 */
+
+	private static void usage(String problem) {
+		System.err.println(problem);
+		System.err.println("Usage: SimServer [-port n] [-threads n] [-jobs n]"
+				+ " [-cache directory]");
+		System.exit(2);
+	}
+}